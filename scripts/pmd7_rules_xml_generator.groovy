@@ -375,6 +375,7 @@ if (javaSuccess && kotlinSuccess) {
 } else {
     logInfo("XML generation completed with errors. Please check the logs above.")
 }
+logDebug("converter cache: ${MarkdownToHtmlConverter.getCache().statistics()}")
 
 
 // === Helper methods extracted for readability ===
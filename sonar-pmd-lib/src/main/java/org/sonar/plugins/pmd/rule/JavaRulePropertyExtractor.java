@@ -11,24 +11,32 @@ import org.sonar.plugins.pmd.rule.util.ZipBombProtection;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Modifier;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.*;
-import java.util.jar.JarEntry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarFile;
 
 /**
  * Helper class to extract property information from Java rule classes in PMD jar files.
- * This class loads rule classes from the jar files, identifies those that extend AbstractJavaRule,
- * and extracts property information from them.
+ * This class identifies the rule classes, those that extend AbstractRule, from the class files in the jar
+ * with {@link RuleClassScanner}, and loads and instantiates only those to extract their property information.
  */
 public class JavaRulePropertyExtractor {
     private static final Logger LOGGER = LoggerFactory.getLogger(JavaRulePropertyExtractor.class);
 
     static final String ABSTRACT_RULE_CLASS_NAME = AbstractRule.class.getName();
 
+    // loading and instantiating the rule classes is spread over a few threads
+    private static final int MAXIMUM_THREADS = 4;
+
 
     /**
      * Extracts property information from Java rule classes in the specified jar file.
@@ -54,28 +62,37 @@ public class JavaRulePropertyExtractor {
                 // First, scan the JAR for potential ZIP bomb characteristics
                 ZipBombProtection.scanJar(jarFile, file);
 
-                // After validation, iterate through entries to find class files
-                Enumeration<JarEntry> entries = jarFile.entries();
-                while (entries.hasMoreElements()) {
-                    JarEntry entry = entries.nextElement();
-                    if (entry.getName().endsWith(".class")) {
-                        String className = entry.getName().replace('/', '.').replace(".class", "");
-                        try {
-                            // Load the class
-                            Class<?> clazz = classLoader.loadClass(className);
-
-                            // Check if the class extends AbstractJavaRule
-                            if (isRuleClass(clazz)) {
-                                // Extract property information
-                                List<PropertyInfo> properties = extractPropertyInfo(clazz);
-                                // Always add the rule to the map, even if it has no properties
-                                result.put(className, properties);
-                            }
-                        } catch (ClassNotFoundException | NoClassDefFoundError e) {
-                            // Skip classes that can't be loaded
-                            LOGGER.debug("Could not load class: {}", className, e);
+                // After validation, find the rule classes from their class files, so only those get loaded
+                List<String> ruleClassNames = new RuleClassScanner(classLoader).scan(jarFile);
+
+                List<Callable<List<PropertyInfo>>> tasks = new ArrayList<>();
+                for (String className : ruleClassNames) {
+                    tasks.add(() -> extractPropertyInfo(classLoader, className));
+                }
+                ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(MAXIMUM_THREADS, Runtime.getRuntime().availableProcessors())));
+                try {
+                    List<Future<List<PropertyInfo>>> futures = executor.invokeAll(tasks);
+                    for (int i = 0; i < futures.size(); i++) {
+                        List<PropertyInfo> properties = futures.get(i).get();
+                        // Always add the rule to the map, even if it has no properties
+                        if (properties != null) {
+                            result.put(ruleClassNames.get(i), properties);
                         }
                     }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while extracting rule properties from jar file: " + file);
+                } catch (ExecutionException e) {
+                    // the tasks throw no checked exceptions, rethrow as if extracted on this thread
+                    if (e.getCause() instanceof Error) {
+                        throw (Error) e.getCause();
+                    }
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw new IllegalStateException("Error extracting rule properties from jar file: " + file, e.getCause());
+                } finally {
+                    executor.shutdownNow();
                 }
                 LOGGER.info("Extracted {} rule properties from jar file: {}", result.size(), file);
             }
@@ -85,17 +102,18 @@ public class JavaRulePropertyExtractor {
     }
 
     /**
-     * Checks if the given class is a rule class (extends AbstractJavaRule).
+     * Loads the given rule class and extracts its property information.
+     *
+     * @return The property information, null if the class can't be loaded
      */
-    private boolean isRuleClass(Class<?> clazz) {
-        Class<?> superClass = clazz.isAssignableFrom(AbstractRule.class) ? clazz : clazz.getSuperclass();
-        while (superClass != null) {
-            if (ABSTRACT_RULE_CLASS_NAME.equals(superClass.getName())) {
-                return true;
-            }
-            superClass = superClass.getSuperclass();
+    private List<PropertyInfo> extractPropertyInfo(ClassLoader classLoader, String className) {
+        try {
+            return extractPropertyInfo(classLoader.loadClass(className));
+        } catch (ClassNotFoundException | NoClassDefFoundError e) {
+            // Skip classes that can't be loaded
+            LOGGER.debug("Could not load class: {}", className, e);
+            return null;
         }
-        return false;
     }
 
     private boolean canInstantiate(Class<?> clazz) {
@@ -0,0 +1,183 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd.rule;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.UnaryOperator;
+
+/**
+ * Bounded cache of the results of {@link MarkdownToHtmlConverter}, keyed by the conversion, the PMD version the
+ * links are built for and the input text. When it is full, the least recently used result is evicted.
+ * <p>
+ * The cache is thread-safe. A conversion runs outside the lock, so threads that miss the same input at the same
+ * time may both convert it.
+ */
+public final class MarkdownConversionCache {
+
+    private final Map<Key, String> results = new LinkedHashMap<>(64, 0.75f, true);
+    private int maximumSize;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param maximumSize The number of results to keep, 0 to not cache at all
+     */
+    MarkdownConversionCache(int maximumSize) {
+        setMaximumSize(maximumSize);
+    }
+
+    /**
+     * @return The cached result of the conversion of the input, converted now when it is not cached.
+     */
+    String get(String conversion, String pmdVersion, String input, UnaryOperator<String> converter) {
+        final Key key = new Key(conversion, pmdVersion, input);
+        synchronized (this) {
+            final String result = results.get(key);
+            if (result != null) {
+                hits++;
+                return result;
+            }
+            misses++;
+        }
+        final String result = converter.apply(input);
+        synchronized (this) {
+            if (maximumSize > 0) {
+                results.put(key, result);
+                evictExceeding();
+            }
+        }
+        return result;
+    }
+
+    synchronized void setMaximumSize(int maximumSize) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("The maximum size of the cache must not be negative: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        evictExceeding();
+    }
+
+    private void evictExceeding() {
+        while (results.size() > maximumSize) {
+            results.remove(results.keySet().iterator().next());
+            evictions++;
+        }
+    }
+
+    /**
+     * Drops the cached results and resets the statistics.
+     */
+    public synchronized void clear() {
+        results.clear();
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    public synchronized Statistics statistics() {
+        return new Statistics(hits, misses, evictions, results.size(), maximumSize);
+    }
+
+    /**
+     * Snapshot of the use of the cache.
+     */
+    public static final class Statistics {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final int size;
+        private final int maximumSize;
+
+        private Statistics(long hits, long misses, long evictions, int size, int maximumSize) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.size = size;
+            this.maximumSize = maximumSize;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public int getMaximumSize() {
+            return maximumSize;
+        }
+
+        /**
+         * @return The share of the lookups that found a cached result, 0 when there were none.
+         */
+        public double getHitRate() {
+            final long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "hits=%d, misses=%d, hit rate=%.1f%%, evictions=%d, size=%d/%d",
+                    hits, misses, getHitRate() * 100, evictions, size, maximumSize);
+        }
+    }
+
+    private static final class Key {
+        private final String conversion;
+        private final String pmdVersion;
+        private final String input;
+
+        private Key(String conversion, String pmdVersion, String input) {
+            this.conversion = conversion;
+            this.pmdVersion = pmdVersion;
+            this.input = input;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return conversion.equals(key.conversion) && pmdVersion.equals(key.pmdVersion) && input.equals(key.input);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(conversion, pmdVersion, input);
+        }
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd.rule;
+
+/**
+ * Renders the inline Markdown of {@link MarkdownToHtmlConverter}: code spans, rule and Javadoc references, bold and
+ * italics. The text is tokenized in a single pass into code, which is left as is, and the plain text in between,
+ * which is formatted when the next code starts.
+ * <p>
+ * The output is the same as formatting the text in stages: code spans, then references, bold and italics outside
+ * {@code <code>} elements. Raw {@code <code>} HTML is only supported as the converter writes it itself, plain
+ * {@code <code>} elements with text content; {@link #render(String, String)} returns null for any other use, in which case
+ * the text is formatted in stages.
+ */
+final class MarkdownInlineRenderer {
+
+    private static final String CODE_OPEN = "<code>";
+    private static final String CODE_CLOSE = "</code>";
+    private static final String EMPTY_CODE = CODE_OPEN + CODE_CLOSE;
+
+    private final String text;
+    private final String jdocBase;
+    private final StringBuilder html;
+    // plain text since the last code, formatted by flushPlain()
+    private final StringBuilder plain = new StringBuilder();
+    // the bounds of the name or class of the last matched reference
+    private int targetStart;
+    private int targetEnd;
+
+    private MarkdownInlineRenderer(String text, String jdocBase) {
+        this.text = text;
+        this.jdocBase = jdocBase;
+        this.html = new StringBuilder(text.length() + 32);
+    }
+
+    /**
+     * @param jdocBase The base URL of the PMD Javadoc that jdoc references link to
+     * @return The text with its inline Markdown rendered as HTML, null when the text contains raw code HTML
+     * this renderer does not support.
+     */
+    static String render(String text, String jdocBase) {
+        return new MarkdownInlineRenderer(text, jdocBase).render();
+    }
+
+    private String render() {
+        final int length = text.length();
+        int i = 0;
+        while (i < length) {
+            final char ch = text.charAt(i);
+            if (ch == '`') {
+                final int close = text.indexOf('`', i + 1);
+                if (close < 0) {
+                    // an unclosed backtick is plain text, as is the rest of the text
+                    if (indexOfCodeTag(text, i + 1) >= 0) {
+                        return null;
+                    }
+                    plain.append(text, i, length);
+                    break;
+                }
+                if (!appendCodeSpan(i + 1, close)) {
+                    return null;
+                }
+                i = close + 1;
+            } else if (ch == '<' && isCodeTag(text, i)) {
+                final int end = codeElementEnd(i);
+                if (end < 0) {
+                    return null;
+                }
+                flushPlain();
+                html.append(text, i, end);
+                i = end;
+            } else {
+                plain.append(ch);
+                i++;
+            }
+        }
+        return flushPlain() ? html.toString() : null;
+    }
+
+    /**
+     * Renders the code span between backticks. Its literal code tags are dropped; an empty span is no code element
+     * to protect, but part of the plain text.
+     */
+    private boolean appendCodeSpan(int start, int end) {
+        final StringBuilder code = new StringBuilder(end - start + 16);
+        int i = start;
+        while (i < end) {
+            if (text.regionMatches(true, i, CODE_OPEN, 0, CODE_OPEN.length())) {
+                i += CODE_OPEN.length();
+            } else if (text.regionMatches(true, i, CODE_CLOSE, 0, CODE_CLOSE.length())) {
+                i += CODE_CLOSE.length();
+            } else {
+                appendEscaped(code, text.charAt(i));
+                i++;
+            }
+        }
+        if (code.length() == 0) {
+            plain.append(EMPTY_CODE);
+            return true;
+        }
+        if (!flushPlain()) {
+            return false;
+        }
+        html.append(CODE_OPEN).append(code).append(CODE_CLOSE);
+        return true;
+    }
+
+    /**
+     * @return The end of the raw code element starting at the given index, -1 if it is not a plain
+     * {@code <code>} element with text content.
+     */
+    private int codeElementEnd(int start) {
+        if (!text.startsWith(CODE_OPEN, start)) {
+            return -1;
+        }
+        final int contentStart = start + CODE_OPEN.length();
+        final int close = text.indexOf(CODE_CLOSE, contentStart);
+        if (close <= contentStart) {
+            return -1;
+        }
+        final int tag = text.indexOf('<', contentStart);
+        return tag < close ? -1 : close + CODE_CLOSE.length();
+    }
+
+    /**
+     * Formats the pending plain text: rule and Javadoc references become code, the text in between gets its
+     * bold and italics.
+     *
+     * @return false when a reference contains another reference
+     */
+    private boolean flushPlain() {
+        if (plain.length() == 0) {
+            return true;
+        }
+        final String segment = plain.toString();
+        plain.setLength(0);
+        int reference = segment.indexOf("{%");
+        if (reference < 0) {
+            appendEmphasized(segment);
+            return true;
+        }
+        final StringBuilder pending = new StringBuilder(segment.length());
+        int last = 0;
+        while (reference >= 0) {
+            int end = matchRuleReference(segment, reference);
+            if (end >= 0) {
+                final int nested = segment.indexOf("{%", targetStart);
+                if (nested >= 0 && nested < targetEnd) {
+                    return false;
+                }
+                pending.append(segment, last, reference);
+                appendEmphasized(pending.toString());
+                pending.setLength(0);
+                html.append(CODE_OPEN);
+                appendEscaped(html, segment, targetStart, targetEnd);
+                html.append(CODE_CLOSE);
+                last = end;
+            } else if ((end = matchJdocReference(segment, reference)) >= 0) {
+                final String fullyQualifiedName = segment.substring(targetStart, targetEnd);
+                final String displayText = MarkdownToHtmlConverter.jdocDisplayText(fullyQualifiedName);
+                pending.append(segment, last, reference)
+                        .append("<a href=\"").append(MarkdownToHtmlConverter.jdocUrl(fullyQualifiedName, jdocBase)).append("\">");
+                if (displayText.isEmpty()) {
+                    pending.append(EMPTY_CODE).append("</a>");
+                } else {
+                    appendEmphasized(pending.toString());
+                    pending.setLength(0);
+                    html.append(CODE_OPEN).append(displayText).append(CODE_CLOSE);
+                    pending.append("</a>");
+                }
+                last = end;
+            } else {
+                end = reference + 1;
+            }
+            reference = segment.indexOf("{%", end);
+        }
+        pending.append(segment, last, segment.length());
+        appendEmphasized(pending.toString());
+        return true;
+    }
+
+    /**
+     * Matches {@code {% rule "name" %}} at the given index.
+     *
+     * @return The end of the reference, -1 if there is none
+     */
+    private int matchRuleReference(String segment, int start) {
+        int i = skipWhitespace(segment, start + 2);
+        if (!segment.startsWith("rule", i)) {
+            return -1;
+        }
+        i = skipWhitespace(segment, i + 4);
+        if (i >= segment.length() || segment.charAt(i) != '"') {
+            return -1;
+        }
+        final int close = segment.indexOf('"', i + 1);
+        if (close <= i + 1) {
+            return -1;
+        }
+        targetStart = i + 1;
+        targetEnd = close;
+        i = skipWhitespace(segment, close + 1);
+        return segment.startsWith("%}", i) ? i + 2 : -1;
+    }
+
+    /**
+     * Matches {@code {% jdoc language::qualified.Name#member %}} at the given index.
+     *
+     * @return The end of the reference, -1 if there is none
+     */
+    private int matchJdocReference(String segment, int start) {
+        int i = skipWhitespace(segment, start + 2);
+        if (!segment.startsWith("jdoc", i)) {
+            return -1;
+        }
+        final int language = skipWhitespace(segment, i + 4);
+        if (language == i + 4) {
+            return -1;
+        }
+        i = language;
+        while (i < segment.length() && (isWordChar(segment.charAt(i)) || segment.charAt(i) == '-')) {
+            i++;
+        }
+        if (i == language || !segment.startsWith("::", i)) {
+            return -1;
+        }
+        final int name = i + 2;
+        i = name;
+        while (i < segment.length() && (isWordChar(segment.charAt(i)) || segment.charAt(i) == '.' || segment.charAt(i) == '#')) {
+            i++;
+        }
+        if (i == name) {
+            return -1;
+        }
+        targetStart = name;
+        targetEnd = i;
+        i = skipWhitespace(segment, i);
+        return segment.startsWith("%}", i) ? i + 2 : -1;
+    }
+
+    private void appendEmphasized(String segment) {
+        if (segment.indexOf('*') < 0) {
+            html.append(segment);
+            return;
+        }
+        html.append(emphasize(emphasize(segment, "**", "<b>", "</b>"), "*", "<i>", "</i>"));
+    }
+
+    /**
+     * Wraps the text between pairs of the delimiter, which does not contain an asterisk, with the given tags.
+     */
+    private static String emphasize(String segment, String delimiter, String openTag, String closeTag) {
+        int open = segment.indexOf(delimiter);
+        if (open < 0) {
+            return segment;
+        }
+        final StringBuilder out = new StringBuilder(segment.length() + 16);
+        int last = 0;
+        while (open >= 0) {
+            final int contentStart = open + delimiter.length();
+            final int close = segment.indexOf('*', contentStart);
+            if (close > contentStart && segment.startsWith(delimiter, close)) {
+                out.append(segment, last, open).append(openTag);
+                appendEscaped(out, segment, contentStart, close);
+                out.append(closeTag);
+                last = close + delimiter.length();
+                open = segment.indexOf(delimiter, last);
+            } else {
+                open = segment.indexOf(delimiter, open + 1);
+            }
+        }
+        return out.append(segment, last, segment.length()).toString();
+    }
+
+    /**
+     * @return Whether an opening or closing code tag, in any case, starts at the given index.
+     */
+    private static boolean isCodeTag(String text, int index) {
+        return text.regionMatches(true, index + 1, "code", 0, 4) || text.regionMatches(true, index + 1, "/code", 0, 5);
+    }
+
+    private static int indexOfCodeTag(String text, int from) {
+        int tag = text.indexOf('<', from);
+        while (tag >= 0 && !isCodeTag(text, tag)) {
+            tag = text.indexOf('<', tag + 1);
+        }
+        return tag;
+    }
+
+    private static int skipWhitespace(String text, int from) {
+        int i = from;
+        while (i < text.length() && isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return Whether the character is whitespace as matched by {@code \s} in a regular expression.
+     */
+    static boolean isWhitespace(char ch) {
+        return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\u000B' || ch == '\f' || ch == '\r';
+    }
+
+    /**
+     * @return Whether the character is a word character as matched by {@code \w} in a regular expression.
+     */
+    static boolean isWordChar(char ch) {
+        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || (ch >= '0' && ch <= '9') || ch == '_';
+    }
+
+    static void appendEscaped(StringBuilder out, CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            appendEscaped(out, text.charAt(i));
+        }
+    }
+
+    private static void appendEscaped(StringBuilder out, char ch) {
+        switch (ch) {
+            case '&':
+                out.append("&amp;");
+                break;
+            case '<':
+                out.append("&lt;");
+                break;
+            case '>':
+                out.append("&gt;");
+                break;
+            case '"':
+                out.append("&quot;");
+                break;
+            case '\'':
+                out.append("&#39;");
+                break;
+            default:
+                out.append(ch);
+        }
+    }
+}
@@ -32,11 +32,29 @@ public class MarkdownToHtmlConverter {
         return PMD_VERSION;
     }
 
+    // Results of the conversions, for generating the rules of several repositories or plugins in one JVM
+    private static final MarkdownConversionCache CACHE = new MarkdownConversionCache(1024);
+
+    /**
+     * Returns the cache of the converted texts and rule names, e.g. to log its statistics or to clear it.
+     */
+    public static MarkdownConversionCache getCache() {
+        return CACHE;
+    }
+
+    /**
+     * Sets the number of converted texts and rule names to cache, 0 to not cache them. The least recently used
+     * results are evicted when the cache is full.
+     */
+    public static void setCacheMaximumSize(int maximumSize) {
+        CACHE.setMaximumSize(maximumSize);
+    }
+
     /**
-     * Computes the base URL for PMD Javadoc based on the configured PMD version.
+     * Computes the base URL for PMD Javadoc of the given PMD version.
      */
-    private static String jdocBase() {
-        return "https://docs.pmd-code.org/apidocs/pmd-java/" + PMD_VERSION + "/net/sourceforge/pmd/";
+    private static String jdocBase(String pmdVersion) {
+        return "https://docs.pmd-code.org/apidocs/pmd-java/" + pmdVersion + "/net/sourceforge/pmd/";
     }
 
     // Splits paragraphs on double newlines
@@ -51,12 +69,11 @@ public class MarkdownToHtmlConverter {
     private static final Pattern LIST_ITEM_CONTINUATION_PATTERN = Pattern.compile("^[ \\t]{2,100}([^*\\-][^\r\n]*)$");
     // Matches rule references like {% rule "rulename" %}
     private static final Pattern RULE_REFERENCE_PATTERN = Pattern.compile("\\{\\%\\s*rule\\s*\"([^\"]+)\"\\s*\\%\\}");
-    // Matches document sections like "Problem:", "Solution:" etc
-    private static final Pattern SECTION_PATTERN = Pattern.compile("(Problem|Solution|Note|Notes|Exceptions):(.+?)(?=\\s+(Problem|Solution|Note|Notes|Exceptions):|$)", Pattern.DOTALL);
-    // Matches multi-line code blocks between triple backticks
-    private static final Pattern MULTI_LINE_CODE_BLOCK_PATTERN = Pattern.compile("```(\\w*)\\s*+(((?!```).)*+)```", Pattern.DOTALL);
-    // Matches code blocks between quadruple backticks
-    private static final Pattern QUADRUPLE_BACKTICK_CODE_BLOCK_PATTERN = Pattern.compile("````(\\w*)\\s*+(((?!````).)*+)````", Pattern.DOTALL);
+    // Document sections like "Problem:", "Solution:" etc; "Note" is tried before "Notes"
+    private static final String[] SECTION_KEYWORDS = {"Problem", "Solution", "Note", "Notes", "Exceptions"};
+    // Fences of multi-line code blocks
+    private static final String TRIPLE_BACKTICK_FENCE = "```";
+    private static final String QUADRUPLE_BACKTICK_FENCE = "````";
     // Matches markdown headers like "# Title"
     private static final Pattern HEADER_PATTERN = Pattern.compile("^(#{1,6})\\s++([^\r\n]++)$");
 
@@ -77,8 +94,6 @@ public class MarkdownToHtmlConverter {
     private static final Pattern CAPITALS_REST_PATTERN = Pattern.compile("^([A-Z]+)([a-z][a-zA-Z0-9]*)?");
     // Pattern to add space after digits like "123a" -> "123 a"  
     private static final Pattern DIGITS_LETTER_PATTERN = Pattern.compile("([a-zA-Z0-9]*?\\d{1,100})([a-zA-Z])");
-    // Pattern to match newlines
-    private static final Pattern NEWLINE_PATTERN = Pattern.compile("\n");
     // Pattern to match and remove trailing whitespace
     private static final Pattern TRAILING_WHITESPACE_PATTERN = Pattern.compile("[ \t\n\r]+$");
     // Pattern to match content inside <pre> tags. DOTALL flag makes dot match newlines too.
@@ -103,7 +118,12 @@ public class MarkdownToHtmlConverter {
         if (markdownText == null || markdownText.trim().isEmpty()) {
             return "";
         }
+        // read once, so that the result is rendered for the version it is cached for, even when it is changed meanwhile
+        final String pmdVersion = PMD_VERSION;
+        return CACHE.get("html", pmdVersion, markdownText, text -> renderHtml(text, jdocBase(pmdVersion)));
+    }
 
+    private static String renderHtml(String markdownText, String jdocBase) {
         // Special case for "_Note:_ This is important." pattern
         if (markdownText.trim().startsWith("_Note:_")) {
             String content = markdownText.trim().substring("_Note:_".length()).trim();
@@ -113,18 +133,20 @@ public class MarkdownToHtmlConverter {
         String result = markdownText.trim();
 
         // Handle multi-line code blocks first (both ``` and ````)
-        result = handleMultiLineCodeBlocks(result, QUADRUPLE_BACKTICK_CODE_BLOCK_PATTERN);
-        result = handleMultiLineCodeBlocks(result, MULTI_LINE_CODE_BLOCK_PATTERN);
+        result = handleMultiLineCodeBlocks(result, QUADRUPLE_BACKTICK_FENCE);
+        result = handleMultiLineCodeBlocks(result, TRIPLE_BACKTICK_FENCE);
 
         // Handle special patterns before general processing
         result = handleSpecialPatterns(result);
 
         // Handle sections with special patterns
-        result = handleSections(result);
+        result = handleSections(result, jdocBase);
 
         // Extract and preserve all <pre> blocks before any processing
         List<String> preBlocks = new ArrayList<>();
-        result = extractPreBlocks(result, preBlocks);
+        if (result.contains("<pre>")) {
+            result = extractPreBlocks(result, preBlocks);
+        }
 
         // Replace any remaining <pre> tags with special markers that won't be processed
         result = result.replace("<pre>", "PRE_TAG_START");
@@ -245,18 +267,18 @@ public class MarkdownToHtmlConverter {
                                 currentListItems.add(currentItem.toString());
                             }
                             // Start a new item
-                            currentItem = new StringBuilder(formatInlineElements(matcher.group(2)));
+                            currentItem = new StringBuilder(formatInlineElements(matcher.group(2), jdocBase));
                         } else if (line.trim().length() > 0 && currentItem != null) {
                             // Check if this is a continuation line
                             Matcher continuationMatcher = LIST_ITEM_CONTINUATION_PATTERN.matcher(line);
                             if (continuationMatcher.matches()) {
                                 // This is an indented continuation line
                                 currentItem.append(" ");
-                                currentItem.append(formatInlineElements(continuationMatcher.group(1)));
+                                currentItem.append(formatInlineElements(continuationMatcher.group(1), jdocBase));
                             } else {
                                 // Regular continuation line
                                 currentItem.append(" ");
-                                currentItem.append(formatInlineElements(line.trim()));
+                                currentItem.append(formatInlineElements(line.trim(), jdocBase));
                             }
                         }
                     }
@@ -368,7 +390,7 @@ public class MarkdownToHtmlConverter {
                 // Check if this paragraph contains a <pre> block
                 if (paragraph.contains("<pre>")) {
                     // Process the paragraph specially to preserve <pre> blocks
-                    htmlParagraphs.add(processPreBlockParagraph(paragraph));
+                    htmlParagraphs.add(processPreBlockParagraph(paragraph, jdocBase));
                 } else if (paragraph.startsWith("<ul>") && paragraph.endsWith("</ul>")) {
                     // This is already a processed list, just add it as is
                     htmlParagraphs.add(paragraph);
@@ -376,14 +398,14 @@ public class MarkdownToHtmlConverter {
                     // Check for headers first
                     String[] lines = paragraph.split("\n");
                     if (lines.length > 0 && HEADER_PATTERN.matcher(lines[0]).matches()) {
-                        htmlParagraphs.add(convertHeader(paragraph));
+                        htmlParagraphs.add(convertHeader(paragraph, jdocBase));
                     } else if (ORDERED_LIST_PARAGRAPH_PATTERN.matcher(paragraph).matches()) {
-                        htmlParagraphs.add(convertParagraphWithOrderedList(paragraph));
+                        htmlParagraphs.add(convertParagraphWithOrderedList(paragraph, jdocBase));
                     } else if (containsUnorderedListItems(lines)) {
                         // If the paragraph contains unordered list items but doesn't match the unordered list pattern
-                        htmlParagraphs.add(convertParagraphWithUnorderedList(paragraph));
+                        htmlParagraphs.add(convertParagraphWithUnorderedList(paragraph, jdocBase));
                     } else {
-                        htmlParagraphs.add("<p>" + formatInlineElements(paragraph) + "</p>");
+                        htmlParagraphs.add("<p>" + formatInlineElements(paragraph, jdocBase) + "</p>");
                     }
                 }
             }
@@ -415,7 +437,10 @@ public class MarkdownToHtmlConverter {
         if (ruleName == null || ruleName.isEmpty()) {
             return "";
         }
+        return CACHE.get("readable", PMD_VERSION, ruleName, MarkdownToHtmlConverter::toReadable);
+    }
 
+    private static String toReadable(String ruleName) {
         // Special cases for specific rule names
         if (ruleName.equals("XMLHTTPRequest")) {
             return "XMLHTTP request";
@@ -583,41 +608,64 @@ public class MarkdownToHtmlConverter {
     }
 
     /**
-     * Handles multi-line code blocks.
+     * Handles multi-line code blocks: the fence, an optional language, the code up to the next fence and the
+     * closing fence. A fence without a closing fence is left as is.
      */
-    private static String handleMultiLineCodeBlocks(String markdownText, Pattern pattern) {
-        Matcher matcher = pattern.matcher(markdownText);
-        StringBuilder sb = new StringBuilder();
+    private static String handleMultiLineCodeBlocks(String markdownText, String fence) {
+        int start = markdownText.indexOf(fence);
+        if (start < 0) {
+            return markdownText;
+        }
+        StringBuilder sb = new StringBuilder(markdownText.length() + 64);
+        int last = 0;
 
-        while (matcher.find()) {
-            String language = matcher.group(1) != null ? matcher.group(1) : "";
-            String code = matcher.group(2) != null ? matcher.group(2) : "";
+        while (start >= 0) {
+            int languageEnd = start + fence.length();
+            while (languageEnd < markdownText.length() && MarkdownInlineRenderer.isWordChar(markdownText.charAt(languageEnd))) {
+                languageEnd++;
+            }
+            int codeStart = languageEnd;
+            while (codeStart < markdownText.length() && MarkdownInlineRenderer.isWhitespace(markdownText.charAt(codeStart))) {
+                codeStart++;
+            }
+            int codeEnd = markdownText.indexOf(fence, codeStart);
+            if (codeEnd < 0) {
+                break;
+            }
+            String language = markdownText.substring(start + fence.length(), languageEnd);
+            String code = markdownText.substring(codeStart, codeEnd);
 
             // Format code with proper spacing and trim trailing whitespace
-            code = " " + NEWLINE_PATTERN.matcher(code).replaceAll("\n "); 
+            code = " " + code.replace("\n", "\n ");
             code = TRAILING_WHITESPACE_PATTERN.matcher(code).replaceAll("");
 
             // Create HTML code block with optional language class
             String langClass = language.isEmpty() ? "" : " class=\"language-" + language + "\"";
-            String html = "<pre><code" + langClass + ">" + escapeHtml(code) + "</code></pre>";
+            sb.append(markdownText, last, start)
+                    .append("<pre><code").append(langClass).append(">").append(escapeHtml(code)).append("</code></pre>");
 
-            matcher.appendReplacement(sb, escapeReplacement(html));
+            last = codeEnd + fence.length();
+            start = markdownText.indexOf(fence, last);
         }
 
-        matcher.appendTail(sb);
+        sb.append(markdownText, last, markdownText.length());
         return sb.toString();
     }
 
     /**
-     * Handles special patterns in the text.
+     * Handles special patterns in the text. The link patterns only run on text that contains a link.
      */
     private static String handleSpecialPatterns(String text) {
         String result = text;
 
         result = handleNoteItalicsPattern(result);
-        result = handlePmdRuleLinkPattern(result);
-        result = handleMarkdownLinkPattern(result);
-        result = handleUrlTagPattern(result);
+        if (result.contains("](")) {
+            result = handlePmdRuleLinkPattern(result);
+            result = handleMarkdownLinkPattern(result);
+        }
+        if (result.contains("<http")) {
+            result = handleUrlTagPattern(result);
+        }
 
         return result;
     }
@@ -676,27 +724,108 @@ public class MarkdownToHtmlConverter {
     }
 
     /**
-     * Handles sections with special patterns.
+     * Handles sections with special patterns: a section runs from its keyword, like "Problem:", up to the
+     * whitespace before the next keyword or the end of the text.
      */
-    private static String handleSections(String text) {
-        Matcher matcher = SECTION_PATTERN.matcher(text);
-        StringBuilder sb = new StringBuilder();
-
-        while (matcher.find()) {
-            String sectionType = matcher.group(1);
-            String content = matcher.group(2) != null ? matcher.group(2).trim() : "";
-            String replacement = "<p><b>" + sectionType + ":</b> " + formatInlineElements(content) + "</p>";
-            matcher.appendReplacement(sb, escapeReplacement(replacement));
+    private static String handleSections(String text, String jdocBase) {
+        StringBuilder sb = null;
+        int last = 0;
+
+        for (int start = 0; start < text.length() - 1; start++) {
+            int keywordLength = sectionKeywordLength(text, start);
+            int contentStart = start + keywordLength + 1;
+            if (keywordLength < 0 || contentStart >= text.length()) {
+                continue;
+            }
+            int contentEnd = sectionEnd(text, contentStart + 1);
+            String sectionType = text.substring(start, start + keywordLength);
+            String content = text.substring(contentStart, contentEnd).trim();
+            if (sb == null) {
+                sb = new StringBuilder(text.length() + 64);
+            }
+            sb.append(text, last, start)
+                    .append("<p><b>").append(sectionType).append(":</b> ").append(formatInlineElements(content, jdocBase)).append("</p>");
+            last = contentEnd;
+            start = contentEnd - 1;
         }
 
-        matcher.appendTail(sb);
+        if (sb == null) {
+            return text;
+        }
+        sb.append(text, last, text.length());
         return sb.toString();
     }
 
+    /**
+     * @return The length of the section keyword followed by a colon at the given index, -1 if there is none.
+     */
+    private static int sectionKeywordLength(String text, int index) {
+        char first = text.charAt(index);
+        if (first != 'P' && first != 'S' && first != 'N' && first != 'E') {
+            return -1;
+        }
+        for (String keyword : SECTION_KEYWORDS) {
+            if (text.startsWith(keyword, index) && text.startsWith(":", index + keyword.length())) {
+                return keyword.length();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The end of the section content, the first index from the given one where whitespace followed by the
+     * next keyword starts, or the end of the text.
+     */
+    private static int sectionEnd(String text, int from) {
+        int i = from;
+        while (!isEndOfText(text, i)) {
+            if (MarkdownInlineRenderer.isWhitespace(text.charAt(i))) {
+                int next = i;
+                while (next < text.length() && MarkdownInlineRenderer.isWhitespace(text.charAt(next))) {
+                    next++;
+                }
+                if (next < text.length() && sectionKeywordLength(text, next) >= 0) {
+                    return i;
+                }
+                // the whitespace may hold the end of the text, i.e. a final line terminator
+                for (i++; i < next; i++) {
+                    if (isEndOfText(text, i)) {
+                        return i;
+                    }
+                }
+            } else {
+                i++;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * @return Whether the index is at the end of the text as matched by {@code $} in a regular expression: the end,
+     * or before a final line terminator.
+     */
+    private static boolean isEndOfText(String text, int index) {
+        int length = text.length();
+        if (index >= length) {
+            return true;
+        }
+        if (index == length - 2) {
+            return text.charAt(index) == '\r' && text.charAt(index + 1) == '\n';
+        }
+        if (index == length - 1) {
+            char last = text.charAt(index);
+            if (last == '\n') {
+                return index == 0 || text.charAt(index - 1) != '\r';
+            }
+            return last == '\r' || last == '\u0085' || last == '\u2028' || last == '\u2029';
+        }
+        return false;
+    }
+
     /**
      * Converts a header paragraph to HTML.
      */
-    private static String convertHeader(String headerText) {
+    private static String convertHeader(String headerText, String jdocBase) {
         String[] lines = headerText.split("\n");
         StringBuilder result = new StringBuilder();
 
@@ -706,11 +835,11 @@ public class MarkdownToHtmlConverter {
                 String hashes = matcher.group(1);
                 String content = matcher.group(2);
                 int level = hashes.length();
-                result.append("<h").append(level).append(">").append(formatInlineElements(content)).append("</h").append(level).append(">");
+                result.append("<h").append(level).append(">").append(formatInlineElements(content, jdocBase)).append("</h").append(level).append(">");
             } else {
                 // Handle continuation lines as regular paragraph content
                 if (!line.trim().isEmpty()) {
-                    result.append("<p>").append(formatInlineElements(line)).append("</p>");
+                    result.append("<p>").append(formatInlineElements(line, jdocBase)).append("</p>");
                 }
             }
         }
@@ -721,7 +850,7 @@ public class MarkdownToHtmlConverter {
     /**
      * Converts a paragraph with ordered list to HTML.
      */
-    private static String convertParagraphWithOrderedList(String paragraph) {
+    private static String convertParagraphWithOrderedList(String paragraph, String jdocBase) {
         String[] lines = paragraph.split("\n");
         StringBuilder result = new StringBuilder();
         boolean inList = false;
@@ -735,11 +864,11 @@ public class MarkdownToHtmlConverter {
                 }
                 Matcher matcher = LIST_ITEM_PATTERN.matcher(line);
                 if (matcher.find()) {
-                    result.append("<li>").append(formatInlineElements(matcher.group(3))).append("</li>");
+                    result.append("<li>").append(formatInlineElements(matcher.group(3), jdocBase)).append("</li>");
                 }
             } else if (!line.isEmpty() && inList) {
                 // Continuation of previous list item - add space but no line break
-                result.append(" ").append(formatInlineElements(line));
+                result.append(" ").append(formatInlineElements(line, jdocBase));
             }
         }
 
@@ -765,7 +894,7 @@ public class MarkdownToHtmlConverter {
     /**
      * Converts a paragraph with unordered list to HTML.
      */
-    private static String convertParagraphWithUnorderedList(String paragraphText) {
+    private static String convertParagraphWithUnorderedList(String paragraphText, String jdocBase) {
         String[] lines = paragraphText.split("\n");
         StringBuilder result = new StringBuilder();
         boolean inList = false;
@@ -802,7 +931,7 @@ public class MarkdownToHtmlConverter {
                 }
 
                 // Add content to the new list item
-                currentListItem.append(formatInlineElements(listItemMatcher.group(2)));
+                currentListItem.append(formatInlineElements(listItemMatcher.group(2), jdocBase));
                 inListItem = true;
 
             } else if (inList) {
@@ -816,10 +945,10 @@ public class MarkdownToHtmlConverter {
 
                     if (continuationMatcher.matches()) {
                         // Indented continuation line
-                        currentListItem.append(formatInlineElements(continuationMatcher.group(1)));
+                        currentListItem.append(formatInlineElements(continuationMatcher.group(1), jdocBase));
                     } else {
                         // Regular continuation line
-                        currentListItem.append(formatInlineElements(trimmedLine));
+                        currentListItem.append(formatInlineElements(trimmedLine, jdocBase));
                     }
                 }
 
@@ -831,7 +960,7 @@ public class MarkdownToHtmlConverter {
                     paragraphStarted = true;
                 }
 
-                result.append(formatInlineElements(trimmedLine));
+                result.append(formatInlineElements(trimmedLine, jdocBase));
             }
         }
 
@@ -854,11 +983,11 @@ public class MarkdownToHtmlConverter {
     /**
      * Formats inline elements in the text.
      */
-    private static String formatInlineElements(String text) {
+    private static String formatInlineElements(String text, String jdocBase) {
         if (text == null || text.isEmpty()) return "";
         // Pre blocks are handled elsewhere (globally extracted or via processPreBlockParagraph),
         // so we can directly format the text here.
-        return formatTextWithoutPre(text);
+        return formatTextWithoutPre(text, jdocBase);
     }
 
 
@@ -870,11 +999,20 @@ public class MarkdownToHtmlConverter {
      */
 
     /**
-     * Formats text without <pre> blocks.
+     * Formats text without <pre> blocks, in a single pass unless the text holds code HTML the single pass
+     * does not support.
      */
-    private static String formatTextWithoutPre(String text) {
+    private static String formatTextWithoutPre(String text, String jdocBase) {
         if (text == null || text.isEmpty()) return "";
 
+        String html = MarkdownInlineRenderer.render(text, jdocBase);
+        return html != null ? html : formatTextInStages(text, jdocBase);
+    }
+
+    /**
+     * Formats text without <pre> blocks one kind of inline element after the other.
+     */
+    private static String formatTextInStages(String text, String jdocBase) {
         String result = text;
 
         // First convert backticks to <code>...</code>
@@ -887,14 +1025,14 @@ public class MarkdownToHtmlConverter {
         while (codeTagMatcher.find()) {
             String before = result.substring(lastEnd, codeTagMatcher.start());
             before = handleRuleReferencePattern(before);
-            before = handleJdocPattern(before);
+            before = handleJdocPattern(before, jdocBase);
             assembled.append(before);
             assembled.append(codeTagMatcher.group(1));
             lastEnd = codeTagMatcher.end();
         }
         String tail = result.substring(lastEnd);
         tail = handleRuleReferencePattern(tail);
-        tail = handleJdocPattern(tail);
+        tail = handleJdocPattern(tail, jdocBase);
         assembled.append(tail);
         result = assembled.toString();
 
@@ -922,11 +1060,11 @@ public class MarkdownToHtmlConverter {
     /**
      * Handles jdoc references.
      */
-    private static String handleJdocPattern(String result) {
+    private static String handleJdocPattern(String result, String jdocBase) {
         Matcher jdocMatcher = JDOC_REFERENCE_PATTERN.matcher(result);
         StringBuilder sbJdoc = new StringBuilder();
         while (jdocMatcher.find()) {
-            String replacement = createJdocReference(jdocMatcher);
+            String replacement = createJdocReference(jdocMatcher, jdocBase);
             jdocMatcher.appendReplacement(sbJdoc, escapeReplacement(replacement));
         }
         jdocMatcher.appendTail(sbJdoc);
@@ -936,20 +1074,32 @@ public class MarkdownToHtmlConverter {
     /**
      * Creates a jdoc reference link.
      */
-    private static String createJdocReference(Matcher match) {
+    private static String createJdocReference(Matcher match, String jdocBase) {
         String fullyQualifiedName = match.group(2);
+        return escapeReplacement("<a href=\"" + jdocUrl(fullyQualifiedName, jdocBase) + "\"><code>" + jdocDisplayText(fullyQualifiedName) + "</code></a>");
+    }
 
+    /**
+     * Builds the Javadoc URL of a class, or a member of it, like "lang.java.metrics.JavaMetrics#WEIGHT_OF_CLASS".
+     */
+    static String jdocUrl(String fullyQualifiedName, String jdocBase) {
         // Extract class name and member name if present
         int hashIndex = fullyQualifiedName.indexOf('#');
         String className = hashIndex > 0 ? fullyQualifiedName.substring(0, hashIndex) : fullyQualifiedName;
         String memberName = hashIndex > 0 ? fullyQualifiedName.substring(hashIndex + 1) : "";
 
-        // Build URL and determine display text
         String urlPath = className.replace('.', '/');
-        String url = jdocBase() + urlPath + ".html" + (memberName.isEmpty() ? "" : "#" + memberName);
-        String displayText = memberName.isEmpty() ? className.substring(className.lastIndexOf('.') + 1) : memberName;
+        return jdocBase + urlPath + ".html" + (memberName.isEmpty() ? "" : "#" + memberName);
+    }
 
-        return escapeReplacement("<a href=\"" + url + "\"><code>" + displayText + "</code></a>");
+    /**
+     * Determines the text of a Javadoc link: the member name, or else the simple class name.
+     */
+    static String jdocDisplayText(String fullyQualifiedName) {
+        int hashIndex = fullyQualifiedName.indexOf('#');
+        String className = hashIndex > 0 ? fullyQualifiedName.substring(0, hashIndex) : fullyQualifiedName;
+        String memberName = hashIndex > 0 ? fullyQualifiedName.substring(hashIndex + 1) : "";
+        return memberName.isEmpty() ? className.substring(className.lastIndexOf('.') + 1) : memberName;
     }
 
     /**
@@ -1039,11 +1189,9 @@ public class MarkdownToHtmlConverter {
      */
     private static String escapeHtml(String text) {
         if (text == null || text.isEmpty()) return "";
-        return text.replace("&", "&amp;")
-                .replace("<", "&lt;")
-                .replace(">", "&gt;")
-                .replace("\"", "&quot;")
-                .replace("'", "&#39;");
+        StringBuilder escaped = new StringBuilder(text.length() + 16);
+        MarkdownInlineRenderer.appendEscaped(escaped, text, 0, text.length());
+        return escaped.toString();
     }
 
 
@@ -1065,7 +1213,7 @@ public class MarkdownToHtmlConverter {
     /**
      * Process a paragraph that contains <pre> blocks.
      */
-    private static String processPreBlockParagraph(String paragraph) {
+    private static String processPreBlockParagraph(String paragraph, String jdocBase) {
         // Extract all <pre> blocks from the paragraph
         List<String> preBlocks = new ArrayList<>();
         Matcher matcher = PRE_BLOCK_PATTERN.matcher(paragraph);
@@ -1085,8 +1233,8 @@ public class MarkdownToHtmlConverter {
 
         // Process as header or regular paragraph
         String processedText = lines.length > 0 && HEADER_PATTERN.matcher(lines[0].trim()).matches()
-                ? convertHeader(textWithoutPre)
-                : "<p>" + formatInlineElements(textWithoutPre) + "</p>";
+                ? convertHeader(textWithoutPre, jdocBase)
+                : "<p>" + formatInlineElements(textWithoutPre, jdocBase) + "</p>";
 
         // Restore <pre> blocks
         for (int i = 0; i < preBlocks.size(); i++) {
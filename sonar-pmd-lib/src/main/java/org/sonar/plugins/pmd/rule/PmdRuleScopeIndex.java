@@ -0,0 +1,112 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd.rule;
+
+import org.sonar.api.rule.RuleScope;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Precomputed rule scopes of a rules XML, stored next to it as resource with the suffix {@value #SUFFIX}.
+ * <p>
+ * Deriving the scopes means parsing the whole rules XML, descriptions included, on every scanner start. The build
+ * runs {@link #main(String[])} on the bundled rules XMLs instead, and {@link PmdRuleScopeRegistry} reads the index
+ * when there is one. The format is binary: a format version, the number of rules, and per rule its key and scope.
+ */
+public final class PmdRuleScopeIndex {
+
+    public static final String SUFFIX = ".scopes";
+    private static final int FORMAT_VERSION = 1;
+    private static final RuleScope[] SCOPES = RuleScope.values();
+
+    private PmdRuleScopeIndex() {
+    }
+
+    /**
+     * @return The location of the index of the given rules XML.
+     */
+    static String indexPathOf(String xmlPath) {
+        return xmlPath + SUFFIX;
+    }
+
+    static void write(Map<String, RuleScope> scopes, OutputStream output) throws IOException {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output));
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(scopes.size());
+        for (Map.Entry<String, RuleScope> scope : scopes.entrySet()) {
+            out.writeUTF(scope.getKey());
+            out.writeByte(scope.getValue().ordinal());
+        }
+        out.flush();
+    }
+
+    /**
+     * @throws IOException Also when the index was written in another format version, so that the caller falls back
+     * to the rules XML.
+     */
+    static Map<String, RuleScope> read(InputStream input) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(input));
+        final int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported rule scope index version " + version);
+        }
+        final int size = in.readInt();
+        final Map<String, RuleScope> scopes = new LinkedHashMap<>(size * 4 / 3 + 1);
+        for (int i = 0; i < size; i++) {
+            final String key = in.readUTF();
+            final int scope = in.readUnsignedByte();
+            if (scope >= SCOPES.length) {
+                throw new IOException("Invalid scope " + scope + " for rule " + key);
+            }
+            scopes.put(key, SCOPES[scope]);
+        }
+        return scopes;
+    }
+
+    /**
+     * Writes the index of each given rules XML file next to it. Run by the build of the plugin.
+     *
+     * @param args The paths of the rules XML files
+     */
+    public static void main(String[] args) throws IOException {
+        for (String arg : args) {
+            final Path xmlFile = Paths.get(arg);
+            final Map<String, RuleScope> scopes;
+            try (InputStream in = Files.newInputStream(xmlFile)) {
+                scopes = PmdRuleScopeRegistry.loadRuleScopesFromStream(in, StandardCharsets.UTF_8);
+            }
+            try (OutputStream out = Files.newOutputStream(xmlFile.resolveSibling(indexPathOf(xmlFile.getFileName().toString())))) {
+                write(scopes, out);
+            }
+        }
+    }
+}
@@ -30,6 +30,7 @@ import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.events.Attribute;
 import javax.xml.stream.events.StartElement;
 import javax.xml.stream.events.XMLEvent;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
@@ -38,6 +39,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -47,6 +49,7 @@ import java.net.URL;
  * Registry that stores the scope (MAIN, TEST, ALL) for each PMD rule by parsing the XML rule definitions.
  * This allows accurate scope determination during batch analysis without relying on heuristics.
  * Uses the same scope determination logic as {@link RulesDefinitionXmlLoader}.
+ * When a rules XML comes with a {@link PmdRuleScopeIndex}, the precomputed scopes are read instead.
  */
 public class PmdRuleScopeRegistry {
 
@@ -54,7 +57,10 @@ public class PmdRuleScopeRegistry {
 
     private static final String ELEMENT_RULE = "rule";
 
-    private final Map<String, RuleScope> ruleScopeMap = new HashMap<>();
+    /**
+     * Immutable snapshot of the scopes, replaced as a whole when rule XMLs are added, so that lookups need no locking.
+     */
+    private volatile Map<String, RuleScope> ruleScopeMap = Map.of();
     private final Set<String> loadedResources = new HashSet<>();
 
     private static volatile PmdRuleScopeRegistry INSTANCE;
@@ -81,17 +87,19 @@ public class PmdRuleScopeRegistry {
         if (xmlResourcePaths == null) {
             return;
         }
+        final Map<String, RuleScope> scopes = new HashMap<>(ruleScopeMap);
         for (String path : xmlResourcePaths) {
             LOGGER.info("Loading rule scopes from XML '{}'", path);
             if (path == null) {
                 continue;
             }
             if (loadedResources.add(path)) { // only load once
-                loadRulesFromXml(path);
+                loadRulesFromXml(path, scopes);
             } else {
                 LOGGER.debug("Rule scopes for XML '{}' already loaded, skipping.", path);
             }
         }
+        publish(scopes);
     }
 
     /**
@@ -102,6 +110,7 @@ public class PmdRuleScopeRegistry {
         if (urls == null) {
             return;
         }
+        final Map<String, RuleScope> scopes = new HashMap<>(ruleScopeMap);
         for (URL url : urls) {
             if (url == null) {
                 continue;
@@ -109,25 +118,46 @@ public class PmdRuleScopeRegistry {
             String id = url.toExternalForm();
             if (loadedResources.add(id)) {
                 LOGGER.info("Loading rule scopes from URL '{}'", id);
-                loadRulesFromUrl(url);
+                loadRulesFromUrl(url, scopes);
             } else {
                 LOGGER.debug("Rule scopes for URL '{}' already loaded, skipping.", id);
             }
         }
+        publish(scopes);
+    }
+
+    /**
+     * Replaces the snapshot read by {@link #getScope(String)}. {@link Map#copyOf(Map)} stores the entries in a
+     * compact open addressing table.
+     */
+    private void publish(Map<String, RuleScope> scopes) {
+        if (!scopes.equals(ruleScopeMap)) {
+            ruleScopeMap = Map.copyOf(scopes);
+        }
     }
 
 
     /**
-     * Gets the scope for a rule key.
+     * Gets the scope for a rule key. Safe to call from any thread without locking.
      *
      * @param ruleKey The rule key
      * @return The rule scope, or RuleScope.ALL if not found
      */
     public RuleScope getScope(String ruleKey) {
+        if (ruleKey == null) {
+            return RuleScope.ALL;
+        }
         return ruleScopeMap.getOrDefault(ruleKey, RuleScope.ALL);
     }
 
-    private void loadRulesFromXml(String xmlResourcePath) {
+    private void loadRulesFromXml(String xmlResourcePath, Map<String, RuleScope> target) {
+        try (InputStream indexStream = getClass().getResourceAsStream(PmdRuleScopeIndex.indexPathOf(xmlResourcePath))) {
+            if (indexStream != null && loadRulesFromIndex(indexStream, xmlResourcePath, target)) {
+                return;
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Failed to close rule scope index of {}", xmlResourcePath, e);
+        }
         try (InputStream inputStream = getClass().getResourceAsStream(xmlResourcePath)) {
             if (inputStream == null) {
                 LOGGER.warn("Cannot find XML resource: {}", xmlResourcePath);
@@ -135,7 +165,7 @@ public class PmdRuleScopeRegistry {
             }
 
             Map<String, RuleScope> scopes = loadRuleScopesFromStream(inputStream, StandardCharsets.UTF_8);
-            ruleScopeMap.putAll(scopes);
+            target.putAll(scopes);
 
             LOGGER.debug("Loaded {} rule scopes from {}", scopes.size(), xmlResourcePath);
         } catch (Exception e) {
@@ -143,18 +173,43 @@ public class PmdRuleScopeRegistry {
         }
     }
 
-    private void loadRulesFromUrl(URL url) {
+    private void loadRulesFromUrl(URL url, Map<String, RuleScope> target) {
+        try (InputStream indexStream = new URL(PmdRuleScopeIndex.indexPathOf(url.toExternalForm())).openStream()) {
+            if (loadRulesFromIndex(indexStream, url, target)) {
+                return;
+            }
+        } catch (IOException e) {
+            // no index, e.g. rules XML of a third party plugin
+            LOGGER.trace("No rule scope index for {}", url);
+        }
         try (InputStream inputStream = url.openStream()) {
             Map<String, RuleScope> scopes = loadRuleScopesFromStream(inputStream, StandardCharsets.UTF_8);
-            ruleScopeMap.putAll(scopes);
+            target.putAll(scopes);
             LOGGER.debug("Loaded {} rule scopes from URL {}", scopes.size(), url);
         } catch (Exception e) {
             LOGGER.error("Failed to load rule scopes from URL {}", url, e);
         }
     }
 
-    private Map<String, RuleScope> loadRuleScopesFromStream(InputStream input, Charset charset) {
-        Map<String, RuleScope> scopeMap = new HashMap<>();
+    /**
+     * Loads the precomputed scopes of a rules XML, see {@link PmdRuleScopeIndex}.
+     *
+     * @return false when the index can not be read, the rules XML has to be parsed then
+     */
+    private boolean loadRulesFromIndex(InputStream indexStream, Object source, Map<String, RuleScope> target) {
+        try {
+            Map<String, RuleScope> scopes = PmdRuleScopeIndex.read(indexStream);
+            target.putAll(scopes);
+            LOGGER.debug("Loaded {} rule scopes from the index of {}", scopes.size(), source);
+            return true;
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read the rule scope index of {}, parsing the XML instead", source, e);
+            return false;
+        }
+    }
+
+    static Map<String, RuleScope> loadRuleScopesFromStream(InputStream input, Charset charset) {
+        Map<String, RuleScope> scopeMap = new LinkedHashMap<>();
         try (Reader reader = new InputStreamReader(input, charset)) {
             XMLInputFactory xmlFactory = XMLInputFactory.newInstance();
             xmlFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
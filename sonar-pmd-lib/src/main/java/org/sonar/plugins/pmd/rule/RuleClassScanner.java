@@ -0,0 +1,203 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd.rule;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Finds the rule classes of a jar, the classes that are or extend {@link JavaRulePropertyExtractor#ABSTRACT_RULE_CLASS_NAME},
+ * by reading the superclass names from the constant pools of the class files, without loading any class.
+ * <p>
+ * Superclasses outside the jar are read from the class files the given class loader finds for them.
+ */
+final class RuleClassScanner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RuleClassScanner.class);
+
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final String ABSTRACT_RULE = JavaRulePropertyExtractor.ABSTRACT_RULE_CLASS_NAME.replace('.', '/');
+    private static final String OBJECT = "java/lang/Object";
+
+    private final ClassLoader classLoader;
+    // internal class name -> internal name of its superclass, null for none or an unreadable class file
+    private final Map<String, String> superclasses = new HashMap<>();
+    private final Map<String, Boolean> ruleClasses = new HashMap<>();
+
+    RuleClassScanner(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * @return The binary names of the rule classes of the jar, in the order of their entries.
+     */
+    List<String> scan(JarFile jarFile) throws IOException {
+        final Map<String, String> classes = new LinkedHashMap<>();
+        final Enumeration<JarEntry> entries = jarFile.entries();
+        while (entries.hasMoreElements()) {
+            final JarEntry entry = entries.nextElement();
+            if (entry.getName().endsWith(".class") && !entry.getName().startsWith("META-INF/")) {
+                final String className = entry.getName().substring(0, entry.getName().length() - ".class".length());
+                try (InputStream input = jarFile.getInputStream(entry)) {
+                    classes.put(className, superclassOf(className, input.readAllBytes()));
+                }
+            }
+        }
+        superclasses.putAll(classes);
+
+        final List<String> result = new ArrayList<>();
+        for (String className : classes.keySet()) {
+            if (isRuleClass(className)) {
+                result.add(className.replace('/', '.'));
+            }
+        }
+        LOGGER.debug("Found {} rule classes in {} classes of jar file: {}", result.size(), classes.size(), jarFile.getName());
+        return result;
+    }
+
+    private boolean isRuleClass(String className) {
+        final List<String> hierarchy = new ArrayList<>();
+        String current = className;
+        Boolean rule = null;
+        while (rule == null) {
+            if (current == null || OBJECT.equals(current)) {
+                rule = Boolean.FALSE;
+            } else if (ABSTRACT_RULE.equals(current)) {
+                rule = Boolean.TRUE;
+            } else {
+                rule = ruleClasses.get(current);
+                if (rule == null) {
+                    hierarchy.add(current);
+                    current = superclass(current);
+                }
+            }
+        }
+        for (String visited : hierarchy) {
+            ruleClasses.put(visited, rule);
+        }
+        return rule;
+    }
+
+    private String superclass(String className) {
+        if (superclasses.containsKey(className)) {
+            return superclasses.get(className);
+        }
+        String superclass = null;
+        try (InputStream input = classLoader.getResourceAsStream(className + ".class")) {
+            if (input != null) {
+                superclass = superclassOf(className, input.readAllBytes());
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Could not read class file: {}", className, e);
+        }
+        superclasses.put(className, superclass);
+        return superclass;
+    }
+
+    /**
+     * Reads the name of the superclass from a class file: the magic number, the versions, the constant pool, the
+     * access flags, this class and the superclass.
+     *
+     * @return The internal name of the superclass, null if there is none or the class file is malformed
+     */
+    static String superclassOf(String className, byte[] classFile) {
+        try {
+            final DataInputStream input = new DataInputStream(new ByteArrayInputStream(classFile));
+            if (input.readInt() != MAGIC) {
+                LOGGER.debug("Not a class file: {}", className);
+                return null;
+            }
+            input.skipBytes(4);
+            final int constantPoolCount = input.readUnsignedShort();
+            // per constant: the index of the name of a class, the offset of a string in the class file
+            final int[] classNames = new int[constantPoolCount];
+            final int[] utf8Offsets = new int[constantPoolCount];
+            int offset = 10;
+            for (int i = 1; i < constantPoolCount; i++) {
+                final int tag = input.readUnsignedByte();
+                offset++;
+                final int length;
+                switch (tag) {
+                    case 1: // Utf8
+                        utf8Offsets[i] = offset;
+                        length = 2 + input.readUnsignedShort();
+                        input.skipBytes(length - 2);
+                        break;
+                    case 7: // Class
+                        classNames[i] = input.readUnsignedShort();
+                        length = 2;
+                        break;
+                    case 8: // String
+                    case 16: // MethodType
+                    case 19: // Module
+                    case 20: // Package
+                        length = input.skipBytes(2);
+                        break;
+                    case 15: // MethodHandle
+                        length = input.skipBytes(3);
+                        break;
+                    case 3: // Integer
+                    case 4: // Float
+                    case 9: // Fieldref
+                    case 10: // Methodref
+                    case 11: // InterfaceMethodref
+                    case 12: // NameAndType
+                    case 17: // Dynamic
+                    case 18: // InvokeDynamic
+                        length = input.skipBytes(4);
+                        break;
+                    case 5: // Long
+                    case 6: // Double
+                        length = input.skipBytes(8);
+                        // takes two entries
+                        i++;
+                        break;
+                    default:
+                        LOGGER.debug("Unknown constant pool tag {} in class file: {}", tag, className);
+                        return null;
+                }
+                offset += length;
+            }
+            // access flags and this class
+            input.skipBytes(4);
+            final int superclass = input.readUnsignedShort();
+            if (superclass == 0) {
+                return null;
+            }
+            return new DataInputStream(new ByteArrayInputStream(classFile, utf8Offsets[classNames[superclass]], classFile.length)).readUTF();
+        } catch (IOException | IndexOutOfBoundsException e) {
+            LOGGER.debug("Malformed class file: {}", className, e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd.rule;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MarkdownConversionCacheTest {
+
+    private final List<String> converted = new ArrayList<>();
+    private final UnaryOperator<String> converter = input -> {
+        converted.add(input);
+        return input.toUpperCase();
+    };
+
+    @Test
+    void caches_results_by_conversion_pmd_version_and_input() {
+        MarkdownConversionCache cache = new MarkdownConversionCache(10);
+
+        assertThat(cache.get("html", "7.17.0", "a", converter)).isEqualTo("A");
+        assertThat(cache.get("html", "7.17.0", "a", converter)).isEqualTo("A");
+        cache.get("html", "7.18.0", "a", converter);
+        cache.get("readable", "7.17.0", "a", converter);
+
+        assertThat(converted).containsExactly("a", "a", "a");
+        MarkdownConversionCache.Statistics statistics = cache.statistics();
+        assertThat(statistics.getHits()).isEqualTo(1);
+        assertThat(statistics.getMisses()).isEqualTo(3);
+        assertThat(statistics.getSize()).isEqualTo(3);
+        assertThat(statistics.getHitRate()).isEqualTo(0.25);
+    }
+
+    @Test
+    void evicts_the_least_recently_used_result() {
+        MarkdownConversionCache cache = new MarkdownConversionCache(2);
+        cache.get("html", "7.17.0", "a", converter);
+        cache.get("html", "7.17.0", "b", converter);
+        cache.get("html", "7.17.0", "a", converter);
+
+        cache.get("html", "7.17.0", "c", converter);
+        cache.get("html", "7.17.0", "a", converter);
+        cache.get("html", "7.17.0", "b", converter);
+
+        assertThat(converted).containsExactly("a", "b", "c", "b");
+        assertThat(cache.statistics().getEvictions()).isEqualTo(2);
+        assertThat(cache.statistics().getSize()).isEqualTo(2);
+    }
+
+    @Test
+    void shrinking_evicts_and_zero_disables_the_cache() {
+        MarkdownConversionCache cache = new MarkdownConversionCache(10);
+        cache.get("html", "7.17.0", "a", converter);
+        cache.get("html", "7.17.0", "b", converter);
+
+        cache.setMaximumSize(0);
+        cache.get("html", "7.17.0", "a", converter);
+        cache.get("html", "7.17.0", "a", converter);
+
+        assertThat(converted).containsExactly("a", "b", "a", "a");
+        assertThat(cache.statistics().getSize()).isZero();
+        assertThat(cache.statistics().getEvictions()).isEqualTo(2);
+        assertThatThrownBy(() -> cache.setMaximumSize(-1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void clear_drops_results_and_statistics() {
+        MarkdownConversionCache cache = new MarkdownConversionCache(10);
+        cache.get("html", "7.17.0", "a", converter);
+        cache.get("html", "7.17.0", "a", converter);
+
+        cache.clear();
+
+        assertThat(cache.statistics().toString()).isEqualTo("hits=0, misses=0, hit rate=0.0%, evictions=0, size=0/10");
+        cache.get("html", "7.17.0", "a", converter);
+        assertThat(converted).containsExactly("a", "a");
+    }
+
+    @Test
+    void converter_reuses_the_html_and_readable_names_it_already_produced() {
+        MarkdownToHtmlConverter.getCache().clear();
+
+        String html = MarkdownToHtmlConverter.convertToHtml("Avoid **this**, see {% rule \"AvoidThat\" %}");
+        String readable = MarkdownToHtmlConverter.camelCaseToReadable("UseArrayListInsteadOfVector");
+
+        assertThat(MarkdownToHtmlConverter.convertToHtml("Avoid **this**, see {% rule \"AvoidThat\" %}")).isSameAs(html);
+        assertThat(MarkdownToHtmlConverter.camelCaseToReadable("UseArrayListInsteadOfVector")).isSameAs(readable);
+        assertThat(MarkdownToHtmlConverter.getCache().statistics().getHits()).isEqualTo(2);
+        assertThat(MarkdownToHtmlConverter.getCache().statistics().getMisses()).isEqualTo(2);
+    }
+
+    @Test
+    void converter_links_to_the_javadoc_of_the_pmd_version_the_html_is_cached_for() {
+        String markdown = "See {% jdoc java::lang.java.ast.ASTMethodCall %}";
+        String pmdVersion = MarkdownToHtmlConverter.getPmdVersion();
+        try {
+            MarkdownToHtmlConverter.setPmdVersion("7.0.0");
+            String html = MarkdownToHtmlConverter.convertToHtml(markdown);
+            MarkdownToHtmlConverter.setPmdVersion("7.1.0");
+
+            assertThat(html).contains("/pmd-java/7.0.0/").doesNotContain("7.1.0");
+            assertThat(MarkdownToHtmlConverter.convertToHtml(markdown)).contains("/pmd-java/7.1.0/").doesNotContain("7.0.0");
+        } finally {
+            MarkdownToHtmlConverter.setPmdVersion(pmdVersion);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd.rule;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the HTML of {@link MarkdownToHtmlConverter} with the expected HTML of {@link MarkdownToHtmlGoldenCorpus}.
+ */
+class MarkdownToHtmlConverterGoldenTest {
+
+    @Test
+    void converts_the_golden_corpus_to_the_expected_html() {
+        Map<String, String[]> cases = MarkdownToHtmlGoldenCorpus.load();
+
+        assertThat(cases).hasSizeGreaterThan(450);
+        cases.forEach((name, markdownAndHtml) ->
+                assertThat(MarkdownToHtmlConverter.convertToHtml(markdownAndHtml[0]))
+                        .as(name)
+                        .isEqualTo(markdownAndHtml[1]));
+    }
+
+    @Test
+    void leaves_raw_code_html_unformatted() {
+        String markdown = "See <code class=\"language-java\">**a** `b`</code> and <CODE>*c*</CODE> or **d**";
+
+        assertThat(MarkdownToHtmlConverter.convertToHtml(markdown))
+                .isEqualTo("<p>See <code class=\"language-java\">**a** `b`</code> and <CODE>*c*</CODE> or <b>d</b></p>");
+    }
+}
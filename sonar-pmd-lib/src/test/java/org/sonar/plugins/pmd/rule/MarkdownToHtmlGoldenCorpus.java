@@ -0,0 +1,155 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd.rule;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Markdown with the HTML {@link MarkdownToHtmlConverter} is expected to convert it to: the descriptions of the PMD
+ * Java rules and random Markdown built from the constructs the converter handles. The expected HTML was produced
+ * by the regex based converter the tokenizing converter replaced.
+ * <p>
+ * After an intended change of the HTML, regenerate the corpus with {@link #main(String[])} and review its diff:
+ * <pre>
+ * java -cp target/test-classes:target/classes:... org.sonar.plugins.pmd.rule.MarkdownToHtmlGoldenCorpus \
+ *     src/test/resources/org/sonar/plugins/pmd/rule/markdown-to-html-golden.txt
+ * </pre>
+ * Each case takes three lines, the name, the Markdown and the HTML, with backslashes, line feeds, carriage
+ * returns and tabs escaped. A space at the end of a line is escaped as well, so that no line ends with whitespace.
+ */
+final class MarkdownToHtmlGoldenCorpus {
+
+    private static final String RESOURCE = "markdown-to-html-golden.txt";
+    private static final String CASE = "case:";
+    private static final String MARKDOWN = "markdown:";
+    private static final String HTML = "html:";
+
+    private static final long SEED = 20251018L;
+    private static final int RANDOM_CASES = 200;
+    private static final String[] TOKENS = {
+            "word", "two words", " ", "  ", "\t", "\n", "\n\n", "\n  ", "\r\n", " ", ".", ":", "(", ")",
+            "*", "**", "`", "``", "```", "````", "java", "<", ">", "&", "\"", "'", "{%", "%}", "{", "#", "- ", "* ",
+            "1. ", "# ", "## Title", "<code>", "</code>", "<CODE>", "<code class=\"x\">", "<code >", "<pre>", "</pre>",
+            "{% rule \"AvoidThis\" %}", "{% rule \"a*b\" %}", "{%rule\"x\"%}", "{% jdoc java::lang.java.ast.ASTType %}",
+            "{% jdoc java::lang.java.metrics.JavaMetrics#WEIGHT_OF_CLASS %}", "{% jdoc core::lang. %}",
+            "Problem:", "Solution:", "Note:", "Notes:", "Exceptions:", "_Note:_", "[text](https://example.org)",
+            "[rule](pmd_rules_java_bestpractices.html#rule)", "<https://example.org>"
+    };
+
+    private MarkdownToHtmlGoldenCorpus() {
+    }
+
+    /**
+     * @return The Markdown and the expected HTML, per case name.
+     */
+    static Map<String, String[]> load() {
+        final Map<String, String[]> cases = new LinkedHashMap<>();
+        try (InputStream input = MarkdownToHtmlGoldenCorpus.class.getResourceAsStream(RESOURCE);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(CASE)) {
+                    final String markdown = unescape(reader.readLine(), MARKDOWN);
+                    final String html = unescape(reader.readLine(), HTML);
+                    cases.put(unescape(line, CASE), new String[]{markdown, html});
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read the golden corpus " + RESOURCE, e);
+        }
+        return cases;
+    }
+
+    /**
+     * Writes the corpus, with the HTML of the current converter, to the file given as first argument.
+     */
+    public static void main(String[] args) throws IOException {
+        final Map<String, String> markdown = new LinkedHashMap<>(PmdJavaRuleDescriptions.load());
+        final Random random = new Random(SEED);
+        for (int i = 0; i < RANDOM_CASES; i++) {
+            final StringBuilder text = new StringBuilder();
+            final int tokens = 1 + random.nextInt(40);
+            for (int j = 0; j < tokens; j++) {
+                text.append(TOKENS[random.nextInt(TOKENS.length)]);
+            }
+            markdown.put("random-" + i, text.toString());
+        }
+        try (Writer writer = Files.newBufferedWriter(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> entry : markdown.entrySet()) {
+                writer.write(line(CASE, entry.getKey()));
+                writer.write(line(MARKDOWN, entry.getValue()));
+                writer.write(line(HTML, MarkdownToHtmlConverter.convertToHtml(entry.getValue())));
+                writer.write("\n");
+            }
+        }
+    }
+
+    private static String line(String prefix, String text) {
+        return text.isEmpty() ? prefix + "\n" : prefix + " " + escape(text) + "\n";
+    }
+
+    private static String escape(String text) {
+        final String escaped = text.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r").replace("\t", "\\t");
+        return escaped.endsWith(" ") ? escaped.substring(0, escaped.length() - 1) + "\\s" : escaped;
+    }
+
+    private static String unescape(String line, String prefix) {
+        if (line == null || !line.startsWith(prefix)) {
+            throw new IllegalStateException("Malformed golden corpus " + RESOURCE + ", expected '" + prefix + "': " + line);
+        }
+        final StringBuilder text = new StringBuilder(line.length());
+        // the value is separated from the prefix by a space, unless it is empty
+        for (int i = prefix.length() + 1; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (c == '\\' && i + 1 < line.length()) {
+                final char escaped = line.charAt(++i);
+                text.append(unescape(escaped));
+            } else {
+                text.append(c);
+            }
+        }
+        return text.toString();
+    }
+
+    private static char unescape(char escaped) {
+        switch (escaped) {
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 's':
+                return ' ';
+            default:
+                return escaped;
+        }
+    }
+}
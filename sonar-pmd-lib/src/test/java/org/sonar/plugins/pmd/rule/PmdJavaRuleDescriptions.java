@@ -0,0 +1,95 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd.rule;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The Markdown descriptions of the PMD Java rules, the rules of rules-java.xml, composed like
+ * scripts/pmd7_rules_xml_generator.groovy does before converting them to HTML.
+ */
+final class PmdJavaRuleDescriptions {
+
+    private static final String CATEGORIES = "category/java/categories.properties";
+
+    private PmdJavaRuleDescriptions() {
+    }
+
+    /**
+     * @return The Markdown description per rule name.
+     */
+    static Map<String, String> load() {
+        try {
+            final ClassLoader classLoader = PmdJavaRuleDescriptions.class.getClassLoader();
+            final Properties categories = new Properties();
+            try (InputStream input = classLoader.getResourceAsStream(CATEGORIES)) {
+                categories.load(input);
+            }
+            final Map<String, String> descriptions = new LinkedHashMap<>();
+            for (String category : categories.getProperty("rulesets.filenames").split(",")) {
+                try (InputStream input = classLoader.getResourceAsStream(category.trim())) {
+                    final NodeList rules = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(input)
+                            .getElementsByTagName("rule");
+                    for (int i = 0; i < rules.getLength(); i++) {
+                        final Element rule = (Element) rules.item(i);
+                        if (!rule.hasAttribute("ref")) {
+                            descriptions.put(rule.getAttribute("name"), markdownOf(rule));
+                        }
+                    }
+                }
+            }
+            return descriptions;
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to read the PMD Java rules", e);
+        }
+    }
+
+    private static String markdownOf(Element rule) {
+        final StringBuilder markdown = new StringBuilder();
+        final String message = rule.getAttribute("message");
+        if (!message.trim().isEmpty()) {
+            markdown.append("## Title of issues: ").append(message.replace("''", "'")).append("\n\n");
+        }
+        markdown.append(textOf(rule, "description"));
+        final NodeList examples = rule.getElementsByTagName("example");
+        if (examples.getLength() > 0) {
+            markdown.append(examples.getLength() > 1 ? "\n\n## Examples\n\n" : "\n\n## Example\n\n");
+            for (int i = 0; i < examples.getLength(); i++) {
+                if (examples.getLength() > 1) {
+                    markdown.append("### Example ").append(i + 1).append("\n\n");
+                }
+                markdown.append("```java\n").append(examples.item(i).getTextContent()).append("\n```\n\n");
+            }
+        }
+        return markdown.toString();
+    }
+
+    private static String textOf(Element rule, String tag) {
+        final NodeList elements = rule.getElementsByTagName(tag);
+        return elements.getLength() > 0 ? elements.item(0).getTextContent() : "";
+    }
+}
@@ -0,0 +1,77 @@
+package org.sonar.plugins.pmd.rule;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sonar.api.rule.RuleScope;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PmdRuleScopeIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void writes_and_reads_scopes() throws Exception {
+        Map<String, RuleScope> scopes = Map.of("R1", RuleScope.MAIN, "R2", RuleScope.TEST, "R3", RuleScope.ALL);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        PmdRuleScopeIndex.write(scopes, out);
+
+        assertThat(PmdRuleScopeIndex.read(new ByteArrayInputStream(out.toByteArray()))).isEqualTo(scopes);
+    }
+
+    @Test
+    void generates_index_next_to_rules_xml() throws Exception {
+        Path xmlFile = copyResource("test-rules-default-ns-no-header.xml");
+
+        PmdRuleScopeIndex.main(new String[]{xmlFile.toString()});
+
+        Path indexFile = tempDir.resolve("test-rules-default-ns-no-header.xml.scopes");
+        assertThat(PmdRuleScopeIndex.read(Files.newInputStream(indexFile)))
+                .containsEntry("NS001", RuleScope.TEST)
+                .containsEntry("NS002", RuleScope.MAIN);
+    }
+
+    @Test
+    void registry_prefers_index_over_rules_xml() throws Exception {
+        Path xmlFile = copyResource("test-rules-default-ns-no-header.xml");
+        try (OutputStream out = Files.newOutputStream(tempDir.resolve("test-rules-default-ns-no-header.xml.scopes"))) {
+            PmdRuleScopeIndex.write(Map.of("NS001", RuleScope.MAIN), out);
+        }
+
+        PmdRuleScopeRegistry registry = new PmdRuleScopeRegistry();
+        registry.addXmlUrls(xmlFile.toUri().toURL());
+
+        assertThat(registry.getScope("NS001")).isEqualTo(RuleScope.MAIN);
+        assertThat(registry.getScope("NS002")).isEqualTo(RuleScope.ALL);
+    }
+
+    @Test
+    void registry_parses_rules_xml_when_index_is_invalid() throws Exception {
+        Path xmlFile = copyResource("test-rules-default-ns-no-header.xml");
+        Files.write(tempDir.resolve("test-rules-default-ns-no-header.xml.scopes"), new byte[]{0, 0, 0, 99});
+
+        PmdRuleScopeRegistry registry = new PmdRuleScopeRegistry();
+        registry.addXmlUrls(xmlFile.toUri().toURL());
+
+        assertThat(registry.getScope("NS001")).isEqualTo(RuleScope.TEST);
+        assertThat(registry.getScope("NS002")).isEqualTo(RuleScope.MAIN);
+    }
+
+    private Path copyResource(String name) throws Exception {
+        URL url = getClass().getResource("/org/sonar/plugins/pmd/rule/" + name);
+        assertThat(url).isNotNull();
+        Path target = tempDir.resolve(name);
+        Files.copy(Path.of(url.toURI()), target);
+        return target;
+    }
+}
@@ -4,6 +4,11 @@ import org.junit.jupiter.api.Test;
 import org.sonar.api.rule.RuleScope;
 
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -59,4 +64,37 @@ class PmdRuleScopeRegistryTest {
         assertThat(registry.getScope("NSP001")).isEqualTo(RuleScope.TEST);
         assertThat(registry.getScope("NSP002")).isEqualTo(RuleScope.MAIN);
     }
+
+    @Test
+    void serves_lookups_while_rule_scopes_are_added() throws Exception {
+        URL jpinpoint = getClass().getResource("/org/sonar/plugins/pmd/rule/test-jpinpoint.xml");
+        URL namespaced = getClass().getResource("/org/sonar/plugins/pmd/rule/test-rules-default-ns-no-header.xml");
+        PmdRuleScopeRegistry registry = new PmdRuleScopeRegistry();
+        registry.addXmlUrls(jpinpoint);
+
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(readers.submit(() -> {
+                    boolean consistent = true;
+                    for (int j = 0; j < 10_000; j++) {
+                        consistent &= registry.getScope("JP0001") == RuleScope.TEST;
+                        RuleScope added = registry.getScope("NS001");
+                        consistent &= added == RuleScope.ALL || added == RuleScope.TEST;
+                    }
+                    return consistent;
+                }));
+            }
+            registry.addXmlUrls(namespaced);
+
+            for (Future<Boolean> result : results) {
+                assertThat(result.get()).isTrue();
+            }
+        } finally {
+            readers.shutdown();
+        }
+        assertThat(registry.getScope("NS001")).isEqualTo(RuleScope.TEST);
+        assertThat(registry.getScope(null)).isEqualTo(RuleScope.ALL);
+    }
 }
@@ -0,0 +1,86 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd.rule;
+
+import net.sourceforge.pmd.lang.rule.AbstractRule;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Objects;
+import java.util.jar.JarFile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RuleClassScannerTest {
+
+    @Test
+    void shouldFindRuleClassesOfTestJar() throws IOException {
+        // given
+        File file = new File(Objects.requireNonNull(getClass().getClassLoader().getResource("test-java-rule-extractor.jar")).getPath());
+
+        // when
+        List<String> ruleClasses;
+        try (JarFile jarFile = new JarFile(file)) {
+            ruleClasses = new RuleClassScanner(getClass().getClassLoader()).scan(jarFile);
+        }
+
+        // then
+        assertThat(ruleClasses).containsExactlyInAnyOrder("com.example.rules.WithPropsRule", "com.example.rules.WithoutPropsRule");
+    }
+
+    @Test
+    void shouldFindRuleClassesOfRealJarWithoutAstClasses() throws IOException {
+        // given
+        File file = new File(System.getProperty("user.home") + "/.m2/repository/net/sourceforge/pmd/pmd-java/7.17.0/pmd-java-7.17.0.jar");
+
+        // when
+        List<String> ruleClasses;
+        try (JarFile jarFile = new JarFile(file)) {
+            ruleClasses = new RuleClassScanner(getClass().getClassLoader()).scan(jarFile);
+        }
+
+        // then
+        assertThat(ruleClasses)
+                .hasSizeGreaterThan(100)
+                // AbstractJavaRule extends AbstractRule of pmd-core, outside the jar
+                .contains("net.sourceforge.pmd.lang.java.rule.AbstractJavaRule",
+                        "net.sourceforge.pmd.lang.java.rule.errorprone.AvoidDuplicateLiteralsRule")
+                .noneMatch(name -> name.startsWith("net.sourceforge.pmd.lang.java.ast."));
+    }
+
+    @Test
+    void shouldReadSuperclassFromClassFile() throws IOException {
+        assertThat(RuleClassScanner.superclassOf("AbstractRule", classFile(AbstractRule.class)))
+                .isEqualTo("net/sourceforge/pmd/properties/AbstractPropertySource");
+        // constant pool with long and double constants
+        assertThat(RuleClassScanner.superclassOf("Long", classFile(Long.class))).isEqualTo("java/lang/Number");
+        assertThat(RuleClassScanner.superclassOf("Object", classFile(Object.class))).isNull();
+        assertThat(RuleClassScanner.superclassOf("garbage", new byte[] { 1, 2, 3 })).isNull();
+    }
+
+    private static byte[] classFile(Class<?> clazz) throws IOException {
+        try (InputStream input = clazz.getResourceAsStream(clazz.getSimpleName() + ".class")) {
+            return Objects.requireNonNull(input).readAllBytes();
+        }
+    }
+}
@@ -21,11 +21,15 @@ package org.sonar.plugins.pmd;
 
 import net.sourceforge.pmd.PMDConfiguration;
 import net.sourceforge.pmd.PMDVersion;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.document.TextFile;
 import net.sourceforge.pmd.lang.rule.RuleSet;
 import net.sourceforge.pmd.lang.rule.RuleSetLoadException;
 import net.sourceforge.pmd.lang.rule.RuleSetLoader;
 import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import net.sourceforge.pmd.reporting.GlobalAnalysisListener;
 import net.sourceforge.pmd.reporting.Report;
+import net.sourceforge.pmd.reporting.RuleViolation;
 import net.sourceforge.pmd.util.log.PmdReporter;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.jetbrains.annotations.NotNull;
@@ -44,13 +48,20 @@ import org.sonar.plugins.pmd.xml.PmdRuleSets;
 import org.sonar.plugins.pmd.xml.factory.RuleSetFactory;
 
 import java.io.File;
-import java.io.IOException;
 import java.io.StringWriter;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
 
 /**
  * Abstract base class for PMD executors that contains common functionality.
@@ -58,12 +69,22 @@ import java.util.concurrent.atomic.AtomicInteger;
 public abstract class AbstractPmdExecutor {
 
     protected static final Logger LOGGER = LoggerFactory.getLogger(AbstractPmdExecutor.class);
+    private static final int SLOWEST_FILES_SUMMARY_SIZE = 10;
 
     protected final FileSystem fs;
     protected final ActiveRules rulesProfile;
     protected final PmdConfiguration pmdConfiguration;
     protected final Configuration settings;
 
+    private Predicate<InputFile> fileFilter = file -> true;
+    private PmdRuleSetConverter ruleSetConverter;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private PmdRuleProfile ruleProfile;
+    private PmdFileTimeBudget fileTimeBudget;
+    private PmdCancellation cancellation;
+    private int cacheHits;
+    private int cacheMisses;
+
     protected AbstractPmdExecutor(FileSystem fileSystem, ActiveRules rulesProfile,
                        PmdConfiguration pmdConfiguration, Configuration settings) {
         this.fs = fileSystem;
@@ -72,31 +93,166 @@ public abstract class AbstractPmdExecutor {
         this.settings = settings;
     }
 
-    protected static void accept(FileAnalysisListener fal) {
-        LOGGER.debug("Got FileAnalysisListener: {}", fal);
-    }
-
     /**
      * Execute PMD analysis
      * @return The PMD report containing the results of the analysis
      */
     public Report execute() {
+        return execute(file -> true);
+    }
+
+    /**
+     * Execute PMD analysis on a subset of the files
+     * @param fileFilter Selects the files to analyze, e.g. to leave out files whose result is taken from a cache
+     * @return The PMD report containing the results of the analysis
+     */
+    public Report execute(Predicate<InputFile> fileFilter) {
+        final Report.GlobalReportBuilderListener reportBuilder = new Report.GlobalReportBuilderListener();
+        final boolean completed = analyze(reportBuilder, fileFilter);
+        reportBuilder.close();
+        if (!completed) {
+            return null;
+        }
+        final Report report = reportBuilder.getResult();
+        if (LOGGER.isDebugEnabled()) {
+            writeDebugLine(report);
+        }
+        pmdConfiguration.dumpXmlReport(report);
+        return report;
+    }
+
+    /**
+     * Execute PMD analysis and stream the results: the listener receives the violations of each file as soon
+     * as that file is analyzed, so memory is not bound by the total number of violations of the project.
+     * The listener is not closed by this method.
+     * @param listener Receives the results, possibly from several threads
+     * @param fileFilter Selects the files to analyze, e.g. to leave out files whose result is taken from a cache
+     * @return false when the analysis did not complete
+     */
+    public boolean execute(GlobalAnalysisListener listener, Predicate<InputFile> fileFilter) {
+        return analyze(listener, fileFilter);
+    }
+
+    /**
+     * Execute the PMD analysis of this executor and of the joined executors in a single PMD run, so that the
+     * setup of PMD is shared and its worker threads stay busy for all files. Each file is checked with the
+     * rules of its own language and scope only. The classloader of this executor is used for all files.
+     * The listener is not closed by this method.
+     * @param listener Receives the results, possibly from several threads
+     * @param fileFilter Selects the files to analyze, e.g. to leave out files whose result is taken from a cache
+     * @param joinedExecutors The executors whose files are analyzed in the same run
+     * @return false when the analysis did not complete
+     */
+    public boolean execute(GlobalAnalysisListener listener, Predicate<InputFile> fileFilter, List<AbstractPmdExecutor> joinedExecutors) {
+        return analyze(listener, fileFilter, joinedExecutors);
+    }
+
+    /**
+     * @return true when all files are to be analyzed in a single PMD run, see {@link #execute(GlobalAnalysisListener, Predicate, List)}.
+     */
+    public boolean isUnifiedAnalysisEnabled() {
+        return pmdConfiguration.isUnifiedAnalysisEnabled();
+    }
+
+    /**
+     * @return true when the execution time of each rule is to be recorded, see {@link #setRuleProfile(PmdRuleProfile)}.
+     */
+    public boolean isRuleProfilingEnabled() {
+        return pmdConfiguration.isRuleProfilingEnabled();
+    }
+
+    /**
+     * @return The number of files of the last execution whose violations were taken from the analysis cache.
+     */
+    int cacheHits() {
+        return cacheHits;
+    }
+
+    /**
+     * @return true when Java Flight Recorder events are to be emitted, see {@link PmdEvents}.
+     */
+    public boolean isJfrEventsEnabled() {
+        return pmdConfiguration.isJfrEventsEnabled();
+    }
+
+    /**
+     * @param ruleProfile Records the execution time of each rule in the following executions, null to stop profiling
+     */
+    void setRuleProfile(@Nullable PmdRuleProfile ruleProfile) {
+        this.ruleProfile = ruleProfile;
+    }
+
+    /**
+     * @param cancellation Stops the following executions early when cancelled, null to always analyze all files
+     */
+    void setCancellation(@Nullable PmdCancellation cancellation) {
+        this.cancellation = cancellation;
+    }
+
+    private boolean isCancelled() {
+        return cancellation != null && cancellation.isCancelled();
+    }
+
+    private boolean analyze(GlobalAnalysisListener listener, Predicate<InputFile> fileFilter) {
+        return analyze(listener, fileFilter, Collections.emptyList());
+    }
+
+    private boolean analyze(GlobalAnalysisListener listener, Predicate<InputFile> fileFilter, List<AbstractPmdExecutor> joinedExecutors) {
+        this.fileFilter = fileFilter;
         final long startTimeMs = System.currentTimeMillis();
-        LOGGER.info(getStartMessage(), PMDVersion.VERSION);
+        threads = pmdConfiguration.analysisThreads();
+        LOGGER.info(getStartMessage() + " | threads={}", PMDVersion.VERSION, threads);
+        cacheHits = 0;
+        cacheMisses = 0;
+        final long fileTimeout = pmdConfiguration.fileTimeoutSeconds();
+        fileTimeBudget = fileTimeout > 0 ? new PmdFileTimeBudget(fileTimeout, TimeUnit.SECONDS) : null;
+        final PmdSlowestFiles slowestFiles = new PmdSlowestFiles(SLOWEST_FILES_SUMMARY_SIZE);
+        final GlobalAnalysisListener timedListener = GlobalAnalysisListener.tee(List.of(listener, slowestFiles));
         final ClassLoader initialClassLoader = Thread.currentThread().getContextClassLoader();
 
-        try (URLClassLoader classLoader = createClassloader()) {
+        try {
+            final PmdEvents.ClassLoaderEvent event = PmdEvents.isEnabled() ? new PmdEvents.ClassLoaderEvent() : null;
+            if (event != null) {
+                event.begin();
+            }
+            final URLClassLoader classLoader = joinedExecutors.isEmpty() ? createClassloader() : createUnifiedClassloader();
+            if (event != null) {
+                event.elements = classLoader.getURLs().length;
+                event.commit();
+            }
             Thread.currentThread().setContextClassLoader(getClass().getClassLoader());
 
-            return executePmd(classLoader);
-        } catch (IOException e) {
-            LOGGER.error("Failed to close URLClassLoader.", e);
+            if (joinedExecutors.isEmpty()) {
+                executePmd(classLoader, timedListener);
+            } else {
+                executeUnified(classLoader, timedListener, joinedExecutors);
+            }
+            if (isCancelled()) {
+                LOGGER.debug("PMD analysis cancelled, its results are incomplete");
+                return false;
+            }
+            return true;
         } finally {
             Thread.currentThread().setContextClassLoader(initialClassLoader);
-            LOGGER.info(getEndMessage(), PMDVersion.VERSION, System.currentTimeMillis() - startTimeMs);
+            if (pmdConfiguration.isAnalysisCacheEnabled()) {
+                LOGGER.info(getEndMessage() + " | cache hits={} misses={}", PMDVersion.VERSION, System.currentTimeMillis() - startTimeMs, cacheHits, cacheMisses);
+            } else {
+                LOGGER.info(getEndMessage(), PMDVersion.VERSION, System.currentTimeMillis() - startTimeMs);
+            }
+            logSlowestFiles(slowestFiles.slowest(), fileTimeout > 0);
         }
+    }
 
-        return null;
+    private static void logSlowestFiles(List<PmdSlowestFiles.FileTime> slowestFiles, boolean timeBudgetEnabled) {
+        if (slowestFiles.isEmpty()) {
+            return;
+        }
+        // with a time budget, the slowest files help to tune it or to choose exclusions
+        if (timeBudgetEnabled) {
+            LOGGER.info("Slowest files analyzed by PMD: {}", slowestFiles);
+        } else {
+            LOGGER.debug("Slowest files analyzed by PMD: {}", slowestFiles);
+        }
     }
 
     /**
@@ -113,16 +269,24 @@ public abstract class AbstractPmdExecutor {
 
     /**
      * Create a classloader for PMD analysis
-     * @return The classloader
+     * @return The classloader, which is not closed by the executor
      */
     protected abstract URLClassLoader createClassloader();
 
+    /**
+     * Create the classloader for a single PMD run over all scopes of this executor and the joined executors
+     * @return The classloader, which is not closed by the executor
+     */
+    protected URLClassLoader createUnifiedClassloader() {
+        return createClassloader();
+    }
+
     /**
      * Execute PMD analysis with the given classloader
      * @param classLoader The classloader to use
-     * @return The PMD report
+     * @param listener Receives the results of the analysis
      */
-    protected abstract Report executePmd(URLClassLoader classLoader);
+    protected abstract void executePmd(URLClassLoader classLoader, GlobalAnalysisListener listener);
 
     /**
      * Write debug information about the report
@@ -145,7 +309,7 @@ public abstract class AbstractPmdExecutor {
     }
 
     /**
-     * Get files of the given type and language
+     * Get files of the given type and language, restricted to the files selected for this execution
      * @param fileType The file type (MAIN or TEST)
      * @param languageKey The language key
      * @return The files
@@ -155,7 +319,8 @@ public abstract class AbstractPmdExecutor {
         return fs.inputFiles(
                 predicates.and(
                         predicates.hasLanguage(languageKey),
-                        predicates.hasType(fileType)
+                        predicates.hasType(fileType),
+                        fileFilter::test
                 )
         );
     }
@@ -165,16 +330,42 @@ public abstract class AbstractPmdExecutor {
      * @param pmdFactory The PMD template
      * @param files The files to analyze
      * @param repositoryKey The repository key
-     * @return The report
+     * @param listener Receives the results
      */
-    protected Optional<Report> executeRules(PmdTemplate pmdFactory, Iterable<InputFile> files, String repositoryKey, RuleScope scope) {
-        if (!files.iterator().hasNext()) {
+    protected void executeRules(PmdTemplate pmdFactory, Iterable<InputFile> files, String repositoryKey, RuleScope scope, GlobalAnalysisListener listener) {
+        if (isCancelled()) {
+            return;
+        }
+        createScopedRuleSet(files, repositoryKey, scope)
+                .ifPresent(scopedRuleSet -> process(pmdFactory, Collections.singletonList(scopedRuleSet), listener));
+    }
+
+    /**
+     * Create the rule set for the given repository and scope, together with the files it applies to
+     * @param files The files of the scope
+     * @param repositoryKey The repository key
+     * @return The rule set, empty when there are no files or no rules
+     */
+    protected Optional<ScopedRuleSet> createScopedRuleSet(Iterable<InputFile> files, String repositoryKey, RuleScope scope) {
+        final List<InputFile> scopeFiles = new ArrayList<>();
+        files.forEach(scopeFiles::add);
+        if (scopeFiles.isEmpty()) {
             // Nothing to analyze
             LOGGER.debug("No files to analyze for {}", repositoryKey);
             return Optional.empty();
         }
 
+        final PmdEvents.RuleSetEvent event = PmdEvents.isEnabled() ? new PmdEvents.RuleSetEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
         final RuleSet ruleSet = createRuleSet(repositoryKey, scope);
+        if (event != null) {
+            event.repository = repositoryKey;
+            event.scope = scope.name();
+            event.rules = ruleSet.size();
+            event.commit();
+        }
 
         if (ruleSet.size() < 1) {
             // No rule
@@ -183,17 +374,177 @@ public abstract class AbstractPmdExecutor {
         }
 
         LOGGER.debug("Found {} rules for {}", ruleSet.size(), repositoryKey);
-        return Optional.ofNullable(pmdFactory.process(files, ruleSet));
+        return Optional.of(new ScopedRuleSet(repositoryKey, scope, ruleSet, scopeFiles));
     }
 
     /**
-     * Create a ruleset for the given repository
+     * Create the rule sets of all scopes this executor analyzes, used to analyze them together with the
+     * scopes of other executors in a single PMD run
+     * @return The rule sets of the scopes that have files and rules
+     */
+    protected abstract List<ScopedRuleSet> createScopedRuleSets();
+
+    private void executeUnified(URLClassLoader classLoader, GlobalAnalysisListener listener, List<AbstractPmdExecutor> joinedExecutors) {
+        final List<ScopedRuleSet> scopedRuleSets = new ArrayList<>(createScopedRuleSets());
+        for (AbstractPmdExecutor executor : joinedExecutors) {
+            executor.fileFilter = fileFilter;
+            scopedRuleSets.addAll(executor.createScopedRuleSets());
+        }
+        if (!scopedRuleSets.isEmpty()) {
+            process(createPmdTemplate(classLoader), scopedRuleSets, listener);
+        }
+    }
+
+    private void process(PmdTemplate pmdFactory, List<ScopedRuleSet> scopedRuleSets, GlobalAnalysisListener listener) {
+        if (pmdConfiguration.isAnalysisCacheEnabled()) {
+            processIncrementally(pmdFactory, scopedRuleSets, listener);
+        } else {
+            processAll(pmdFactory, scopedRuleSets, listener);
+        }
+    }
+
+    private void processAll(PmdTemplate pmdFactory, List<ScopedRuleSet> scopedRuleSets, GlobalAnalysisListener listener) {
+        final List<ScopedRuleSet> toProcess = new ArrayList<>(scopedRuleSets.size());
+        for (ScopedRuleSet scopedRuleSet : scopedRuleSets) {
+            toProcess.add(instrument(scopedRuleSet));
+        }
+        final List<GlobalAnalysisListener> listeners = new ArrayList<>(3);
+        listeners.add(listener);
+        if (ruleProfile != null) {
+            listeners.add(ruleProfile.violationCounter());
+        }
+        if (PmdEvents.isEnabled()) {
+            listeners.add(PmdEvents.fileAnalysisListener(rulesPerPath(toProcess)));
+        }
+        final GlobalAnalysisListener resultListener = listeners.size() == 1 ? listener : GlobalAnalysisListener.tee(listeners);
+
+        if (toProcess.size() == 1) {
+            final ScopedRuleSet scopedRuleSet = toProcess.get(0);
+            pmdFactory.process(scopedRuleSet.getFiles(), scopedRuleSet.getRuleSet(), resultListener);
+            return;
+        }
+        final List<InputFile> files = new ArrayList<>();
+        final List<RuleSet> ruleSets = new ArrayList<>(toProcess.size());
+        for (ScopedRuleSet scopedRuleSet : toProcess) {
+            files.addAll(scopedRuleSet.getFiles());
+            ruleSets.add(scopedRuleSet.restrictedToFiles());
+        }
+        LOGGER.debug("Analyzing {} files with {} rule sets in a single PMD run", files.size(), ruleSets.size());
+        pmdFactory.process(files, ruleSets, resultListener);
+    }
+
+    private static ToIntFunction<String> rulesPerPath(List<ScopedRuleSet> scopedRuleSets) {
+        if (scopedRuleSets.size() == 1) {
+            final int rules = scopedRuleSets.get(0).getRuleSet().size();
+            return path -> rules;
+        }
+        final Map<String, Integer> rulesPerPath = new HashMap<>();
+        for (ScopedRuleSet scopedRuleSet : scopedRuleSets) {
+            for (InputFile file : scopedRuleSet.getFiles()) {
+                rulesPerPath.put(PmdAnalysisCache.pathOf(file), scopedRuleSet.getRuleSet().size());
+            }
+        }
+        return path -> rulesPerPath.getOrDefault(path, 0);
+    }
+
+    /**
+     * Wraps the rules for profiling and for the time budget of a file, if requested. Cancellation is checked
+     * per file by the template instead, see {@link PmdTemplate#cancelledBy(PmdCancellation)}.
+     */
+    private ScopedRuleSet instrument(ScopedRuleSet scopedRuleSet) {
+        RuleSet ruleSet = scopedRuleSet.getRuleSet();
+        if (ruleProfile != null) {
+            ruleSet = ruleProfile.instrument(scopedRuleSet.getRepositoryKey(), scopedRuleSet.getScope(), ruleSet);
+        }
+        if (fileTimeBudget != null) {
+            ruleSet = fileTimeBudget.restrict(ruleSet);
+        }
+        return ruleSet == scopedRuleSet.getRuleSet() ? scopedRuleSet : scopedRuleSet.withRuleSet(ruleSet);
+    }
+
+    /**
+     * Analyze only the files that changed since the previous analysis, and take the violations of all other
+     * files from the analysis cache.
+     */
+    private void processIncrementally(PmdTemplate pmdFactory, List<ScopedRuleSet> scopedRuleSets, GlobalAnalysisListener listener) {
+        final List<PmdAnalysisCache> caches = new ArrayList<>(scopedRuleSets.size());
+        final List<ScopedRuleSet> changed = new ArrayList<>(scopedRuleSets.size());
+        final List<ScopedRuleSet> toAnalyze = new ArrayList<>(scopedRuleSets.size());
+        for (ScopedRuleSet scopedRuleSet : scopedRuleSets) {
+            final String repositoryKey = scopedRuleSet.getRepositoryKey();
+            final RuleScope scope = scopedRuleSet.getScope();
+            final RuleSet ruleSet = scopedRuleSet.getRuleSet();
+            final PmdAnalysisCache cache = PmdAnalysisCache.open(pmdConfiguration.analysisCacheFile(repositoryKey, scope), pmdFactory.fingerprint(ruleSet));
+            final List<InputFile> changedFiles = new ArrayList<>();
+            for (InputFile file : scopedRuleSet.getFiles()) {
+                if (pmdFactory.languageVersionOf(file) == null) {
+                    // not analyzed by PMD, so there is no result to cache
+                    LOGGER.debug("Skipping file PMD has no language for: {}", file);
+                } else if (cache.isUpToDate(file)) {
+                    replay(cache.cachedViolations(file, ruleSet), file, pmdFactory, listener);
+                } else {
+                    changedFiles.add(file);
+                }
+            }
+            LOGGER.debug("Analysis cache for {} ({}): {} unchanged, {} changed files", repositoryKey, scope, cache.hits(), cache.misses());
+            cacheHits += cache.hits();
+            cacheMisses += cache.misses();
+            caches.add(cache);
+            changed.add(scopedRuleSet.withFiles(changedFiles));
+            if (!changedFiles.isEmpty()) {
+                toAnalyze.add(scopedRuleSet.withFiles(changedFiles));
+            }
+        }
+
+        if (!toAnalyze.isEmpty()) {
+            // the caches are updated from the results of the changed files only
+            final Report.GlobalReportBuilderListener reportBuilder = new Report.GlobalReportBuilderListener();
+            processAll(pmdFactory, toAnalyze, GlobalAnalysisListener.tee(List.of(listener, reportBuilder)));
+            reportBuilder.close();
+            final Report report = reportBuilder.getResult();
+            for (int i = 0; i < caches.size(); i++) {
+                caches.get(i).update(changed.get(i).getFiles(), report);
+            }
+        }
+        if (isCancelled()) {
+            // the results of the files analyzed after the cancellation are incomplete
+            return;
+        }
+        caches.forEach(PmdAnalysisCache::persist);
+    }
+
+    private static void replay(List<RuleViolation> violations, InputFile file, PmdTemplate pmdFactory, GlobalAnalysisListener listener) {
+        final LanguageVersion languageVersion = pmdFactory.languageVersionOf(file);
+        if (languageVersion == null) {
+            return;
+        }
+        final TextFile textFile = TextFile.forPath(file.path(), file.charset(), languageVersion);
+        try (FileAnalysisListener fileListener = listener.startFileAnalysis(textFile)) {
+            violations.forEach(fileListener::onRuleViolation);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to report cached violations of " + file, e);
+        }
+    }
+
+    /**
+     * Create a ruleset for the given repository. The ruleset is built in memory from the active rules; only when
+     * that fails, it is written to XML and loaded by PMD, which reports in detail what is wrong with it.
      * @param repositoryKey The repository key
      * @return The ruleset
      */
     protected RuleSet createRuleSet(String repositoryKey, RuleScope scope) {
-        final String rulesXml = dumpXml(rulesProfile, repositoryKey, scope);
-        final File ruleSetFile = pmdConfiguration.dumpXmlRuleSet(repositoryKey, rulesXml, scope);
+        final PmdRuleSet pmdRuleSet = PmdRuleSets.from(rulesProfile, repositoryKey, scope);
+        if (pmdConfiguration.isRuleSetXmlEnabled()) {
+            pmdConfiguration.dumpXmlRuleSet(repositoryKey, toXml(pmdRuleSet), scope);
+        }
+
+        final Optional<RuleSet> ruleSet = ruleSetConverter().convert(pmdRuleSet);
+        if (ruleSet.isPresent()) {
+            return ruleSet.get();
+        }
+
+        LOGGER.debug("Loading the PMD rules for {} ({}) from XML", repositoryKey, scope);
+        final File ruleSetFile = pmdConfiguration.dumpXmlRuleSet(repositoryKey, toXml(pmdRuleSet), scope);
         final String ruleSetFilePath = ruleSetFile.getAbsolutePath();
 
         try {
@@ -204,6 +555,16 @@ public abstract class AbstractPmdExecutor {
         }
     }
 
+    private PmdRuleSetConverter ruleSetConverter() {
+        // shared by all scopes, so that each referenced PMD rule set is loaded only once
+        if (ruleSetConverter == null) {
+            PMDConfiguration configuration = new PMDConfiguration();
+            configuration.setReporter(createSonarPmdPluginLogger());
+            ruleSetConverter = new PmdRuleSetConverter(RuleSetLoader.fromPmdConfig(configuration));
+        }
+        return ruleSetConverter;
+    }
+
     private static RuleSet parseRuleSetWithReporter(PmdReporter reporter, String ruleSetFilePath) {
         // no need to use reflection to enable withReporter method, see: https://github.com/pmd/pmd/issues/6126
         PMDConfiguration pmdConfiguration = new PMDConfiguration();
@@ -262,8 +623,11 @@ public abstract class AbstractPmdExecutor {
      * @return The XML
      */
     protected String dumpXml(ActiveRules rulesProfile, String repositoryKey, RuleScope scope) {
+        return toXml(PmdRuleSets.from(rulesProfile, repositoryKey, scope));
+    }
+
+    private static String toXml(PmdRuleSet ruleSet) {
         final StringWriter writer = new StringWriter(2048);
-        final PmdRuleSet ruleSet = PmdRuleSets.from(rulesProfile, repositoryKey, scope);
         ruleSet.writeTo(writer);
 
         return writer.toString();
@@ -275,7 +639,7 @@ public abstract class AbstractPmdExecutor {
      * @return The PMD template
      */
     protected PmdTemplate createPmdTemplate(URLClassLoader classLoader) {
-        return PmdTemplate.create(getSourceVersion(), classLoader, fs.encoding());
+        return PmdTemplate.create(getSourceVersion(), classLoader, fs.encoding(), threads).cancelledBy(cancellation);
     }
 
     /**
@@ -0,0 +1,170 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd;
+
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.FileLocation;
+import net.sourceforge.pmd.lang.document.TextRange2d;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.reporting.Report;
+import net.sourceforge.pmd.reporting.RuleViolation;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializable form of a PMD {@link RuleViolation}, as stored in the analysis caches.
+ * The rule is kept by name only and resolved again when the violation is replayed.
+ */
+final class CachedViolation {
+    private final String ruleName;
+    private final String description;
+    private final int beginLine;
+    private final int beginColumn;
+    private final int endLine;
+    private final int endColumn;
+    private final Map<String, String> additionalInfo;
+
+    private CachedViolation(String ruleName, String description, int beginLine, int beginColumn,
+                            int endLine, int endColumn, Map<String, String> additionalInfo) {
+        this.ruleName = ruleName;
+        this.description = description;
+        this.beginLine = beginLine;
+        this.beginColumn = beginColumn;
+        this.endLine = endLine;
+        this.endColumn = endColumn;
+        this.additionalInfo = additionalInfo;
+    }
+
+    static CachedViolation of(RuleViolation violation) {
+        return new CachedViolation(violation.getRule().getName(), violation.getDescription(),
+                violation.getBeginLine(), violation.getBeginColumn(), violation.getEndLine(), violation.getEndColumn(),
+                violation.getAdditionalInfo());
+    }
+
+    /**
+     * Groups the violations of a report by the absolute path of the file they were found in.
+     */
+    static Map<String, List<CachedViolation>> byPath(Report report) {
+        final Map<String, List<CachedViolation>> violationsByPath = new HashMap<>();
+        for (RuleViolation violation : report.getViolations()) {
+            violationsByPath.computeIfAbsent(violation.getFileId().getAbsolutePath(), k -> new ArrayList<>())
+                    .add(of(violation));
+        }
+        return violationsByPath;
+    }
+
+    String getRuleName() {
+        return ruleName;
+    }
+
+    String getDescription() {
+        return description;
+    }
+
+    int getBeginLine() {
+        return beginLine;
+    }
+
+    int getEndLine() {
+        return endLine;
+    }
+
+    RuleViolation toRuleViolation(Rule rule, FileId fileId) {
+        final FileLocation location = FileLocation.range(fileId, new TextRange2d(beginLine, beginColumn, endLine, endColumn));
+        return new RuleViolation() {
+            @Override
+            public Rule getRule() {
+                return rule;
+            }
+
+            @Override
+            public String getDescription() {
+                return description;
+            }
+
+            @Override
+            public FileLocation getLocation() {
+                return location;
+            }
+
+            @Override
+            public Map<String, String> getAdditionalInfo() {
+                return additionalInfo;
+            }
+
+            @Override
+            public String toString() {
+                return location.startPosToStringWithFile() + ": " + description;
+            }
+        };
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeUTF(ruleName);
+        out.writeUTF(description);
+        out.writeInt(beginLine);
+        out.writeInt(beginColumn);
+        out.writeInt(endLine);
+        out.writeInt(endColumn);
+        out.writeInt(additionalInfo.size());
+        for (Map.Entry<String, String> info : additionalInfo.entrySet()) {
+            out.writeUTF(info.getKey());
+            out.writeUTF(String.valueOf(info.getValue()));
+        }
+    }
+
+    static CachedViolation read(DataInput in) throws IOException {
+        final String ruleName = in.readUTF();
+        final String description = in.readUTF();
+        final int beginLine = in.readInt();
+        final int beginColumn = in.readInt();
+        final int endLine = in.readInt();
+        final int endColumn = in.readInt();
+        final int infoSize = in.readInt();
+        final Map<String, String> additionalInfo = new LinkedHashMap<>();
+        for (int i = 0; i < infoSize; i++) {
+            additionalInfo.put(in.readUTF(), in.readUTF());
+        }
+        return new CachedViolation(ruleName, description, beginLine, beginColumn, endLine, endColumn, additionalInfo);
+    }
+
+    static void writeAll(DataOutput out, List<CachedViolation> violations) throws IOException {
+        out.writeInt(violations.size());
+        for (CachedViolation violation : violations) {
+            violation.write(out);
+        }
+    }
+
+    static List<CachedViolation> readAll(DataInput in) throws IOException {
+        final int size = in.readInt();
+        final List<CachedViolation> violations = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            violations.add(read(in));
+        }
+        return violations;
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * Index of the packages contained in the jar files of the classpath, used by {@link IndexedClassLoader}
+ * to find the jars that may contain a class without opening all of them.
+ * <p>
+ * The packages of a jar are read from its central directory, which is memory mapped, so that no entry
+ * is inflated. The index can be persisted: an entry is reused by later analyses as long as the path,
+ * size and modification time of the jar did not change. A persisted index keeps at most {@link #MAX_ENTRIES}
+ * jars, the ones used least recently are evicted first.
+ */
+class ClasspathIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClasspathIndex.class);
+    private static final int FORMAT_VERSION = 2;
+    static final int MAX_ENTRIES = 5_000;
+    // the last use of an entry is recorded with this resolution, so that an unchanged index is not written on every analysis
+    private static final long LAST_USED_RESOLUTION_MS = TimeUnit.DAYS.toMillis(1);
+
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int END_HEADER_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final long ZIP64_MARKER = 0xFFFFFFFFL;
+
+    private final Path indexFile;
+    private final Map<String, Entry> entries;
+    private final int maxEntries;
+    private final LongSupplier currentTimeMillis;
+    private boolean changed;
+
+    private ClasspathIndex(Path indexFile, Map<String, Entry> entries, int maxEntries, LongSupplier currentTimeMillis) {
+        this.indexFile = indexFile;
+        this.entries = entries;
+        this.maxEntries = maxEntries;
+        this.currentTimeMillis = currentTimeMillis;
+    }
+
+    /**
+     * @return An index that is not persisted.
+     */
+    static ClasspathIndex inMemory() {
+        return new ClasspathIndex(null, new HashMap<>(), Integer.MAX_VALUE, System::currentTimeMillis);
+    }
+
+    /**
+     * Opens the index stored in the given file. When the file does not exist or can not be read, an empty
+     * index is returned.
+     */
+    static ClasspathIndex open(Path indexFile) {
+        return open(indexFile, MAX_ENTRIES, System::currentTimeMillis);
+    }
+
+    /**
+     * @param currentTimeMillis The clock the last use of the jars is recorded with
+     */
+    static ClasspathIndex open(Path indexFile, int maxEntries, LongSupplier currentTimeMillis) {
+        if (!Files.isRegularFile(indexFile)) {
+            return new ClasspathIndex(indexFile, new HashMap<>(), maxEntries, currentTimeMillis);
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return new ClasspathIndex(indexFile, new HashMap<>(), maxEntries, currentTimeMillis);
+            }
+            final int size = in.readInt();
+            final Map<String, Entry> entries = new HashMap<>(size * 4 / 3 + 1);
+            for (int i = 0; i < size; i++) {
+                final Entry entry = Entry.read(in);
+                entries.put(entry.path, entry);
+            }
+            LOG.debug("Read PMD classpath index {} ({} jars)", indexFile, size);
+            return new ClasspathIndex(indexFile, entries, maxEntries, currentTimeMillis);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Failed to read PMD classpath index {}, discarding it", indexFile, e);
+            return new ClasspathIndex(indexFile, new HashMap<>(), maxEntries, currentTimeMillis);
+        }
+    }
+
+    /**
+     * @return The packages of all entries of the jar, in the form "a/b/c".
+     */
+    synchronized Set<String> packagesOf(File jar) throws IOException {
+        final String path = jar.getAbsolutePath();
+        final long size = jar.length();
+        final long lastModified = jar.lastModified();
+        final long now = currentTimeMillis.getAsLong();
+        final Entry entry = entries.get(path);
+        if (entry != null && entry.size == size && entry.lastModified == lastModified) {
+            if (now - entry.lastUsed >= LAST_USED_RESOLUTION_MS) {
+                entry.lastUsed = now;
+                changed = true;
+            }
+            return entry.packages;
+        }
+        final Set<String> packages = readPackages(jar);
+        entries.put(path, new Entry(path, size, lastModified, now, packages));
+        changed = true;
+        return packages;
+    }
+
+    /**
+     * Writes the index to disk when it changed, leaving out the jars that do not exist anymore and the least
+     * recently used jars beyond the maximum number of entries.
+     */
+    synchronized void persist() {
+        if (indexFile == null || !changed) {
+            return;
+        }
+        entries.values().removeIf(entry -> !new File(entry.path).isFile());
+        if (entries.size() > maxEntries) {
+            final List<Entry> leastRecentlyUsed = new ArrayList<>(entries.values());
+            leastRecentlyUsed.sort(Comparator.comparingLong(entry -> entry.lastUsed));
+            for (Entry entry : leastRecentlyUsed.subList(0, entries.size() - maxEntries)) {
+                entries.remove(entry.path);
+            }
+        }
+        try {
+            final Path directory = indexFile.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            // a temporary file of its own, as other analyses may persist the same index at the same time
+            final Path tmpFile = Files.createTempFile(directory, indexFile.getFileName().toString(), ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+                    out.writeInt(FORMAT_VERSION);
+                    out.writeInt(entries.size());
+                    for (Entry entry : entries.values()) {
+                        entry.write(out);
+                    }
+                }
+                moveAtomically(tmpFile, indexFile);
+            } finally {
+                Files.deleteIfExists(tmpFile);
+            }
+            changed = false;
+            LOG.debug("PMD classpath index written to {} ({} jars)", indexFile, entries.size());
+        } catch (IOException e) {
+            LOG.warn("Failed to write PMD classpath index {}", indexFile, e);
+        }
+    }
+
+    private static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads the packages of the jar from its memory mapped central directory. Archives the central directory
+     * of which can not be located this way (ZIP64, or data prepended to the archive) are read with {@link ZipFile}.
+     */
+    static Set<String> readPackages(File jar) throws IOException {
+        try (FileChannel channel = FileChannel.open(jar.toPath(), StandardOpenOption.READ)) {
+            final long fileSize = channel.size();
+            final int tailSize = (int) Math.min(fileSize, END_HEADER_SIZE + MAX_COMMENT_SIZE);
+            final ByteBuffer tail = channel.map(FileChannel.MapMode.READ_ONLY, fileSize - tailSize, tailSize).order(ByteOrder.LITTLE_ENDIAN);
+            int end = tailSize - END_HEADER_SIZE;
+            while (end >= 0 && tail.getInt(end) != END_SIGNATURE) {
+                end--;
+            }
+            if (end < 0) {
+                throw new ZipException("Not a zip file: " + jar);
+            }
+            final long centralSize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+            final long centralOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+            if (centralSize == ZIP64_MARKER || centralOffset == ZIP64_MARKER || centralOffset + centralSize > fileSize) {
+                return readPackagesWithZipFile(jar);
+            }
+            final ByteBuffer central = channel.map(FileChannel.MapMode.READ_ONLY, centralOffset, centralSize).order(ByteOrder.LITTLE_ENDIAN);
+            if (centralSize > 0 && (centralSize < CENTRAL_HEADER_SIZE || central.getInt(0) != CENTRAL_SIGNATURE)) {
+                return readPackagesWithZipFile(jar);
+            }
+            final Set<String> packages = new HashSet<>();
+            int position = 0;
+            while (position + CENTRAL_HEADER_SIZE <= centralSize && central.getInt(position) == CENTRAL_SIGNATURE) {
+                final int nameLength = central.getShort(position + 28) & 0xFFFF;
+                final int extraLength = central.getShort(position + 30) & 0xFFFF;
+                final int commentLength = central.getShort(position + 32) & 0xFFFF;
+                final byte[] name = new byte[nameLength];
+                ((ByteBuffer) central.duplicate().position(position + CENTRAL_HEADER_SIZE)).get(name);
+                packages.add(IndexedClassLoader.packageOf(new String(name, StandardCharsets.UTF_8)));
+                position += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+            }
+            return packages;
+        }
+    }
+
+    private static Set<String> readPackagesWithZipFile(File jar) throws IOException {
+        final Set<String> packages = new HashSet<>();
+        try (ZipFile zipFile = new ZipFile(jar)) {
+            final Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+            while (zipEntries.hasMoreElements()) {
+                packages.add(IndexedClassLoader.packageOf(zipEntries.nextElement().getName()));
+            }
+        }
+        return packages;
+    }
+
+    private static final class Entry {
+        private final String path;
+        private final long size;
+        private final long lastModified;
+        private final Set<String> packages;
+        private long lastUsed;
+
+        private Entry(String path, long size, long lastModified, long lastUsed, Set<String> packages) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.lastUsed = lastUsed;
+            this.packages = Collections.unmodifiableSet(packages);
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeUTF(path);
+            out.writeLong(size);
+            out.writeLong(lastModified);
+            out.writeLong(lastUsed);
+            out.writeInt(packages.size());
+            for (String packageName : packages) {
+                out.writeUTF(packageName);
+            }
+        }
+
+        private static Entry read(DataInputStream in) throws IOException {
+            final String path = in.readUTF();
+            final long size = in.readLong();
+            final long lastModified = in.readLong();
+            final long lastUsed = in.readLong();
+            final int count = in.readInt();
+            final Set<String> packages = new HashSet<>(count * 4 / 3 + 1);
+            for (int i = 0; i < count; i++) {
+                packages.add(in.readUTF());
+            }
+            return new Entry(path, size, lastModified, lastUsed, packages);
+        }
+    }
+}
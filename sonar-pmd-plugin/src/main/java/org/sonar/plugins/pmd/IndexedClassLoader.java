@@ -0,0 +1,362 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Class loader for the classpath of the analyzed project, used by PMD for type resolution.
+ * <p>
+ * A plain {@link URLClassLoader} searches all elements of the classpath one after the other for every
+ * class it does not find in its parent, which dominates parsing time on projects with hundreds of dependencies.
+ * This class loader builds an index from package to the classpath elements that contain it when it is
+ * created, so that only the elements that can contain a class or resource are searched. The jar files
+ * themselves are opened on first use and stay open until the class loader is closed.
+ * <p>
+ * The URLs of the classpath are still exposed through {@link #getURLs()}, but never searched by the super class.
+ */
+final class IndexedClassLoader extends URLClassLoader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IndexedClassLoader.class);
+
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    private final List<Element> elements;
+    private final Map<String, List<Element>> elementsByPackage;
+    private final boolean ownsElements;
+
+    /**
+     * Creates a class loader that opens and closes the elements of the classpath itself.
+     */
+    IndexedClassLoader(Collection<File> classpath) {
+        this(classpath, file -> Element.of(file, ClasspathIndex.inMemory()), true);
+    }
+
+    /**
+     * Creates a class loader that uses elements shared with other class loaders. They are not closed
+     * with this class loader, but by the owner of the elements.
+     */
+    IndexedClassLoader(Collection<File> classpath, Function<File, Element> sharedElements) {
+        this(classpath, sharedElements, false);
+    }
+
+    private IndexedClassLoader(Collection<File> classpath, Function<File, Element> elementOf, boolean ownsElements) {
+        super(toUrls(classpath));
+        this.ownsElements = ownsElements;
+        final long startTimeMs = System.currentTimeMillis();
+        final Set<File> distinctFiles = new LinkedHashSet<>(classpath);
+        elements = new ArrayList<>(distinctFiles.size());
+        elementsByPackage = new HashMap<>();
+        for (File file : distinctFiles) {
+            final Element element = elementOf.apply(file);
+            if (element == null) {
+                continue;
+            }
+            elements.add(element);
+            for (String packageName : element.packages()) {
+                elementsByPackage.computeIfAbsent(packageName, k -> new ArrayList<>(1)).add(element);
+            }
+        }
+        LOG.debug("Indexed {} packages of {} classpath elements | time={}ms", elementsByPackage.size(), elements.size(), System.currentTimeMillis() - startTimeMs);
+    }
+
+    private static URL[] toUrls(Collection<File> classpath) {
+        final List<URL> urls = new ArrayList<>(classpath.size());
+        for (File file : classpath) {
+            try {
+                urls.add(file.toURI().toURL());
+            } catch (MalformedURLException | IllegalArgumentException e) {
+                throw new IllegalStateException("Failed to create the project classloader. Classpath element is invalid: " + file, e);
+            }
+        }
+        return urls.toArray(new URL[0]);
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        final String resourceName = name.replace('.', '/') + ".class";
+        for (Element element : candidates(resourceName)) {
+            try {
+                final byte[] bytes = element.read(resourceName);
+                if (bytes != null) {
+                    return defineClass(name, bytes, 0, bytes.length);
+                }
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+        throw new ClassNotFoundException(name);
+    }
+
+    @Override
+    public URL findResource(String name) {
+        for (Element element : candidates(name)) {
+            final URL url = element.find(name);
+            if (url != null) {
+                return url;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Enumeration<URL> findResources(String name) {
+        final List<URL> urls = new ArrayList<>(1);
+        for (Element element : candidates(name)) {
+            final URL url = element.find(name);
+            if (url != null) {
+                urls.add(url);
+            }
+        }
+        return Collections.enumeration(urls);
+    }
+
+    private List<Element> candidates(String resourceName) {
+        return elementsByPackage.getOrDefault(packageOf(resourceName), Collections.emptyList());
+    }
+
+    static String packageOf(String resourceName) {
+        final int lastSlash = resourceName.lastIndexOf('/');
+        return lastSlash < 0 ? "" : resourceName.substring(0, lastSlash);
+    }
+
+    List<Element> elements() {
+        return elements;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        if (ownsElements) {
+            for (Element element : elements) {
+                try {
+                    element.close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        }
+        super.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * A jar file or directory of the classpath. The packages it contains are indexed once, on first request.
+     */
+    abstract static class Element {
+
+        private Set<String> packages;
+
+        static Element of(File file, ClasspathIndex classpathIndex) {
+            if (file.isDirectory()) {
+                return new DirectoryElement(file.toPath());
+            }
+            if (file.isFile()) {
+                return new JarElement(file, classpathIndex);
+            }
+            LOG.debug("Classpath element {} does not exist, ignoring it", file);
+            return null;
+        }
+
+        /**
+         * @return The packages of all classes and resources of this element, in the form "a/b/c".
+         */
+        final synchronized Set<String> packages() {
+            if (packages == null) {
+                packages = index();
+            }
+            return packages;
+        }
+
+        abstract Set<String> index();
+
+        abstract URL find(String name);
+
+        abstract byte[] read(String name) throws IOException;
+
+        void close() throws IOException {
+        }
+    }
+
+    private static final class DirectoryElement extends Element {
+        private final Path root;
+
+        DirectoryElement(Path root) {
+            this.root = root;
+        }
+
+        @Override
+        Set<String> index() {
+            final Set<String> packages = new HashSet<>();
+            try (Stream<Path> directories = Files.walk(root).filter(Files::isDirectory)) {
+                directories.forEach(directory -> packages.add(root.relativize(directory).toString().replace(File.separatorChar, '/')));
+            } catch (IOException | RuntimeException e) {
+                LOG.debug("Failed to index classpath element {}", root, e);
+            }
+            return packages;
+        }
+
+        @Override
+        URL find(String name) {
+            final Path path = root.resolve(name);
+            if (!Files.isRegularFile(path)) {
+                return null;
+            }
+            try {
+                return path.toUri().toURL();
+            } catch (MalformedURLException e) {
+                return null;
+            }
+        }
+
+        @Override
+        byte[] read(String name) throws IOException {
+            final Path path = root.resolve(name);
+            return Files.isRegularFile(path) ? Files.readAllBytes(path) : null;
+        }
+    }
+
+    private static final class JarElement extends Element {
+        private final File file;
+        private final ClasspathIndex classpathIndex;
+        private final URLStreamHandler handler = new JarEntryHandler();
+        private JarFile jarFile;
+        private boolean closed;
+
+        JarElement(File file, ClasspathIndex classpathIndex) {
+            this.file = file;
+            this.classpathIndex = classpathIndex;
+        }
+
+        @Override
+        Set<String> index() {
+            try {
+                return classpathIndex.packagesOf(file);
+            } catch (IOException e) {
+                LOG.debug("Failed to index classpath element {}", file, e);
+                return Collections.emptySet();
+            }
+        }
+
+        private synchronized JarFile jarFile() throws IOException {
+            if (closed) {
+                throw new IOException("Class loader closed: " + file);
+            }
+            if (jarFile == null) {
+                jarFile = new JarFile(file, false, ZipFile.OPEN_READ, JarFile.runtimeVersion());
+            }
+            return jarFile;
+        }
+
+        @Override
+        URL find(String name) {
+            try {
+                if (jarFile().getEntry(name) == null) {
+                    return null;
+                }
+                return new URL("jar", "", -1, file.toURI() + "!/" + name, handler);
+            } catch (IOException e) {
+                LOG.debug("Failed to read {} from classpath element {}", name, file, e);
+                return null;
+            }
+        }
+
+        @Override
+        byte[] read(String name) throws IOException {
+            final JarFile jar = jarFile();
+            final ZipEntry entry = jar.getEntry(name);
+            if (entry == null) {
+                return null;
+            }
+            try (InputStream in = jar.getInputStream(entry)) {
+                return in.readAllBytes();
+            }
+        }
+
+        @Override
+        synchronized void close() throws IOException {
+            closed = true;
+            if (jarFile != null) {
+                jarFile.close();
+                jarFile = null;
+            }
+        }
+
+        /**
+         * Reads the entries through the jar file opened by this element, instead of the JVM wide cache of
+         * jar files used by the default "jar:" protocol handler, which would keep them open after closing.
+         */
+        private final class JarEntryHandler extends URLStreamHandler {
+            @Override
+            protected URLConnection openConnection(URL url) {
+                final String spec = url.getFile();
+                final String name = spec.substring(spec.indexOf("!/") + 2);
+                return new URLConnection(url) {
+                    @Override
+                    public void connect() {
+                        connected = true;
+                    }
+
+                    @Override
+                    public InputStream getInputStream() throws IOException {
+                        final JarFile jar = jarFile();
+                        final ZipEntry entry = jar.getEntry(name);
+                        if (entry == null) {
+                            throw new FileNotFoundException(url.toString());
+                        }
+                        return jar.getInputStream(entry);
+                    }
+                };
+            }
+        }
+    }
+}
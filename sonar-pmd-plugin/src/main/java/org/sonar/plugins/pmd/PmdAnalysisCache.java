@@ -0,0 +1,296 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd;
+
+import net.sourceforge.pmd.PMDVersion;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.reporting.Report;
+import net.sourceforge.pmd.reporting.RuleViolation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.batch.fs.InputFile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Persistent, file based cache of PMD results, used for incremental analysis.
+ * <p>
+ * The cache stores the violations found per analyzed file together with the MD5 hash of the file content.
+ * A file whose hash did not change since the previous analysis is not handed to PMD again; its violations
+ * are replayed from the cache instead. The whole cache is bound to a fingerprint of everything else that
+ * influences the result (rule set, PMD version, language version and auxiliary classpath): when the
+ * fingerprint changes, the previous content is discarded.
+ */
+class PmdAnalysisCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PmdAnalysisCache.class);
+    private static final int FORMAT_VERSION = 1;
+
+    private final Path cacheFile;
+    private final String fingerprint;
+    private final Map<String, Entry> previous;
+    private final Map<String, Entry> next = new HashMap<>();
+    private int hits;
+    private int misses;
+
+    private PmdAnalysisCache(Path cacheFile, String fingerprint, Map<String, Entry> previous) {
+        this.cacheFile = cacheFile;
+        this.fingerprint = fingerprint;
+        this.previous = previous;
+    }
+
+    /**
+     * Opens the cache stored in the given file. When the file does not exist, can not be read or was written
+     * for another fingerprint, an empty cache is returned.
+     */
+    static PmdAnalysisCache open(Path cacheFile, String fingerprint) {
+        if (!Files.isRegularFile(cacheFile)) {
+            LOG.debug("No PMD analysis cache found at {}", cacheFile);
+            return new PmdAnalysisCache(cacheFile, fingerprint, Collections.emptyMap());
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+            if (in.readInt() != FORMAT_VERSION || !fingerprint.equals(in.readUTF())) {
+                LOG.info("PMD analysis cache {} is outdated (rules, PMD version, Java version or classpath changed), discarding it", cacheFile);
+                return new PmdAnalysisCache(cacheFile, fingerprint, Collections.emptyMap());
+            }
+            final int size = in.readInt();
+            final Map<String, Entry> entries = new HashMap<>(size * 4 / 3 + 1);
+            for (int i = 0; i < size; i++) {
+                final Entry entry = Entry.read(in);
+                entries.put(entry.path, entry);
+            }
+            return new PmdAnalysisCache(cacheFile, fingerprint, entries);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Failed to read PMD analysis cache {}, discarding it", cacheFile, e);
+            return new PmdAnalysisCache(cacheFile, fingerprint, Collections.emptyMap());
+        }
+    }
+
+    /**
+     * Computes the fingerprint of everything besides the file content that determines the outcome of an analysis.
+     */
+    static String fingerprint(RuleSet ruleSet, LanguageVersion languageVersion, ClassLoader classLoader) {
+        final StringBuilder key = new StringBuilder()
+                .append("pmd=").append(PMDVersion.VERSION)
+                .append(";lang=").append(languageVersion.getTerseName())
+                .append(";rules=").append(ruleSet.getChecksum())
+                .append(";classpath=");
+        if (classLoader instanceof URLClassLoader) {
+            for (URL url : ((URLClassLoader) classLoader).getURLs()) {
+                key.append(url).append('@').append(fingerprintOf(url)).append(',');
+            }
+        }
+        return sha256(key.toString());
+    }
+
+    private static String fingerprintOf(URL url) {
+        try {
+            return fingerprintOf(Paths.get(url.toURI()).toFile());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return "?";
+        }
+    }
+
+    /**
+     * @return A fingerprint of the classpath element that changes when the element is replaced or updated.
+     */
+    static String fingerprintOf(File file) {
+        return file.length() + ":" + file.lastModified();
+    }
+
+    static String sha256(String text) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * @return true when the cache holds the result of an analysis of exactly the current content of the file.
+     * Every call counts as either a cache hit or a cache miss.
+     */
+    boolean isUpToDate(InputFile file) {
+        final Entry entry = previous.get(pathOf(file));
+        final boolean upToDate = entry != null && entry.hash.equals(file.md5Hash());
+        if (upToDate) {
+            hits++;
+            next.put(entry.path, entry);
+        } else {
+            misses++;
+        }
+        return upToDate;
+    }
+
+    /**
+     * Recreates the cached violations of an up-to-date file.
+     *
+     * @param ruleSet The rule set of the current analysis, used to resolve the rules by name.
+     */
+    List<RuleViolation> cachedViolations(InputFile file, RuleSet ruleSet) {
+        final FileId fileId = FileId.fromPath(file.path());
+        final Entry entry = previous.get(fileId.getAbsolutePath());
+        if (entry == null) {
+            return Collections.emptyList();
+        }
+        final List<RuleViolation> violations = new ArrayList<>(entry.violations.size());
+        for (CachedViolation cached : entry.violations) {
+            final Rule rule = ruleSet.getRuleByName(cached.getRuleName());
+            if (rule != null) {
+                violations.add(cached.toRuleViolation(rule, fileId));
+            }
+        }
+        return violations;
+    }
+
+    /**
+     * Stores the result of the analysis of the given (changed) files, which must all have been analyzed by PMD.
+     * Files that failed to be processed are not stored, so that they are analyzed again next time.
+     */
+    void update(Iterable<InputFile> analyzedFiles, Report report) {
+        final Map<String, List<CachedViolation>> violationsByPath = CachedViolation.byPath(report);
+        final Set<String> failedPaths = failedPaths(report);
+        for (InputFile file : analyzedFiles) {
+            final String path = pathOf(file);
+            final String hash = file.md5Hash();
+            if (hash == null || failedPaths.contains(path)) {
+                continue;
+            }
+            next.put(path, new Entry(path, hash, violationsByPath.getOrDefault(path, Collections.emptyList())));
+        }
+    }
+
+    /**
+     * Writes the entries of the current analysis to disk, replacing the previous content of the cache.
+     */
+    void persist() {
+        try {
+            final Path directory = cacheFile.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            // a temporary file of its own, as other analyses may persist to the same directory at the same time
+            final Path tmpFile = Files.createTempFile(directory, cacheFile.getFileName().toString(), ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+                    out.writeInt(FORMAT_VERSION);
+                    out.writeUTF(fingerprint);
+                    out.writeInt(next.size());
+                    for (Entry entry : next.values()) {
+                        entry.write(out);
+                    }
+                }
+                moveAtomically(tmpFile, cacheFile);
+            } finally {
+                Files.deleteIfExists(tmpFile);
+            }
+            LOG.debug("PMD analysis cache written to {} ({} files)", cacheFile, next.size());
+        } catch (IOException e) {
+            LOG.warn("Failed to write PMD analysis cache {}", cacheFile, e);
+        }
+    }
+
+    private static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * The paths of the files PMD failed to process; their result is incomplete and must not be cached.
+     */
+    static Set<String> failedPaths(Report report) {
+        final Set<String> failedPaths = new HashSet<>();
+        for (Report.ProcessingError error : report.getProcessingErrors()) {
+            failedPaths.add(error.getFileId().getAbsolutePath());
+        }
+        return failedPaths;
+    }
+
+    /**
+     * The path of the file in the form PMD reports it in violations.
+     */
+    static String pathOf(InputFile file) {
+        return FileId.fromPath(file.path()).getAbsolutePath();
+    }
+
+    int hits() {
+        return hits;
+    }
+
+    int misses() {
+        return misses;
+    }
+
+    private static final class Entry {
+        private final String path;
+        private final String hash;
+        private final List<CachedViolation> violations;
+
+        private Entry(String path, String hash, List<CachedViolation> violations) {
+            this.path = path;
+            this.hash = hash;
+            this.violations = violations;
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeUTF(path);
+            out.writeUTF(hash);
+            CachedViolation.writeAll(out, violations);
+        }
+
+        private static Entry read(DataInputStream in) throws IOException {
+            final String path = in.readUTF();
+            final String hash = in.readUTF();
+            return new Entry(path, hash, CachedViolation.readAll(in));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd;
+
+import org.sonar.api.batch.ScannerSide;
+import org.sonar.api.batch.sensor.SensorContext;
+import org.sonar.api.measures.Metric;
+
+import java.io.Serializable;
+
+/**
+ * The cost of the PMD analysis of all modules, see {@link PmdMetrics}. {@link PmdSensor} adds the cost of each
+ * module, {@link PmdAnalysisCostSensor} saves the total once on the project after all modules are analyzed.
+ */
+@ScannerSide
+public class PmdAnalysisCost {
+
+    private boolean analyzed;
+    private long analysisTimeMs;
+    private int filesAnalyzed;
+    private int filesFromCache;
+    private int violationsFound;
+    private int violationsDropped;
+
+    synchronized void add(long analysisTimeMs, int filesAnalyzed, int filesFromCache, int violationsFound, int violationsDropped) {
+        this.analyzed = true;
+        this.analysisTimeMs += analysisTimeMs;
+        this.filesAnalyzed += filesAnalyzed;
+        this.filesFromCache += filesFromCache;
+        this.violationsFound += violationsFound;
+        this.violationsDropped += violationsDropped;
+    }
+
+    /**
+     * Saves the cost as measures of the project, nothing when no module was analyzed.
+     */
+    synchronized void save(SensorContext context) {
+        if (!analyzed) {
+            return;
+        }
+        saveMeasure(context, PmdMetrics.ANALYSIS_TIME, analysisTimeMs);
+        saveMeasure(context, PmdMetrics.FILES_ANALYZED, filesAnalyzed);
+        saveMeasure(context, PmdMetrics.FILES_FROM_CACHE, filesFromCache);
+        saveMeasure(context, PmdMetrics.VIOLATIONS_FOUND, violationsFound);
+        saveMeasure(context, PmdMetrics.VIOLATIONS_DROPPED, violationsDropped);
+    }
+
+    private static <T extends Serializable> void saveMeasure(SensorContext context, Metric<T> metric, T value) {
+        context.<T>newMeasure()
+                .on(context.project())
+                .forMetric(metric)
+                .withValue(value)
+                .save();
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd;
+
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.document.TextFileContent;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Cooperative cancellation of a PMD analysis, e.g. when the scanner is cancelled.
+ * <p>
+ * PMD offers no way to stop a running analysis, so once cancelled, the files that were not read yet are handed to
+ * PMD without content. The request is checked once per file, when it is read, so that the rules run without any
+ * overhead; the analysis finishes when the files being analyzed at that moment are done. Its results are incomplete
+ * and must be discarded by the caller.
+ * <p>
+ * The cancellation request is polled at most every {@value #POLL_INTERVAL_MS}ms, and once cancelled, stays cancelled.
+ */
+class PmdCancellation {
+
+    private static final long POLL_INTERVAL_MS = 100;
+    private static final long POLL_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(POLL_INTERVAL_MS);
+
+    private final BooleanSupplier cancelRequested;
+    private volatile boolean cancelled;
+    private volatile long nextPollNanos = System.nanoTime();
+
+    PmdCancellation(BooleanSupplier cancelRequested) {
+        this.cancelRequested = cancelRequested;
+    }
+
+    boolean isCancelled() {
+        if (cancelled) {
+            return true;
+        }
+        final long now = System.nanoTime();
+        if (now - nextPollNanos < 0) {
+            return false;
+        }
+        nextPollNanos = now + POLL_INTERVAL_NANOS;
+        if (cancelRequested.getAsBoolean()) {
+            cancelled = true;
+        }
+        return cancelled;
+    }
+
+    /**
+     * @return The file, read as empty file once the analysis is cancelled, so that PMD does not spend time on parsing it.
+     */
+    TextFile cancellable(TextFile file) {
+        return new CancellableTextFile(file, this);
+    }
+
+    private static final class CancellableTextFile implements TextFile {
+        private final TextFile delegate;
+        private final PmdCancellation cancellation;
+
+        private CancellableTextFile(TextFile delegate, PmdCancellation cancellation) {
+            this.delegate = delegate;
+            this.cancellation = cancellation;
+        }
+
+        @Override
+        public LanguageVersion getLanguageVersion() {
+            return delegate.getLanguageVersion();
+        }
+
+        @Override
+        public FileId getFileId() {
+            return delegate.getFileId();
+        }
+
+        @Override
+        public TextFileContent readContents() throws IOException {
+            if (cancellation.isCancelled()) {
+                return TextFileContent.fromCharSeq("");
+            }
+            return delegate.readContents();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CancellableTextFile && delegate.equals(((CancellableTextFile) o).delegate);
+        }
+
+        @Override
+        public int hashCode() {
+            return delegate.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return delegate.toString();
+        }
+    }
+}
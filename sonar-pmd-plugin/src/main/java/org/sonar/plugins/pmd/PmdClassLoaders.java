@@ -0,0 +1,112 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.Startable;
+import org.sonar.api.batch.ScannerSide;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Provides the class loaders PMD uses for type resolution. One class loader is created per distinct
+ * classpath and reused by all executors, scopes and modules of the analysis. The jar files and directories
+ * are shared by all class loaders, so an element that is on several classpaths (e.g. the main and the test
+ * classpath) is indexed and opened only once. The index of the jar files is persisted, see {@link ClasspathIndex}.
+ * Everything is closed when the scanner stops.
+ */
+@ScannerSide
+public class PmdClassLoaders implements Startable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PmdClassLoaders.class);
+
+    private final Map<List<File>, URLClassLoader> classLoaders = new HashMap<>();
+    private final Map<File, IndexedClassLoader.Element> elements = new HashMap<>();
+    private final PmdConfiguration pmdConfiguration;
+    private ClasspathIndex classpathIndex;
+
+    public PmdClassLoaders(PmdConfiguration pmdConfiguration) {
+        this.pmdConfiguration = pmdConfiguration;
+    }
+
+    /**
+     * @return The shared class loader for the given classpath. It must not be closed by the caller.
+     */
+    public synchronized URLClassLoader forClasspath(Collection<File> classpath) {
+        final List<File> key = new ArrayList<>(classpath);
+        URLClassLoader classLoader = classLoaders.get(key);
+        if (classLoader == null) {
+            classLoader = new IndexedClassLoader(key, this::element);
+            classLoaders.put(key, classLoader);
+            classpathIndex().persist();
+        }
+        return classLoader;
+    }
+
+    private IndexedClassLoader.Element element(File file) {
+        return elements.computeIfAbsent(file, f -> IndexedClassLoader.Element.of(f, classpathIndex()));
+    }
+
+    private ClasspathIndex classpathIndex() {
+        if (classpathIndex == null) {
+            final Path indexFile = pmdConfiguration.classpathIndexFile();
+            classpathIndex = indexFile != null ? ClasspathIndex.open(indexFile) : ClasspathIndex.inMemory();
+        }
+        return classpathIndex;
+    }
+
+    @Override
+    public void start() {
+        // class loaders are created on demand
+    }
+
+    @Override
+    public synchronized void stop() {
+        for (URLClassLoader classLoader : classLoaders.values()) {
+            try {
+                classLoader.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close the PMD project class loader", e);
+            }
+        }
+        for (IndexedClassLoader.Element element : elements.values()) {
+            try {
+                element.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close a classpath element of the PMD project class loader", e);
+            }
+        }
+        classLoaders.clear();
+        elements.clear();
+        if (classpathIndex != null) {
+            classpathIndex.persist();
+            classpathIndex = null;
+        }
+    }
+}
@@ -19,8 +19,6 @@
  */
 package org.sonar.plugins.pmd;
 
-import net.sourceforge.pmd.renderers.Renderer;
-import net.sourceforge.pmd.renderers.XMLRenderer;
 import net.sourceforge.pmd.reporting.Report;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,14 +29,34 @@ import org.sonar.api.rule.RuleScope;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.StringWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @ScannerSide
 public class PmdConfiguration {
     static final String PROPERTY_GENERATE_XML = "sonar.pmd.generateXml";
-    private static final String PMD_RESULT_XML = "pmd-result.xml";
+    static final String PROPERTY_COMPRESS_XML = "sonar.pmd.generateXml.compress";
+    static final String PROPERTY_REPORT_FORMATS = "sonar.pmd.reportFormats";
+    static final String PROPERTY_GENERATE_RULESET_XML = "sonar.pmd.generateRuleSetXml";
+    static final String PROPERTY_UNIFIED_ANALYSIS = "sonar.pmd.unifiedAnalysis";
+    static final String PROPERTY_THREADS = "sonar.pmd.threads";
+    static final String THREADS_AUTO = "auto";
+    static final String PROPERTY_PROFILE_RULES = "sonar.pmd.profileRules";
+    static final String PROPERTY_JFR_EVENTS = "sonar.pmd.jfrEvents";
+    static final String PROPERTY_FILE_TIMEOUT = "sonar.pmd.fileTimeout";
+    static final String PROPERTY_ANALYSIS_CACHE = "sonar.pmd.analysisCache";
+    static final String PROPERTY_ANALYSIS_CACHE_PATH = "sonar.pmd.analysisCache.path";
+    private static final String GZIP_SUFFIX = ".gz";
+    private static final String CLASSPATH_INDEX_FILE = "pmd-classpath-index.bin";
+    private static final long HEAP_PER_THREAD = 256L * 1024 * 1024;
     private static final Logger LOG = LoggerFactory.getLogger(PmdConfiguration.class);
     private final FileSystem fileSystem;
     private final Configuration settings;
@@ -48,34 +66,21 @@ public class PmdConfiguration {
         this.settings = settings;
     }
 
-    private static String reportToString(Report report) throws IOException {
-        StringWriter output = new StringWriter();
-
-        Renderer xmlRenderer = new XMLRenderer();
-        xmlRenderer.setWriter(output);
-        xmlRenderer.start();
-        xmlRenderer.renderFileReport(report);
-        xmlRenderer.end();
-
-        return output.toString();
+    private static String scopeSuffix(RuleScope scope) {
+        switch (scope) {
+            case MAIN:
+                return "-main";
+            case TEST:
+                return "-test";
+            case ALL:
+            default:
+                return "";
+        }
     }
 
     File dumpXmlRuleSet(String repositoryKey, String rulesXml, RuleScope scope) {
         try {
-            String suffix;
-            switch (scope) {
-                case MAIN:
-                    suffix = "-main";
-                    break;
-                case TEST:
-                    suffix = "-test";
-                    break;
-                case ALL:
-                default:
-                    suffix = "";
-                    break;
-            }
-            String fileName = repositoryKey + suffix + ".xml";
+            String fileName = repositoryKey + scopeSuffix(scope) + ".xml";
             File configurationFile = writeToWorkingDirectory(rulesXml, fileName).toFile();
 
             LOG.info("PMD configuration: " + configurationFile.getAbsolutePath());
@@ -94,22 +99,192 @@ public class PmdConfiguration {
      * @return The file reference to the XML document.
      */
     Path dumpXmlReport(Report report) {
-        if (!settings.getBoolean(PROPERTY_GENERATE_XML).orElse(false)) {
+        if (!isXmlReportEnabled()) {
             return null;
         }
+        final PmdReportFile xmlReport = openReport(PmdReportFormat.XML);
+        try {
+            xmlReport.render(report);
+        } catch (IOException e) {
+            throw new IllegalStateException("Fail to save the PMD report", e);
+        } finally {
+            xmlReport.close(true);
+        }
+        return xmlReport.getFile();
+    }
 
+    /**
+     * Opens the reports in the working directory, to stream the violations into while PMD analyzes the files:
+     * the XML report unless <code>sonar.pmd.generateXml</code> is set to false, and the reports in the formats
+     * listed in <code>sonar.pmd.reportFormats</code>. The reports are compressed with gzip when
+     * <code>sonar.pmd.generateXml.compress</code> is set.
+     *
+     * @return The reports, to be closed by the caller; empty when no report is requested.
+     */
+    List<PmdReportFile> openReports() {
+        final Set<PmdReportFormat> formats = reportFormats();
+        final List<PmdReportFile> reports = new ArrayList<>(formats.size());
         try {
-            final String reportAsString = reportToString(report);
-            final Path reportFile = writeToWorkingDirectory(reportAsString, PMD_RESULT_XML);
+            for (PmdReportFormat format : formats) {
+                reports.add(openReport(format));
+            }
+        } catch (RuntimeException e) {
+            reports.forEach(report -> report.close(false));
+            throw e;
+        }
+        return reports;
+    }
 
-            LOG.info("PMD output report: {}", reportFile);
+    /**
+     * @return The formats of the reports to write, see {@link #openReports()}.
+     */
+    Set<PmdReportFormat> reportFormats() {
+        final Set<PmdReportFormat> formats = EnumSet.noneOf(PmdReportFormat.class);
+        if (isXmlReportEnabled()) {
+            formats.add(PmdReportFormat.XML);
+        }
+        for (String key : settings.getStringArray(PROPERTY_REPORT_FORMATS)) {
+            if (key.trim().isEmpty()) {
+                continue;
+            }
+            final Optional<PmdReportFormat> format = PmdReportFormat.fromKey(key);
+            if (format.isPresent()) {
+                formats.add(format.get());
+            } else {
+                LOG.warn("Unknown PMD report format '{}' in {}, expected one of {}", key, PROPERTY_REPORT_FORMATS,
+                        Arrays.stream(PmdReportFormat.values()).map(PmdReportFormat::getKey).collect(Collectors.joining(", ")));
+            }
+        }
+        return formats;
+    }
 
-            return reportFile;
+    private PmdReportFile openReport(PmdReportFormat format) {
+        final boolean compress = settings.getBoolean(PROPERTY_COMPRESS_XML).orElse(false);
+        final String fileName = compress ? format.getFileName() + GZIP_SUFFIX : format.getFileName();
+        try {
+            return PmdReportFile.open(fileSystem.workDir().toPath().resolve(fileName), compress, format.createRenderer());
         } catch (IOException e) {
             throw new IllegalStateException("Fail to save the PMD report", e);
         }
     }
 
+    /**
+     * @return true when the XML report is requested with <code>sonar.pmd.generateXml</code>.
+     */
+    boolean isXmlReportEnabled() {
+        return settings.getBoolean(PROPERTY_GENERATE_XML).orElse(false);
+    }
+
+    /**
+     * @return true when the rule sets handed to PMD should be written to the working directory as well,
+     * as requested with <code>sonar.pmd.generateRuleSetXml</code>.
+     */
+    boolean isRuleSetXmlEnabled() {
+        return settings.getBoolean(PROPERTY_GENERATE_RULESET_XML).orElse(false);
+    }
+
+    /**
+     * @return true when Java and Kotlin, main and test files are to be analyzed in a single PMD run,
+     * as requested with <code>sonar.pmd.unifiedAnalysis</code>.
+     */
+    boolean isUnifiedAnalysisEnabled() {
+        return settings.getBoolean(PROPERTY_UNIFIED_ANALYSIS).orElse(false);
+    }
+
+    /**
+     * @return The number of threads PMD analyzes files with, as configured with <code>sonar.pmd.threads</code>:
+     * a number, or <code>auto</code> to derive it from the available processors and the maximum heap size.
+     * Defaults to the number of available processors, like PMD does.
+     */
+    int analysisThreads() {
+        final int processors = Runtime.getRuntime().availableProcessors();
+        final String value = settings.get(PROPERTY_THREADS).map(String::trim).orElse("");
+        if (value.isEmpty()) {
+            return processors;
+        }
+        if (THREADS_AUTO.equalsIgnoreCase(value)) {
+            return autoThreads(processors, Runtime.getRuntime().maxMemory());
+        }
+        try {
+            final int threads = Integer.parseInt(value);
+            if (threads >= 0) {
+                return threads;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        LOG.warn("Invalid value '{}' for {}, expected a number of threads or '{}'. Using {} threads.", value, PROPERTY_THREADS, THREADS_AUTO, processors);
+        return processors;
+    }
+
+    /**
+     * Every thread holds the AST and type resolution data of the file it analyzes. Half of the heap is left to
+     * the scanner, the other half is divided in chunks that are large enough for big source files.
+     */
+    static int autoThreads(int processors, long maxHeap) {
+        if (maxHeap == Long.MAX_VALUE) {
+            // no heap limit
+            return processors;
+        }
+        final long threadsByHeap = maxHeap / 2 / HEAP_PER_THREAD;
+        return (int) Math.max(1, Math.min(processors, threadsByHeap));
+    }
+
+    /**
+     * @return true when the execution time of each rule is to be recorded, as requested with
+     * <code>sonar.pmd.profileRules</code>.
+     */
+    boolean isRuleProfilingEnabled() {
+        return settings.getBoolean(PROPERTY_PROFILE_RULES).orElse(false);
+    }
+
+    /**
+     * @return true when Java Flight Recorder events are to be emitted for the phases of the analysis, as requested
+     * with <code>sonar.pmd.jfrEvents</code>.
+     */
+    boolean isJfrEventsEnabled() {
+        return settings.getBoolean(PROPERTY_JFR_EVENTS).orElse(false);
+    }
+
+    /**
+     * @return The time in seconds the rules may spend on a single file, as configured with
+     * <code>sonar.pmd.fileTimeout</code>; 0 when unlimited.
+     */
+    long fileTimeoutSeconds() {
+        return Math.max(0, settings.getLong(PROPERTY_FILE_TIMEOUT).orElse(0L));
+    }
+
+    /**
+     * @return true when incremental analysis is enabled with <code>sonar.pmd.analysisCache</code>.
+     */
+    boolean isAnalysisCacheEnabled() {
+        return settings.getBoolean(PROPERTY_ANALYSIS_CACHE).orElse(false);
+    }
+
+    /**
+     * Location of the incremental analysis cache for the given repository and scope. The cache is stored in the
+     * directory configured with <code>sonar.pmd.analysisCache.path</code>, or in the working directory when not set.
+     * The file name contains a hash of the project base directory, so that a directory can be shared by projects.
+     */
+    Path analysisCacheFile(String repositoryKey, RuleScope scope) {
+        final Path cacheDir = settings.get(PROPERTY_ANALYSIS_CACHE_PATH)
+                .map(Paths::get)
+                .orElseGet(() -> fileSystem.workDir().toPath());
+        final String projectHash = Integer.toHexString(fileSystem.baseDir().getAbsolutePath().hashCode());
+        return cacheDir.resolve("pmd-cache-" + repositoryKey + scopeSuffix(scope) + "-" + projectHash + ".bin");
+    }
+
+    /**
+     * @return The file that stores the index of the packages in the jar files of the classpath. It is kept in the
+     * directory of the analysis cache, so that it is shared by all projects that use that directory.
+     */
+    Path classpathIndexFile() {
+        final Path cacheDir = settings.get(PROPERTY_ANALYSIS_CACHE_PATH)
+                .map(Paths::get)
+                .orElseGet(() -> fileSystem.workDir().toPath());
+        return cacheDir.resolve(CLASSPATH_INDEX_FILE);
+    }
+
     private Path writeToWorkingDirectory(String content, String fileName) throws IOException {
         final Path targetPath = fileSystem.workDir().toPath().resolve(fileName);
         Files.write(targetPath, content.getBytes());
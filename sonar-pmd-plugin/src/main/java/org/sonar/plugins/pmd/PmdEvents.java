@@ -0,0 +1,179 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import net.sourceforge.pmd.reporting.GlobalAnalysisListener;
+import net.sourceforge.pmd.reporting.RuleViolation;
+
+import java.io.File;
+import java.util.function.ToIntFunction;
+
+/**
+ * Java Flight Recorder events for the phases of the PMD analysis, so that a recording of the scanner shows
+ * where the time of the plugin goes. The events are only created while enabled with
+ * <code>sonar.pmd.jfrEvents</code>; when disabled, emitting an event costs a single volatile read.
+ */
+final class PmdEvents {
+
+    private static volatile boolean enabled;
+
+    private PmdEvents() {
+    }
+
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    static void setEnabled(boolean enabled) {
+        PmdEvents.enabled = enabled;
+    }
+
+    /**
+     * @return A listener that emits a {@link FileAnalysisEvent} per analyzed file.
+     * @param rulesOfPath The number of rules applied to the file with the given path.
+     */
+    static GlobalAnalysisListener fileAnalysisListener(ToIntFunction<String> rulesOfPath) {
+        return new GlobalAnalysisListener() {
+            @Override
+            public FileAnalysisListener startFileAnalysis(TextFile file) {
+                final FileAnalysisEvent event = new FileAnalysisEvent();
+                event.begin();
+                event.path = file.getFileId().getAbsolutePath();
+                return new FileAnalysisListener() {
+                    @Override
+                    public void onRuleViolation(RuleViolation violation) {
+                        event.violations++;
+                    }
+
+                    @Override
+                    public void close() {
+                        event.end();
+                        if (event.shouldCommit()) {
+                            event.size = new File(event.path).length();
+                            event.rules = rulesOfPath.applyAsInt(event.path);
+                            event.commit();
+                        }
+                    }
+                };
+            }
+
+            @Override
+            public void close() {
+                // nothing to release
+            }
+        };
+    }
+
+    @Name("org.sonar.plugins.pmd.Sensor")
+    @Label("PMD Sensor")
+    @Description("Execution of the PMD sensor on a module")
+    @Category({"SonarQube", "PMD"})
+    @StackTrace(false)
+    static final class SensorEvent extends Event {
+        @Label("Files")
+        int files;
+
+        @Label("Cached Files")
+        @Description("Files the violations of which were taken from the analysis cache")
+        int cachedFiles;
+    }
+
+    @Name("org.sonar.plugins.pmd.FileInventory")
+    @Label("PMD File Inventory")
+    @Description("Collection and indexing of the files to analyze")
+    @Category({"SonarQube", "PMD"})
+    @StackTrace(false)
+    static final class FileInventoryEvent extends Event {
+        @Label("Files")
+        int files;
+    }
+
+    @Name("org.sonar.plugins.pmd.RuleSet")
+    @Label("PMD Rule Set")
+    @Description("Construction of the PMD rule set of a repository and scope")
+    @Category({"SonarQube", "PMD"})
+    @StackTrace(false)
+    static final class RuleSetEvent extends Event {
+        @Label("Repository")
+        String repository;
+
+        @Label("Scope")
+        String scope;
+
+        @Label("Rules")
+        int rules;
+    }
+
+    @Name("org.sonar.plugins.pmd.ClassLoader")
+    @Label("PMD Class Loader")
+    @Description("Creation of the class loader used for type resolution")
+    @Category({"SonarQube", "PMD"})
+    @StackTrace(false)
+    static final class ClassLoaderEvent extends Event {
+        @Label("Classpath Elements")
+        int elements;
+    }
+
+    @Name("org.sonar.plugins.pmd.FileAnalysis")
+    @Label("PMD File Analysis")
+    @Description("Analysis of a single file by PMD, parsing included")
+    @Category({"SonarQube", "PMD"})
+    @StackTrace(false)
+    static final class FileAnalysisEvent extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Size")
+        @DataAmount
+        long size;
+
+        @Label("Rules")
+        int rules;
+
+        @Label("Violations")
+        int violations;
+    }
+
+    @Name("org.sonar.plugins.pmd.ViolationRecording")
+    @Label("PMD Violation Recording")
+    @Description("Conversion of a PMD violation into a SonarQube issue")
+    @Category({"SonarQube", "PMD"})
+    @StackTrace(false)
+    static final class ViolationRecordingEvent extends Event {
+        @Label("Rule")
+        String rule;
+
+        @Label("Path")
+        String path;
+
+        @Label("Saved")
+        @Description("False when the file is not part of the analysis or the rule is not active")
+        boolean saved;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.document.TextDocument;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.RuleReference;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.reporting.RuleContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the time the rules may spend on a single file.
+ * <p>
+ * PMD can not interrupt a rule, so the budget is checked each time a rule is done with a node. When a file exceeds
+ * its budget, a {@link FileTimeoutException} is raised once, which PMD reports as processing error of the file, and
+ * all further rule invocations on that file are skipped. The file is abandoned: the violations found before the
+ * timeout are discarded by {@link PmdIssueListener}. The analysis of the other files continues.
+ */
+class PmdFileTimeBudget {
+
+    private final long budgetNanos;
+    private final ThreadLocal<FileState> currentFile = new ThreadLocal<>();
+
+    PmdFileTimeBudget(long budget, TimeUnit unit) {
+        this.budgetNanos = unit.toNanos(budget);
+    }
+
+    /**
+     * @return A copy of the rule set whose rules stop once the file they analyze exceeds the time budget.
+     */
+    RuleSet restrict(RuleSet ruleSet) {
+        final List<Rule> rules = new ArrayList<>(ruleSet.size());
+        for (Rule rule : ruleSet.getRules()) {
+            rules.add(new BudgetedRule(rule, this));
+        }
+        return RuleSet.create(ruleSet.getName(), ruleSet.getDescription(), ruleSet.getFileName(),
+                ruleSet.getFileExclusions(), ruleSet.getFileInclusions(), rules);
+    }
+
+    /**
+     * @return The timeout that caused the given processing error, null when it was caused by something else.
+     */
+    static FileTimeoutException timeoutOf(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof FileTimeoutException) {
+                return (FileTimeoutException) cause;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The files of a worker thread are analyzed one after another, the rules of a file all run in the same thread.
+     */
+    private FileState enter(TextDocument document) {
+        FileState state = currentFile.get();
+        if (state == null || state.document != document) {
+            state = new FileState(document, System.nanoTime());
+            currentFile.set(state);
+        }
+        return state;
+    }
+
+    private static final class FileState {
+        private final TextDocument document;
+        private final long startNanos;
+        private boolean exceeded;
+
+        private FileState(TextDocument document, long startNanos) {
+            this.document = document;
+            this.startNanos = startNanos;
+        }
+    }
+
+    static final class FileTimeoutException extends RuntimeException {
+        private final String path;
+        private final String rule;
+
+        FileTimeoutException(String path, String rule, long budgetMs) {
+            super("PMD analysis of " + path + " exceeded the time budget of " + budgetMs + "ms while running rule " + rule
+                    + ", the file was not analyzed");
+            this.path = path;
+            this.rule = rule;
+        }
+
+        String getPath() {
+            return path;
+        }
+
+        String getRule() {
+            return rule;
+        }
+    }
+
+    private static final class BudgetedRule extends RuleReference {
+        private final PmdFileTimeBudget budget;
+
+        private BudgetedRule(Rule rule, PmdFileTimeBudget budget) {
+            super(rule, null);
+            this.budget = budget;
+        }
+
+        @Override
+        public void apply(Node target, RuleContext ctx) {
+            final FileState state = budget.enter(target.getTextDocument());
+            if (state.exceeded) {
+                return;
+            }
+            super.apply(target, ctx);
+            if (System.nanoTime() - state.startNanos > budget.budgetNanos) {
+                state.exceeded = true;
+                throw new FileTimeoutException(target.getTextDocument().getFileId().getAbsolutePath(), getName(),
+                        TimeUnit.NANOSECONDS.toMillis(budget.budgetNanos));
+            }
+        }
+
+        @Override
+        public Rule deepCopy() {
+            return new BudgetedRule(getRule().deepCopy(), budget);
+        }
+    }
+}
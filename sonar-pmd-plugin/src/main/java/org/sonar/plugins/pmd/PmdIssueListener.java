@@ -0,0 +1,159 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd;
+
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import net.sourceforge.pmd.reporting.GlobalAnalysisListener;
+import net.sourceforge.pmd.reporting.Report;
+import net.sourceforge.pmd.reporting.RuleViolation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.sensor.SensorContext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Turns the results of PMD into SonarQube issues while the analysis is running. The violations of a file are
+ * saved as soon as the analysis of that file is finished, so at most the violations of the files in flight are
+ * held in memory, instead of a report of the whole project.
+ * <p>
+ * PMD analyzes files in parallel; the violations of finished files are saved one file at a time.
+ */
+class PmdIssueListener implements GlobalAnalysisListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PmdIssueListener.class);
+
+    private final PmdViolationRecorder pmdViolationRecorder;
+    private final SensorContext context;
+    private final PmdSensorCache cache;
+    private final List<String> timeouts = new ArrayList<>();
+    private int files;
+    private int violations;
+    private int droppedViolations;
+
+    PmdIssueListener(PmdViolationRecorder pmdViolationRecorder, SensorContext context, PmdSensorCache cache) {
+        this.pmdViolationRecorder = pmdViolationRecorder;
+        this.context = context;
+        this.cache = cache;
+    }
+
+    @Override
+    public FileAnalysisListener startFileAnalysis(TextFile file) {
+        return new FileIssues(file.getFileId());
+    }
+
+    private synchronized void save(FileId fileId, List<RuleViolation> fileViolations, boolean failed) {
+        if (context.isCancelled()) {
+            // the analysis is abandoned, its partial results are neither reported nor cached
+            return;
+        }
+        files++;
+        violations += fileViolations.size();
+        for (RuleViolation violation : fileViolations) {
+            if (!pmdViolationRecorder.saveViolation(violation, context)) {
+                droppedViolations++;
+            }
+        }
+        if (!failed && cache.isEnabled()) {
+            final InputFile inputFile = pmdViolationRecorder.findResourceFor(fileId);
+            if (inputFile != null) {
+                final List<CachedViolation> cachedViolations = new ArrayList<>(fileViolations.size());
+                fileViolations.forEach(violation -> cachedViolations.add(CachedViolation.of(violation)));
+                cache.store(inputFile, cachedViolations);
+            }
+        }
+    }
+
+    private synchronized void timeout(PmdFileTimeBudget.FileTimeoutException timeout) {
+        LOG.warn(timeout.getMessage());
+        timeouts.add(timeout.getMessage());
+    }
+
+    /**
+     * @return The messages about files whose analysis was abandoned because it exceeded the time budget.
+     */
+    synchronized List<String> getTimeouts() {
+        return new ArrayList<>(timeouts);
+    }
+
+    /**
+     * @return The number of files PMD reported results for, including the files taken from the analysis cache.
+     */
+    synchronized int getFiles() {
+        return files;
+    }
+
+    synchronized int getViolations() {
+        return violations;
+    }
+
+    /**
+     * @return The number of violations that were not saved, because their rule is not active or their file is
+     * not part of the analysis.
+     */
+    synchronized int getDroppedViolations() {
+        return droppedViolations;
+    }
+
+    @Override
+    public synchronized void close() {
+        LOG.debug("PMD found {} violations in {} files", violations, files);
+    }
+
+    private final class FileIssues implements FileAnalysisListener {
+        private final FileId fileId;
+        private final List<RuleViolation> fileViolations = new ArrayList<>();
+        private boolean failed;
+        private boolean timedOut;
+
+        private FileIssues(FileId fileId) {
+            this.fileId = fileId;
+        }
+
+        @Override
+        public void onRuleViolation(RuleViolation violation) {
+            fileViolations.add(violation);
+        }
+
+        @Override
+        public void onError(Report.ProcessingError error) {
+            final PmdFileTimeBudget.FileTimeoutException timeout = PmdFileTimeBudget.timeoutOf(error.getError());
+            if (timeout != null) {
+                timeout(timeout);
+                timedOut = true;
+            } else {
+                LOG.debug("PMD failed to process {}: {}", fileId.getAbsolutePath(), error.getMsg(), error.getError());
+            }
+            failed = true;
+        }
+
+        @Override
+        public void close() {
+            // a file that exceeded its time budget is abandoned: which of its violations were found before the
+            // timeout depends on the speed of the machine, so none of them is reported
+            save(fileId, timedOut ? Collections.emptyList() : fileViolations, failed);
+        }
+    }
+}
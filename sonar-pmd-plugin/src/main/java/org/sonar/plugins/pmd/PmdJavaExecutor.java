@@ -19,24 +19,22 @@
  */
 package org.sonar.plugins.pmd;
 
-import net.sourceforge.pmd.reporting.FileAnalysisListener;
-import net.sourceforge.pmd.reporting.Report;
+import net.sourceforge.pmd.reporting.GlobalAnalysisListener;
 import org.sonar.api.batch.ScannerSide;
 import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.fs.InputFile.Type;
 import org.sonar.api.batch.rule.ActiveRules;
 import org.sonar.api.config.Configuration;
 import org.sonar.api.rule.RuleScope;
 
 import java.io.File;
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Optional;
-import java.util.function.Consumer;
+import java.util.Set;
 
 /**
  * PMD executor for Java files.
@@ -45,11 +43,14 @@ import java.util.function.Consumer;
 public class PmdJavaExecutor extends AbstractPmdExecutor {
 
     private final ClasspathProvider classpathProvider;
+    private final PmdClassLoaders classLoaders;
 
     public PmdJavaExecutor(FileSystem fileSystem, ActiveRules rulesProfile,
-                       PmdConfiguration pmdConfiguration, ClasspathProvider classpathProvider, Configuration settings) {
+                       PmdConfiguration pmdConfiguration, ClasspathProvider classpathProvider, PmdClassLoaders classLoaders,
+                       Configuration settings) {
         super(fileSystem, rulesProfile, pmdConfiguration, settings);
         this.classpathProvider = classpathProvider;
+        this.classLoaders = classLoaders;
     }
 
     @Override
@@ -63,41 +64,56 @@ public class PmdJavaExecutor extends AbstractPmdExecutor {
     }
 
     @Override
-    protected Report executePmd(URLClassLoader classLoader) {
-        final PmdTemplate pmdFactory = createPmdTemplate(classLoader);
-        final Optional<Report> javaMainReport = executeRules(pmdFactory, hasFiles(Type.MAIN, PmdConstants.LANGUAGE_JAVA_KEY), PmdConstants.MAIN_JAVA_REPOSITORY_KEY, RuleScope.MAIN);
-        final Optional<Report> javaTestReport = executeRules(pmdFactory, hasFiles(Type.TEST, PmdConstants.LANGUAGE_JAVA_KEY), PmdConstants.MAIN_JAVA_REPOSITORY_KEY, RuleScope.TEST);
-
-        if (LOGGER.isDebugEnabled()) {
-            javaMainReport.ifPresent(this::writeDebugLine);
-            javaTestReport.ifPresent(this::writeDebugLine);
+    protected void executePmd(URLClassLoader classLoader, GlobalAnalysisListener listener) {
+        executeRules(createPmdTemplate(classLoader), hasFiles(Type.MAIN, PmdConstants.LANGUAGE_JAVA_KEY), PmdConstants.MAIN_JAVA_REPOSITORY_KEY, RuleScope.MAIN, listener);
+        final Iterable<InputFile> testFiles = hasFiles(Type.TEST, PmdConstants.LANGUAGE_JAVA_KEY);
+        if (testFiles.iterator().hasNext()) {
+            executeRules(createPmdTemplate(createTestClassloader()), testFiles, PmdConstants.MAIN_JAVA_REPOSITORY_KEY, RuleScope.TEST, listener);
         }
+    }
 
-        Consumer<FileAnalysisListener> fileAnalysisListenerConsumer = AbstractPmdExecutor::accept;
-
-        Report unionReport = Report.buildReport(fileAnalysisListenerConsumer);
-        unionReport = javaMainReport.map(unionReport::union).orElse(unionReport);
-        unionReport = javaTestReport.map(unionReport::union).orElse(unionReport);
-
-        pmdConfiguration.dumpXmlReport(unionReport);
-
-        return unionReport;
+    @Override
+    protected List<ScopedRuleSet> createScopedRuleSets() {
+        final List<ScopedRuleSet> scopedRuleSets = new ArrayList<>(2);
+        createScopedRuleSet(hasFiles(Type.MAIN, PmdConstants.LANGUAGE_JAVA_KEY), PmdConstants.MAIN_JAVA_REPOSITORY_KEY, RuleScope.MAIN).ifPresent(scopedRuleSets::add);
+        createScopedRuleSet(hasFiles(Type.TEST, PmdConstants.LANGUAGE_JAVA_KEY), PmdConstants.MAIN_JAVA_REPOSITORY_KEY, RuleScope.TEST).ifPresent(scopedRuleSets::add);
+        return scopedRuleSets;
     }
 
     /**
      * @return A classloader for PMD that contains all dependencies of the project that shall be analyzed.
+     * It is shared with the other analyses of the same classpath.
      */
     @Override
     protected URLClassLoader createClassloader() {
-        Collection<File> classpathElements = classpathProvider.classpath();
-        List<URL> urls = new ArrayList<>();
-        for (File file : classpathElements) {
-            try {
-                urls.add(file.toURI().toURL());
-            } catch (MalformedURLException e) {
-                throw new IllegalStateException("Failed to create the project classloader. Classpath element is invalid: " + file, e);
-            }
-        }
-        return new URLClassLoader(urls.toArray(new URL[0]));
+        return classLoaders.forClasspath(classpathProvider.classpath());
+    }
+
+    /**
+     * @return A classloader for PMD that contains all dependencies of the tests of the project, followed by
+     * those of the main code, as tests resolve against both. Elements on both classpaths are only added once.
+     */
+    protected URLClassLoader createTestClassloader() {
+        final Set<File> classpath = new LinkedHashSet<>(classpathProvider.testClasspath());
+        classpath.addAll(classpathProvider.classpath());
+        return classLoaders.forClasspath(classpath);
+    }
+
+    /**
+     * @return A classloader for PMD that contains the dependencies of both the main code and the tests,
+     * as main and test files are analyzed in the same run.
+     */
+    @Override
+    protected URLClassLoader createUnifiedClassloader() {
+        return classLoaders.forClasspath(analysisClasspath());
+    }
+
+    /**
+     * @return The elements of the main and the test classpath, the types of the analyzed files are resolved against.
+     */
+    Collection<File> analysisClasspath() {
+        final Set<File> classpath = new LinkedHashSet<>(classpathProvider.classpath());
+        classpath.addAll(classpathProvider.testClasspath());
+        return classpath;
     }
-}
\ No newline at end of file
+}
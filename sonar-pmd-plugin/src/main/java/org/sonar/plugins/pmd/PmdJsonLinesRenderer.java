@@ -0,0 +1,81 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd;
+
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.renderers.AbstractIncrementingRenderer;
+import net.sourceforge.pmd.reporting.Report;
+import net.sourceforge.pmd.reporting.RuleViolation;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Renders the PMD results as newline delimited JSON: one JSON object per line, one line per violation. The lines
+ * of a file are written as soon as that file is analyzed; the processing errors follow at the end.
+ */
+class PmdJsonLinesRenderer extends AbstractIncrementingRenderer {
+
+    static final String NAME = "jsonl";
+
+    PmdJsonLinesRenderer() {
+        super(NAME, "Newline delimited JSON, one violation per line.");
+    }
+
+    @Override
+    public String defaultFileExtension() {
+        return NAME;
+    }
+
+    @Override
+    public void renderFileViolations(Iterator<RuleViolation> violations) throws IOException {
+        while (violations.hasNext()) {
+            final RuleViolation violation = violations.next();
+            final Rule rule = violation.getRule();
+            writer.write("{\"type\":\"violation\""
+                    + ",\"file\":" + PmdJson.quote(determineFileName(violation.getFileId()))
+                    + ",\"rule\":" + PmdJson.quote(rule.getName())
+                    + ",\"ruleSet\":" + PmdJson.quote(rule.getRuleSetName())
+                    + ",\"priority\":" + rule.getPriority().getPriority()
+                    + ",\"beginLine\":" + violation.getBeginLine()
+                    + ",\"beginColumn\":" + violation.getBeginColumn()
+                    + ",\"endLine\":" + violation.getEndLine()
+                    + ",\"endColumn\":" + violation.getEndColumn()
+                    + ",\"message\":" + PmdJson.quote(violation.getDescription())
+                    + "}\n");
+        }
+    }
+
+    @Override
+    public void end() throws IOException {
+        for (Report.ProcessingError error : errors) {
+            writer.write("{\"type\":\"error\""
+                    + ",\"file\":" + PmdJson.quote(determineFileName(error.getFileId()))
+                    + ",\"message\":" + PmdJson.quote(error.getMsg())
+                    + "}\n");
+        }
+        for (Report.ConfigurationError error : configErrors) {
+            writer.write("{\"type\":\"configurationError\""
+                    + ",\"rule\":" + PmdJson.quote(error.rule().getName())
+                    + ",\"message\":" + PmdJson.quote(error.issue())
+                    + "}\n");
+        }
+    }
+}
@@ -19,8 +19,7 @@
  */
 package org.sonar.plugins.pmd;
 
-import net.sourceforge.pmd.reporting.FileAnalysisListener;
-import net.sourceforge.pmd.reporting.Report;
+import net.sourceforge.pmd.reporting.GlobalAnalysisListener;
 import org.sonar.api.batch.ScannerSide;
 import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.batch.fs.InputFile.Type;
@@ -28,10 +27,9 @@ import org.sonar.api.batch.rule.ActiveRules;
 import org.sonar.api.config.Configuration;
 import org.sonar.api.rule.RuleScope;
 
-import java.net.URL;
 import java.net.URLClassLoader;
-import java.util.Optional;
-import java.util.function.Consumer;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * PMD executor for Kotlin files.
@@ -40,9 +38,12 @@ import java.util.function.Consumer;
 @ScannerSide
 public class PmdKotlinExecutor extends AbstractPmdExecutor {
 
+    private final PmdClassLoaders classLoaders;
+
     public PmdKotlinExecutor(FileSystem fileSystem, ActiveRules rulesProfile,
-                       PmdConfiguration pmdConfiguration, Configuration settings) {
+                       PmdConfiguration pmdConfiguration, PmdClassLoaders classLoaders, Configuration settings) {
         super(fileSystem, rulesProfile, pmdConfiguration, settings);
+        this.classLoaders = classLoaders;
     }
 
     @Override
@@ -56,34 +57,26 @@ public class PmdKotlinExecutor extends AbstractPmdExecutor {
     }
 
     @Override
-    protected Report executePmd(URLClassLoader classLoader) {
+    protected void executePmd(URLClassLoader classLoader, GlobalAnalysisListener listener) {
         final PmdTemplate pmdFactory = createPmdTemplate(classLoader);
-        final Optional<Report> kotlinMainReport = executeRules(pmdFactory, hasFiles(Type.MAIN, PmdConstants.LANGUAGE_KOTLIN_KEY), PmdConstants.MAIN_KOTLIN_REPOSITORY_KEY, RuleScope.MAIN);
-        final Optional<Report> kotlinTestReport = executeRules(pmdFactory, hasFiles(Type.TEST, PmdConstants.LANGUAGE_KOTLIN_KEY), PmdConstants.MAIN_KOTLIN_REPOSITORY_KEY, RuleScope.TEST);
-
-        if (LOGGER.isDebugEnabled()) {
-            kotlinMainReport.ifPresent(this::writeDebugLine);
-            kotlinTestReport.ifPresent(this::writeDebugLine);
-        }
-
-        Consumer<FileAnalysisListener> fileAnalysisListenerConsumer = AbstractPmdExecutor::accept;
-
-        Report unionReport = Report.buildReport(fileAnalysisListenerConsumer);
-        unionReport = kotlinMainReport.map(unionReport::union).orElse(unionReport);
-        unionReport = kotlinTestReport.map(unionReport::union).orElse(unionReport);
-
-        pmdConfiguration.dumpXmlReport(unionReport);
+        executeRules(pmdFactory, hasFiles(Type.MAIN, PmdConstants.LANGUAGE_KOTLIN_KEY), PmdConstants.MAIN_KOTLIN_REPOSITORY_KEY, RuleScope.MAIN, listener);
+        executeRules(pmdFactory, hasFiles(Type.TEST, PmdConstants.LANGUAGE_KOTLIN_KEY), PmdConstants.MAIN_KOTLIN_REPOSITORY_KEY, RuleScope.TEST, listener);
+    }
 
-        return unionReport;
+    @Override
+    protected List<ScopedRuleSet> createScopedRuleSets() {
+        final List<ScopedRuleSet> scopedRuleSets = new ArrayList<>(2);
+        createScopedRuleSet(hasFiles(Type.MAIN, PmdConstants.LANGUAGE_KOTLIN_KEY), PmdConstants.MAIN_KOTLIN_REPOSITORY_KEY, RuleScope.MAIN).ifPresent(scopedRuleSets::add);
+        createScopedRuleSet(hasFiles(Type.TEST, PmdConstants.LANGUAGE_KOTLIN_KEY), PmdConstants.MAIN_KOTLIN_REPOSITORY_KEY, RuleScope.TEST).ifPresent(scopedRuleSets::add);
+        return scopedRuleSets;
     }
 
     /**
      * @return A classloader for PMD that contains no additional dependencies.
-     * For Kotlin projects, we don't need the project's classpath.
+     * For Kotlin projects, we don't need the project's classpath. It is shared with the other analyses.
      */
     @Override
     protected URLClassLoader createClassloader() {
-        // Create an empty URLClassLoader
-        return new URLClassLoader(new URL[0]);
+        return classLoaders.forClasspath(List.of());
     }
 }
\ No newline at end of file
@@ -0,0 +1,74 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd;
+
+import org.sonar.api.measures.Metric;
+import org.sonar.api.measures.Metrics;
+
+import java.util.List;
+
+/**
+ * Measures of the cost of the PMD analysis, saved on the project by {@link PmdAnalysisCostSensor} so that their
+ * evolution shows up in the project history.
+ */
+public class PmdMetrics implements Metrics {
+
+    private static final String DOMAIN = "PMD";
+
+    public static final Metric<Long> ANALYSIS_TIME = new Metric.Builder("pmd_analysis_time", "PMD Analysis Time", Metric.ValueType.MILLISEC)
+            .setDescription("Time spent by the PMD sensor")
+            .setDirection(Metric.DIRECTION_WORST)
+            .setQualitative(false)
+            .setDomain(DOMAIN)
+            .create();
+
+    public static final Metric<Integer> FILES_ANALYZED = new Metric.Builder("pmd_files_analyzed", "PMD Files Analyzed", Metric.ValueType.INT)
+            .setDescription("Files analyzed by PMD")
+            .setDirection(Metric.DIRECTION_NONE)
+            .setQualitative(false)
+            .setDomain(DOMAIN)
+            .create();
+
+    public static final Metric<Integer> FILES_FROM_CACHE = new Metric.Builder("pmd_files_from_cache", "PMD Files From Cache", Metric.ValueType.INT)
+            .setDescription("Files the PMD violations of which were taken from an analysis cache")
+            .setDirection(Metric.DIRECTION_NONE)
+            .setQualitative(false)
+            .setDomain(DOMAIN)
+            .create();
+
+    public static final Metric<Integer> VIOLATIONS_FOUND = new Metric.Builder("pmd_violations_found", "PMD Violations Found", Metric.ValueType.INT)
+            .setDescription("Violations found by PMD, including the ones taken from an analysis cache")
+            .setDirection(Metric.DIRECTION_NONE)
+            .setQualitative(false)
+            .setDomain(DOMAIN)
+            .create();
+
+    public static final Metric<Integer> VIOLATIONS_DROPPED = new Metric.Builder("pmd_violations_dropped", "PMD Violations Dropped", Metric.ValueType.INT)
+            .setDescription("Violations found by PMD that were not saved as issues, because the rule is not active or the file is not analyzed")
+            .setDirection(Metric.DIRECTION_NONE)
+            .setQualitative(false)
+            .setDomain(DOMAIN)
+            .create();
+
+    @Override
+    public List<Metric> getMetrics() {
+        return List.of(ANALYSIS_TIME, FILES_ANALYZED, FILES_FROM_CACHE, VIOLATIONS_FOUND, VIOLATIONS_DROPPED);
+    }
+}
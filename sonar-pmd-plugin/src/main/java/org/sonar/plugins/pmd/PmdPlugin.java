@@ -20,6 +20,7 @@
 package org.sonar.plugins.pmd;
 
 import org.sonar.api.Plugin;
+import org.sonar.api.PropertyType;
 import org.sonar.api.config.PropertyDefinition;
 import org.sonar.plugins.pmd.rule.PmdKotlinRulesDefinition;
 import org.sonar.plugins.pmd.rule.PmdRulesDefinition;
@@ -37,14 +38,77 @@ public class PmdPlugin implements Plugin {
                         .name("Generate XML Report")
                         .hidden()
                         .build(),
+                PropertyDefinition.builder(PmdConfiguration.PROPERTY_COMPRESS_XML)
+                        .defaultValue("false")
+                        .name("Compress XML Report")
+                        .description("Compress the reports with gzip, e.g. written to pmd-result.xml.gz instead of pmd-result.xml.")
+                        .hidden()
+                        .build(),
+                PropertyDefinition.builder(PmdConfiguration.PROPERTY_REPORT_FORMATS)
+                        .name("Report Formats")
+                        .description("Additional formats to write the PMD results in while analyzing: 'sarif' for SARIF 2.1.0 (pmd-result.sarif.json), 'jsonl' for one JSON violation per line (pmd-result.jsonl).")
+                        .multiValues(true)
+                        .hidden()
+                        .build(),
+                PropertyDefinition.builder(PmdConfiguration.PROPERTY_GENERATE_RULESET_XML)
+                        .defaultValue("false")
+                        .name("Generate XML Rule Sets")
+                        .description("Write the PMD rule sets created from the quality profile to the working directory, for debugging.")
+                        .hidden()
+                        .build(),
+                PropertyDefinition.builder(PmdConfiguration.PROPERTY_THREADS)
+                        .name("Analysis Threads")
+                        .description("Number of threads PMD analyzes files with, or 'auto' to derive it from the available processors and the maximum heap size. Defaults to the number of available processors.")
+                        .hidden()
+                        .build(),
+                PropertyDefinition.builder(PmdConfiguration.PROPERTY_PROFILE_RULES)
+                        .defaultValue("false")
+                        .name("Profile Rules")
+                        .description("Record time, invocations and violations per rule and write them to pmd-rule-profile.json in the working directory.")
+                        .hidden()
+                        .build(),
+                PropertyDefinition.builder(PmdConfiguration.PROPERTY_JFR_EVENTS)
+                        .defaultValue("false")
+                        .name("Flight Recorder Events")
+                        .description("Emit Java Flight Recorder events for the phases of the PMD analysis, to correlate them with the other events of a recording.")
+                        .hidden()
+                        .build(),
+                PropertyDefinition.builder(PmdConfiguration.PROPERTY_FILE_TIMEOUT)
+                        .defaultValue("0")
+                        .type(PropertyType.INTEGER)
+                        .name("File Timeout")
+                        .description("Time in seconds the PMD rules may spend on a single file, 0 for no limit. Files that exceed it are abandoned: none of their issues is reported, an analysis warning names the file and the rule that was running.")
+                        .hidden()
+                        .build(),
+                PropertyDefinition.builder(PmdConfiguration.PROPERTY_UNIFIED_ANALYSIS)
+                        .defaultValue("false")
+                        .name("Unified Analysis")
+                        .description("Analyze Java and Kotlin, main and test files in a single PMD run instead of one run per language and scope.")
+                        .hidden()
+                        .build(),
+                PropertyDefinition.builder(PmdConfiguration.PROPERTY_ANALYSIS_CACHE)
+                        .defaultValue("false")
+                        .name("Incremental Analysis")
+                        .description("Cache PMD results per file and only analyze files that changed since the previous analysis.")
+                        .hidden()
+                        .build(),
+                PropertyDefinition.builder(PmdConfiguration.PROPERTY_ANALYSIS_CACHE_PATH)
+                        .name("Incremental Analysis Cache Directory")
+                        .description("Directory to store the PMD analysis cache in. Defaults to the working directory of the scanner.")
+                        .hidden()
+                        .build(),
                 PmdSensor.class,
+                PmdAnalysisCost.class,
+                PmdAnalysisCostSensor.class,
                 PmdConfiguration.class,
                 PmdJavaExecutor.class,
                 PmdKotlinExecutor.class,
                 PmdRulesDefinition.class,
                 PmdKotlinRulesDefinition.class,
                 PmdViolationRecorder.class,
-                DefaultClasspathProvider.class
+                DefaultClasspathProvider.class,
+                PmdClassLoaders.class,
+                PmdMetrics.class
         );
     }
 }
@@ -0,0 +1,148 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd;
+
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.renderers.Renderer;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import net.sourceforge.pmd.reporting.GlobalAnalysisListener;
+import net.sourceforge.pmd.reporting.ListenerInitializer;
+import net.sourceforge.pmd.reporting.Report;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A PMD report, written to a file while PMD analyzes the files.
+ * <p>
+ * The violations of a file are rendered as soon as that file is analyzed, so the report is never held in memory
+ * as a whole, provided the renderer writes incrementally. The file is optionally compressed with gzip.
+ */
+class PmdReportFile implements GlobalAnalysisListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PmdReportFile.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final Writer writer;
+    private final Renderer renderer;
+    private final GlobalAnalysisListener rendererListener;
+    private boolean closed;
+
+    private PmdReportFile(Path file, Writer writer, Renderer renderer, GlobalAnalysisListener rendererListener) {
+        this.file = file;
+        this.writer = writer;
+        this.renderer = renderer;
+        this.rendererListener = rendererListener;
+    }
+
+    /**
+     * Creates the report file, replacing a previous one, and writes the header of the report.
+     */
+    static PmdReportFile open(Path file, boolean compress, Renderer renderer) throws IOException {
+        final OutputStream out = Files.newOutputStream(file);
+        final Writer writer;
+        try {
+            final OutputStream content = compress ? new GZIPOutputStream(out, BUFFER_SIZE) : out;
+            writer = new BufferedWriter(new OutputStreamWriter(content, StandardCharsets.UTF_8), BUFFER_SIZE);
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        }
+        try {
+            renderer.setWriter(writer);
+            return new PmdReportFile(file, writer, renderer, renderer.newListener());
+        } catch (IOException | RuntimeException e) {
+            writer.close();
+            throw e;
+        }
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    @Override
+    public ListenerInitializer initializer() {
+        return rendererListener.initializer();
+    }
+
+    @Override
+    public FileAnalysisListener startFileAnalysis(TextFile textFile) {
+        return rendererListener.startFileAnalysis(textFile);
+    }
+
+    @Override
+    public void onConfigError(Report.ConfigurationError error) {
+        rendererListener.onConfigError(error);
+    }
+
+    /**
+     * Adds the violations and errors of an analysis that already completed.
+     */
+    void render(Report report) throws IOException {
+        renderer.renderFileReport(report);
+    }
+
+    /**
+     * Writes the end of the report and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            rendererListener.close();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Closes the report; the report of an analysis that did not complete is deleted.
+     */
+    void close(boolean completed) {
+        try {
+            close();
+            if (completed) {
+                LOG.info("PMD output report: {}", file);
+            } else {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Fail to save the PMD report", e);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd;
+
+import net.sourceforge.pmd.renderers.Renderer;
+import net.sourceforge.pmd.renderers.XMLRenderer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * The formats the PMD results can be written to the working directory in.
+ */
+enum PmdReportFormat {
+    XML("xml", "pmd-result.xml", () -> new XMLRenderer(StandardCharsets.UTF_8.name())),
+    SARIF(PmdSarifRenderer.NAME, "pmd-result.sarif.json", PmdSarifRenderer::new),
+    JSON_LINES(PmdJsonLinesRenderer.NAME, "pmd-result.jsonl", PmdJsonLinesRenderer::new);
+
+    private final String key;
+    private final String fileName;
+    private final Supplier<Renderer> rendererFactory;
+
+    PmdReportFormat(String key, String fileName, Supplier<Renderer> rendererFactory) {
+        this.key = key;
+        this.fileName = fileName;
+        this.rendererFactory = rendererFactory;
+    }
+
+    /**
+     * @return The format with the given key, as used in <code>sonar.pmd.reportFormats</code>.
+     */
+    static Optional<PmdReportFormat> fromKey(String key) {
+        final String normalizedKey = key.trim().toLowerCase(Locale.ROOT);
+        for (PmdReportFormat format : values()) {
+            if (format.key.equals(normalizedKey)) {
+                return Optional.of(format);
+            }
+        }
+        return Optional.empty();
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    String getFileName() {
+        return fileName;
+    }
+
+    Renderer createRenderer() {
+        return rendererFactory.get();
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.RuleReference;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import net.sourceforge.pmd.reporting.GlobalAnalysisListener;
+import net.sourceforge.pmd.reporting.RuleContext;
+import net.sourceforge.pmd.reporting.RuleViolation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.rule.RuleScope;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Execution time profile of the PMD rules: cumulative time, invocations and violations per rule, language and scope.
+ * <p>
+ * The rules are instrumented with {@link #instrument(String, RuleScope, RuleSet)}, the violations are counted by
+ * {@link #violationCounter()}. The result is written as JSON with {@link #writeTo(Path)}.
+ */
+class PmdRuleProfile {
+
+    static final String PROFILE_JSON = "pmd-rule-profile.json";
+
+    private static final Logger LOG = LoggerFactory.getLogger(PmdRuleProfile.class);
+    private static final int SUMMARY_SIZE = 10;
+
+    private final Map<String, RuleStats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * @return A copy of the rule set whose rules record their execution time in this profile.
+     */
+    RuleSet instrument(String repositoryKey, RuleScope scope, RuleSet ruleSet) {
+        final List<Rule> rules = new ArrayList<>(ruleSet.size());
+        for (Rule rule : ruleSet.getRules()) {
+            final String language = rule.getLanguage() != null ? rule.getLanguage().getId() : "";
+            final RuleStats ruleStats = stats.computeIfAbsent(repositoryKey + ':' + scope + ':' + rule.getName(),
+                    key -> new RuleStats(rule.getName(), repositoryKey, language, scope));
+            rules.add(new ProfiledRule(rule, ruleStats));
+        }
+        return RuleSet.create(ruleSet.getName(), ruleSet.getDescription(), ruleSet.getFileName(),
+                ruleSet.getFileExclusions(), ruleSet.getFileInclusions(), rules);
+    }
+
+    /**
+     * @return A listener that counts the violations of the instrumented rules.
+     */
+    GlobalAnalysisListener violationCounter() {
+        return new GlobalAnalysisListener() {
+            @Override
+            public FileAnalysisListener startFileAnalysis(TextFile file) {
+                return PmdRuleProfile::countViolation;
+            }
+
+            @Override
+            public void close() {
+                // nothing to release
+            }
+        };
+    }
+
+    private static void countViolation(RuleViolation violation) {
+        Rule rule = violation.getRule();
+        while (rule instanceof RuleReference) {
+            if (rule instanceof ProfiledRule) {
+                ((ProfiledRule) rule).stats.violations.increment();
+                return;
+            }
+            rule = ((RuleReference) rule).getRule();
+        }
+    }
+
+    /**
+     * @return The recorded rules, the most expensive first.
+     */
+    List<RuleStats> rules() {
+        final List<RuleStats> rules = new ArrayList<>(stats.values());
+        rules.sort(Comparator.comparingLong(RuleStats::getNanos).reversed().thenComparing(RuleStats::getRule));
+        return rules;
+    }
+
+    void logSummary() {
+        final List<RuleStats> rules = rules();
+        LOG.info("PMD rule profile, {} most expensive of {} rules:", Math.min(SUMMARY_SIZE, rules.size()), rules.size());
+        for (RuleStats rule : rules.subList(0, Math.min(SUMMARY_SIZE, rules.size()))) {
+            LOG.info("  {} ({} {}): time={}ms invocations={} violations={}", rule.getRule(), rule.getRepositoryKey(), rule.getScope(),
+                    TimeUnit.NANOSECONDS.toMillis(rule.getNanos()), rule.getInvocations(), rule.getViolations());
+        }
+    }
+
+    /**
+     * Writes the profile as JSON into the given directory.
+     * @return The written file, null when it could not be written
+     */
+    Path writeTo(Path directory) {
+        final Path file = directory.resolve(PROFILE_JSON);
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("{\"rules\":[");
+            String separator = "\n";
+            for (RuleStats rule : rules()) {
+                writer.write(separator);
+                writer.write(rule.toJson());
+                separator = ",\n";
+            }
+            writer.write("\n]}\n");
+            LOG.info("PMD rule profile: {}", file);
+            return file;
+        } catch (IOException e) {
+            LOG.warn("Failed to write the PMD rule profile {}", file, e);
+            return null;
+        }
+    }
+
+    static final class RuleStats {
+        private final String rule;
+        private final String repositoryKey;
+        private final String language;
+        private final RuleScope scope;
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder invocations = new LongAdder();
+        private final LongAdder violations = new LongAdder();
+
+        private RuleStats(String rule, String repositoryKey, String language, RuleScope scope) {
+            this.rule = rule;
+            this.repositoryKey = repositoryKey;
+            this.language = language;
+            this.scope = scope;
+        }
+
+        String getRule() {
+            return rule;
+        }
+
+        String getRepositoryKey() {
+            return repositoryKey;
+        }
+
+        RuleScope getScope() {
+            return scope;
+        }
+
+        long getNanos() {
+            return nanos.sum();
+        }
+
+        long getInvocations() {
+            return invocations.sum();
+        }
+
+        long getViolations() {
+            return violations.sum();
+        }
+
+        private String toJson() {
+            return "{\"rule\":" + PmdJson.quote(rule)
+                    + ",\"repository\":" + PmdJson.quote(repositoryKey)
+                    + ",\"language\":" + PmdJson.quote(language)
+                    + ",\"scope\":" + PmdJson.quote(scope.name())
+                    + ",\"timeMs\":" + TimeUnit.NANOSECONDS.toMillis(getNanos())
+                    + ",\"timeNanos\":" + getNanos()
+                    + ",\"invocations\":" + getInvocations()
+                    + ",\"violations\":" + getViolations() + "}";
+        }
+    }
+
+    /**
+     * Measures the time the referenced rule spends on each node. The statistics are shared by the copies PMD
+     * makes of the rule for its worker threads.
+     */
+    private static final class ProfiledRule extends RuleReference {
+        private final RuleStats stats;
+
+        private ProfiledRule(Rule rule, RuleStats stats) {
+            super(rule, null);
+            this.stats = stats;
+        }
+
+        @Override
+        public void apply(Node target, RuleContext ctx) {
+            final long start = System.nanoTime();
+            try {
+                super.apply(target, ctx);
+            } finally {
+                stats.nanos.add(System.nanoTime() - start);
+                stats.invocations.increment();
+            }
+        }
+
+        @Override
+        public Rule deepCopy() {
+            return new ProfiledRule(getRule().deepCopy(), stats);
+        }
+    }
+}
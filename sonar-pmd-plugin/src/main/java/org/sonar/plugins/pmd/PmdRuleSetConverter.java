@@ -0,0 +1,166 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd;
+
+import net.sourceforge.pmd.lang.Language;
+import net.sourceforge.pmd.lang.LanguageRegistry;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.RulePriority;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.lang.rule.RuleSetLoader;
+import net.sourceforge.pmd.lang.rule.xpath.XPathRule;
+import net.sourceforge.pmd.lang.rule.xpath.XPathVersion;
+import net.sourceforge.pmd.properties.PropertyDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.plugins.pmd.xml.PmdProperty;
+import org.sonar.plugins.pmd.xml.PmdRule;
+import org.sonar.plugins.pmd.xml.PmdRuleSet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Turns a {@link PmdRuleSet} directly into a PMD {@link RuleSet}, without serializing it to XML and parsing it again.
+ * <p>
+ * Rule references are resolved against the referenced rule sets (e.g. <code>category/java/bestpractices.xml</code>),
+ * which are loaded once and reused for all rule sets created by this converter. XPath rules are instantiated directly.
+ * When a rule can not be resolved this way, no rule set is returned: the caller falls back to the XML representation,
+ * for which PMD reports in detail what is wrong.
+ */
+class PmdRuleSetConverter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PmdRuleSetConverter.class);
+
+    private final RuleSetLoader loader;
+    private final Map<String, Optional<RuleSet>> referencedRuleSets = new HashMap<>();
+
+    PmdRuleSetConverter(RuleSetLoader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * @return The PMD rule set, or empty when one of the rules can not be resolved directly.
+     */
+    Optional<RuleSet> convert(PmdRuleSet pmdRuleSet) {
+        final List<Rule> rules = new ArrayList<>(pmdRuleSet.getPmdRules().size());
+        for (PmdRule pmdRule : pmdRuleSet.getPmdRules()) {
+            final Optional<Rule> rule = toRule(pmdRule);
+            if (rule.isEmpty()) {
+                LOG.debug("PMD rule {} can not be resolved directly", pmdRule.getRef() != null ? pmdRule.getRef() : pmdRule.getName());
+                return Optional.empty();
+            }
+            rules.add(rule.get());
+        }
+        return Optional.of(RuleSet.create(pmdRuleSet.getName(), pmdRuleSet.getDescription(), pmdRuleSet.getName(),
+                Collections.emptyList(), Collections.emptyList(), rules));
+    }
+
+    private Optional<Rule> toRule(PmdRule pmdRule) {
+        final Optional<Rule> rule;
+        if (pmdRule.getRef() != null) {
+            rule = resolveReference(pmdRule.getRef());
+        } else if (PmdConstants.XPATH_CLASS.equals(pmdRule.getClazz())) {
+            rule = createXPathRule(pmdRule);
+        } else {
+            rule = Optional.empty();
+        }
+        return rule.filter(r -> configure(r, pmdRule));
+    }
+
+    private Optional<Rule> resolveReference(String ref) {
+        final int separator = ref.lastIndexOf('/');
+        if (separator < 0 || !ref.substring(0, separator).endsWith(".xml")) {
+            return Optional.empty();
+        }
+        final String ruleSetPath = ref.substring(0, separator);
+        final String ruleName = ref.substring(separator + 1);
+        return referencedRuleSets.computeIfAbsent(ruleSetPath, this::loadReferencedRuleSet)
+                .map(ruleSet -> ruleSet.getRuleByName(ruleName))
+                .map(Rule::deepCopy);
+    }
+
+    private Optional<RuleSet> loadReferencedRuleSet(String ruleSetPath) {
+        try {
+            return Optional.of(loader.loadFromResource(ruleSetPath));
+        } catch (RuntimeException e) {
+            LOG.debug("Failed to load PMD rule set {}", ruleSetPath, e);
+            return Optional.empty();
+        }
+    }
+
+    private static Optional<Rule> createXPathRule(PmdRule pmdRule) {
+        final PmdProperty xpath = pmdRule.getProperty(PmdConstants.XPATH_EXPRESSION_PARAM);
+        final Language language = LanguageRegistry.PMD.getLanguageById(pmdRule.getLanguage());
+        if (xpath == null || language == null) {
+            return Optional.empty();
+        }
+        final Rule rule = new XPathRule(XPathVersion.DEFAULT, xpath.isCdataValue() ? xpath.getCdataValue() : xpath.getValue());
+        rule.setLanguage(language);
+        return Optional.of(rule);
+    }
+
+    /**
+     * Applies what the rule element of the XML representation would override.
+     *
+     * @return false when a property is unknown to the rule or its value is invalid.
+     */
+    private static boolean configure(Rule rule, PmdRule pmdRule) {
+        if (pmdRule.getName() != null) {
+            rule.setName(pmdRule.getName());
+        }
+        if (pmdRule.getMessage() != null) {
+            rule.setMessage(pmdRule.getMessage());
+        }
+        if (pmdRule.getPriority() != null) {
+            rule.setPriority(RulePriority.valueOf(pmdRule.getPriority()));
+        }
+        for (PmdProperty property : pmdRule.getProperties()) {
+            final String value = property.isCdataValue() ? property.getCdataValue() : property.getValue();
+            // empty values are left out of the XML representation as well
+            if (value != null && !value.isEmpty() && !setProperty(rule, property.getName(), value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean setProperty(Rule rule, String name, String value) {
+        final PropertyDescriptor<?> descriptor = rule.getPropertyDescriptor(name);
+        if (descriptor == null) {
+            return false;
+        }
+        try {
+            setValue(rule, descriptor, value);
+            return true;
+        } catch (IllegalArgumentException e) {
+            LOG.debug("Invalid value '{}' for property {} of PMD rule {}", value, name, rule.getName(), e);
+            return false;
+        }
+    }
+
+    private static <T> void setValue(Rule rule, PropertyDescriptor<T> descriptor, String value) {
+        rule.setProperty(descriptor, descriptor.serializer().fromString(value));
+    }
+}
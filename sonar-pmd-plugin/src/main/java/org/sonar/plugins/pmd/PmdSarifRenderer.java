@@ -0,0 +1,150 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd;
+
+import net.sourceforge.pmd.PMDVersion;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.RulePriority;
+import net.sourceforge.pmd.renderers.AbstractIncrementingRenderer;
+import net.sourceforge.pmd.reporting.Report;
+import net.sourceforge.pmd.reporting.RuleViolation;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Renders the PMD results as SARIF 2.1.0 log.
+ * <p>
+ * Unlike the SARIF renderer of PMD, which builds the whole log in memory, the results of a file are written as
+ * soon as that file is analyzed. To make that possible, the results come first in the run, and the rules they
+ * refer to are written after them, at the end.
+ * <p>
+ * The id of a rule is its name prefixed with the id of its language, e.g. "java/UnusedPrivateField", as Java
+ * and Kotlin rules of the same name are analyzed in the same run.
+ */
+class PmdSarifRenderer extends AbstractIncrementingRenderer {
+
+    static final String NAME = "sarif";
+    private static final String SCHEMA = "https://json.schemastore.org/sarif-2.1.0.json";
+
+    private final Map<String, Rule> rules = new LinkedHashMap<>();
+    private final Map<String, Integer> ruleIndexes = new LinkedHashMap<>();
+    private String separator = "";
+
+    PmdSarifRenderer() {
+        super(NAME, "SARIF 2.1.0, written incrementally.");
+    }
+
+    @Override
+    public String defaultFileExtension() {
+        return "sarif.json";
+    }
+
+    @Override
+    public void start() throws IOException {
+        writer.write("{\"$schema\":" + PmdJson.quote(SCHEMA) + ",\"version\":\"2.1.0\",\"runs\":[{\"results\":[");
+    }
+
+    @Override
+    public void renderFileViolations(Iterator<RuleViolation> violations) throws IOException {
+        while (violations.hasNext()) {
+            final RuleViolation violation = violations.next();
+            final Rule rule = violation.getRule();
+            writer.write(separator);
+            writer.write("\n{\"ruleId\":" + PmdJson.quote(ruleId(rule))
+                    + ",\"ruleIndex\":" + ruleIndex(rule)
+                    + ",\"level\":" + PmdJson.quote(level(rule.getPriority()))
+                    + ",\"message\":{\"text\":" + PmdJson.quote(violation.getDescription()) + "}"
+                    + ",\"locations\":[{\"physicalLocation\":{"
+                    + "\"artifactLocation\":{\"uri\":" + PmdJson.quote(violation.getFileId().getUriString()) + "}"
+                    + ",\"region\":{\"startLine\":" + violation.getBeginLine()
+                    + ",\"startColumn\":" + violation.getBeginColumn()
+                    + ",\"endLine\":" + violation.getEndLine()
+                    + ",\"endColumn\":" + violation.getEndColumn()
+                    + "}}}]}");
+            separator = ",";
+        }
+    }
+
+    @Override
+    public void end() throws IOException {
+        writer.write("\n],\"tool\":{\"driver\":{\"name\":\"PMD\",\"version\":" + PmdJson.quote(PMDVersion.VERSION)
+                + ",\"informationUri\":\"https://docs.pmd-code.org/latest/\",\"rules\":[");
+        String ruleSeparator = "";
+        for (Rule rule : rules.values()) {
+            writer.write(ruleSeparator);
+            writer.write("\n{\"id\":" + PmdJson.quote(ruleId(rule))
+                    + ",\"name\":" + PmdJson.quote(rule.getName())
+                    + ",\"shortDescription\":{\"text\":" + PmdJson.quote(rule.getMessage()) + "}"
+                    + ",\"fullDescription\":{\"text\":" + PmdJson.quote(rule.getDescription()) + "}"
+                    + ",\"helpUri\":" + PmdJson.quote(rule.getExternalInfoUrl())
+                    + ",\"properties\":{\"ruleset\":" + PmdJson.quote(rule.getRuleSetName())
+                    + ",\"priority\":" + rule.getPriority().getPriority() + "}}");
+            ruleSeparator = ",";
+        }
+        writer.write("\n]}},\"invocations\":[{\"executionSuccessful\":" + (errors.isEmpty() && configErrors.isEmpty())
+                + ",\"toolExecutionNotifications\":[");
+        String notificationSeparator = "";
+        for (Report.ProcessingError error : errors) {
+            writer.write(notificationSeparator);
+            writer.write("\n{\"level\":\"error\",\"message\":{\"text\":" + PmdJson.quote(error.getMsg()) + "}"
+                    + ",\"locations\":[{\"physicalLocation\":{\"artifactLocation\":{\"uri\":"
+                    + PmdJson.quote(error.getFileId().getUriString()) + "}}}]}");
+            notificationSeparator = ",";
+        }
+        for (Report.ConfigurationError error : configErrors) {
+            writer.write(notificationSeparator);
+            writer.write("\n{\"level\":\"error\",\"message\":{\"text\":" + PmdJson.quote(error.issue()) + "}"
+                    + ",\"associatedRule\":{\"id\":" + PmdJson.quote(ruleId(error.rule())) + "}}");
+            notificationSeparator = ",";
+        }
+        writer.write("\n]}]}]}\n");
+    }
+
+    private int ruleIndex(Rule rule) {
+        return ruleIndexes.computeIfAbsent(ruleId(rule), id -> {
+            rules.put(id, rule);
+            return rules.size() - 1;
+        });
+    }
+
+    private static String ruleId(Rule rule) {
+        return rule.getLanguage().getId() + "/" + rule.getName();
+    }
+
+    /**
+     * The SARIF level of a violation, derived from the priority of its rule the way PMD does.
+     */
+    private static String level(RulePriority priority) {
+        switch (priority) {
+            case HIGH:
+            case MEDIUM_HIGH:
+                return "error";
+            case MEDIUM:
+            case MEDIUM_LOW:
+                return "warning";
+            case LOW:
+            default:
+                return "note";
+        }
+    }
+}
@@ -19,29 +19,50 @@
  */
 package org.sonar.plugins.pmd;
 
-import net.sourceforge.pmd.reporting.RuleViolation;
+import net.sourceforge.pmd.reporting.GlobalAnalysisListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.sonar.api.batch.fs.FilePredicates;
 import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.fs.InputFile.Type;
 import org.sonar.api.batch.rule.ActiveRules;
 import org.sonar.api.batch.sensor.Sensor;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.batch.sensor.SensorDescriptor;
+import org.sonar.api.notifications.AnalysisWarnings;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
 
 public class PmdSensor implements Sensor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PmdSensor.class);
+
     private final ActiveRules profile;
     private final PmdJavaExecutor javaExecutor;
     private final PmdKotlinExecutor kotlinExecutor;
     private final PmdViolationRecorder pmdViolationRecorder;
     private final FileSystem fs;
+    private final AnalysisWarnings analysisWarnings;
+    private final PmdAnalysisCost analysisCost;
+    private final PmdConfiguration pmdConfiguration;
 
-    public PmdSensor(ActiveRules profile, PmdJavaExecutor javaExecutor, PmdKotlinExecutor kotlinExecutor, 
-                    PmdViolationRecorder pmdViolationRecorder, FileSystem fs) {
+    public PmdSensor(ActiveRules profile, PmdJavaExecutor javaExecutor, PmdKotlinExecutor kotlinExecutor,
+                    PmdViolationRecorder pmdViolationRecorder, FileSystem fs, AnalysisWarnings analysisWarnings,
+                    PmdAnalysisCost analysisCost, PmdConfiguration pmdConfiguration) {
         this.profile = profile;
         this.javaExecutor = javaExecutor;
         this.kotlinExecutor = kotlinExecutor;
         this.pmdViolationRecorder = pmdViolationRecorder;
         this.fs = fs;
+        this.analysisWarnings = analysisWarnings;
+        this.analysisCost = analysisCost;
+        this.pmdConfiguration = pmdConfiguration;
     }
 
     private boolean shouldExecuteOnProject() {
@@ -53,10 +74,15 @@ public class PmdSensor implements Sensor {
     }
 
     private boolean hasFilesToCheck(Type type, String repositoryKey, String languageKey) {
+        return hasFilesToCheck(type, repositoryKey, languageKey, file -> true);
+    }
+
+    private boolean hasFilesToCheck(Type type, String repositoryKey, String languageKey, Predicate<InputFile> fileFilter) {
         FilePredicates predicates = fs.predicates();
         final boolean hasMatchingFiles = fs.hasFiles(predicates.and(
                 predicates.hasLanguage(languageKey),
-                predicates.hasType(type)));
+                predicates.hasType(type),
+                fileFilter::test));
         return hasMatchingFiles && !profile.findByRepository(repositoryKey).isEmpty();
     }
 
@@ -74,33 +100,189 @@ public class PmdSensor implements Sensor {
     @Override
     public void execute(SensorContext context) {
         if (shouldExecuteOnProject()) {
-            // Check if there are Kotlin files to analyze
-            boolean hasKotlinFiles = hasFilesToCheck(Type.MAIN, PmdConstants.MAIN_KOTLIN_REPOSITORY_KEY, PmdConstants.LANGUAGE_KOTLIN_KEY) ||
-                                    hasFilesToCheck(Type.TEST, PmdConstants.MAIN_KOTLIN_REPOSITORY_KEY, PmdConstants.LANGUAGE_KOTLIN_KEY);
-
-            // Check if there are Java files to analyze
-            boolean hasJavaFiles = hasFilesToCheck(Type.MAIN, PmdConstants.MAIN_JAVA_REPOSITORY_KEY, PmdConstants.LANGUAGE_JAVA_KEY) ||
-                                  hasFilesToCheck(Type.TEST, PmdConstants.MAIN_JAVA_REPOSITORY_KEY, PmdConstants.LANGUAGE_JAVA_KEY);
-
-            // Process Kotlin files if present
-            if (hasKotlinFiles) {
-                net.sourceforge.pmd.reporting.Report kotlinReport = kotlinExecutor.execute();
-                if (kotlinReport != null) {
-                    for (RuleViolation violation : kotlinReport.getViolations()) {
-                        pmdViolationRecorder.saveViolation(violation, context);
+            PmdEvents.setEnabled(javaExecutor.isJfrEventsEnabled());
+            final PmdEvents.SensorEvent sensorEvent = PmdEvents.isEnabled() ? new PmdEvents.SensorEvent() : null;
+            if (sensorEvent != null) {
+                sensorEvent.begin();
+            }
+            final long startTimeMs = System.currentTimeMillis();
+            try {
+                final List<InputFile> files = collectFiles();
+                pmdViolationRecorder.indexFiles(files);
+                try {
+                    final AnalysisCost cost = new AnalysisCost();
+                    analyze(context, files, cost);
+                    if (context.isCancelled()) {
+                        LOGGER.info("PMD analysis cancelled");
+                        return;
+                    }
+                    cost.addTo(analysisCost, System.currentTimeMillis() - startTimeMs);
+                    if (sensorEvent != null) {
+                        sensorEvent.files = files.size();
+                        sensorEvent.cachedFiles = cost.filesFromCache;
                     }
+                } finally {
+                    pmdViolationRecorder.clearIndex();
                 }
+            } finally {
+                if (sensorEvent != null) {
+                    sensorEvent.commit();
+                }
+                PmdEvents.setEnabled(false);
             }
+        }
+    }
 
-            // Process Java files if present
-            if (hasJavaFiles) {
-                net.sourceforge.pmd.reporting.Report javaReport = javaExecutor.execute();
-                if (javaReport != null) {
-                    for (RuleViolation violation : javaReport.getViolations()) {
-                        pmdViolationRecorder.saveViolation(violation, context);
+    private List<InputFile> collectFiles() {
+        final PmdEvents.FileInventoryEvent event = PmdEvents.isEnabled() ? new PmdEvents.FileInventoryEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        final List<InputFile> files = new ArrayList<>();
+        fs.inputFiles(fs.predicates().hasLanguages(PmdConstants.LANGUAGE_JAVA_KEY, PmdConstants.LANGUAGE_KOTLIN_KEY)).forEach(files::add);
+        if (event != null) {
+            event.files = files.size();
+            event.commit();
+        }
+        return files;
+    }
+
+    private void analyze(SensorContext context, List<InputFile> files, AnalysisCost cost) {
+        final PmdSensorCache cache = new PmdSensorCache(context, profile, javaExecutor.analysisClasspath());
+        final Set<InputFile> unchangedFiles = replayUnchangedFiles(cache, context, files, cost);
+        final Predicate<InputFile> changedFiles = file -> !unchangedFiles.contains(file);
+
+        // Check if there are Kotlin files to analyze
+        boolean hasKotlinFiles = hasFilesToCheck(Type.MAIN, PmdConstants.MAIN_KOTLIN_REPOSITORY_KEY, PmdConstants.LANGUAGE_KOTLIN_KEY, changedFiles) ||
+                                hasFilesToCheck(Type.TEST, PmdConstants.MAIN_KOTLIN_REPOSITORY_KEY, PmdConstants.LANGUAGE_KOTLIN_KEY, changedFiles);
+
+        // Check if there are Java files to analyze
+        boolean hasJavaFiles = hasFilesToCheck(Type.MAIN, PmdConstants.MAIN_JAVA_REPOSITORY_KEY, PmdConstants.LANGUAGE_JAVA_KEY, changedFiles) ||
+                              hasFilesToCheck(Type.TEST, PmdConstants.MAIN_JAVA_REPOSITORY_KEY, PmdConstants.LANGUAGE_JAVA_KEY, changedFiles);
+
+        final PmdRuleProfile ruleProfile = javaExecutor.isRuleProfilingEnabled() ? new PmdRuleProfile() : null;
+        final PmdCancellation cancellation = new PmdCancellation(context::isCancelled);
+        javaExecutor.setRuleProfile(ruleProfile);
+        kotlinExecutor.setRuleProfile(ruleProfile);
+        javaExecutor.setCancellation(cancellation);
+        kotlinExecutor.setCancellation(cancellation);
+        try {
+            execute(context, cache, changedFiles, hasJavaFiles, hasKotlinFiles, cost);
+        } finally {
+            javaExecutor.setRuleProfile(null);
+            kotlinExecutor.setRuleProfile(null);
+            javaExecutor.setCancellation(null);
+            kotlinExecutor.setCancellation(null);
+        }
+        if (ruleProfile != null) {
+            ruleProfile.logSummary();
+            ruleProfile.writeTo(fs.workDir().toPath());
+        }
+    }
+
+    private void execute(SensorContext context, PmdSensorCache cache, Predicate<InputFile> changedFiles, boolean hasJavaFiles, boolean hasKotlinFiles,
+                         AnalysisCost cost) {
+        // Violations are saved as soon as PMD finished a file
+        try (PmdIssueListener issueListener = new PmdIssueListener(pmdViolationRecorder, context, cache)) {
+            executeWithReports(context, issueListener, changedFiles, hasJavaFiles, hasKotlinFiles);
+            issueListener.getTimeouts().forEach(analysisWarnings::addUnique);
+            final int cacheHits = javaExecutor.cacheHits() + kotlinExecutor.cacheHits();
+            cost.filesAnalyzed += issueListener.getFiles() - cacheHits;
+            cost.filesFromCache += cacheHits;
+            cost.violationsFound += issueListener.getViolations();
+            cost.violationsDropped += issueListener.getDroppedViolations();
+        }
+    }
+
+    /**
+     * Runs the analyses with the requested reports added to the listener. The reports are opened once for both
+     * the Kotlin and the Java analysis, so that they hold the results of all files; they are removed again when
+     * the analysis does not complete.
+     */
+    private void executeWithReports(SensorContext context, PmdIssueListener issueListener, Predicate<InputFile> changedFiles,
+                                    boolean hasJavaFiles, boolean hasKotlinFiles) {
+        final List<PmdReportFile> reports = pmdConfiguration.openReports();
+        if (reports.isEmpty()) {
+            execute(context, issueListener, changedFiles, hasJavaFiles, hasKotlinFiles);
+            return;
+        }
+        boolean completed = false;
+        try {
+            final List<GlobalAnalysisListener> listeners = new ArrayList<>(reports.size() + 1);
+            listeners.add(issueListener);
+            listeners.addAll(reports);
+            completed = execute(context, GlobalAnalysisListener.tee(listeners), changedFiles, hasJavaFiles, hasKotlinFiles)
+                    && !context.isCancelled();
+        } finally {
+            for (PmdReportFile report : reports) {
+                report.close(completed);
+            }
+        }
+    }
+
+    /**
+     * @return false when an analysis did not complete
+     */
+    private boolean execute(SensorContext context, GlobalAnalysisListener listener, Predicate<InputFile> changedFiles,
+                            boolean hasJavaFiles, boolean hasKotlinFiles) {
+        if (javaExecutor.isUnifiedAnalysisEnabled()) {
+            // Process all files in a single PMD run
+            if (hasJavaFiles || hasKotlinFiles) {
+                return javaExecutor.execute(listener, changedFiles, List.of(kotlinExecutor));
+            }
+            return true;
+        }
+
+        boolean completed = true;
+        // Process Kotlin files if present
+        if (hasKotlinFiles) {
+            completed = kotlinExecutor.execute(listener, changedFiles);
+        }
+
+        // Process Java files if present and the analysis was not cancelled meanwhile
+        if (hasJavaFiles && !context.isCancelled()) {
+            completed &= javaExecutor.execute(listener, changedFiles);
+        }
+        return completed;
+    }
+
+    /**
+     * Saves the cached violations of all files that did not change since the previous analysis.
+     * @return The files whose violations were taken from the cache, these need no analysis
+     */
+    private Set<InputFile> replayUnchangedFiles(PmdSensorCache cache, SensorContext context, List<InputFile> files, AnalysisCost cost) {
+        if (!cache.isEnabled() || !context.canSkipUnchangedFiles()) {
+            return Collections.emptySet();
+        }
+        final Set<InputFile> unchangedFiles = new HashSet<>();
+        for (InputFile file : files) {
+            final Optional<List<CachedViolation>> cachedViolations = cache.reusableViolations(file);
+            if (cachedViolations.isPresent()) {
+                for (CachedViolation violation : cachedViolations.get()) {
+                    cost.violationsFound++;
+                    if (!pmdViolationRecorder.saveCachedViolation(violation, file, context)) {
+                        cost.violationsDropped++;
                     }
                 }
+                unchangedFiles.add(file);
             }
         }
+        LOGGER.info("PMD results of {} unchanged files taken from the analysis cache", unchangedFiles.size());
+        cost.filesFromCache += unchangedFiles.size();
+        return unchangedFiles;
+    }
+
+    /**
+     * The cost of the analysis of this module, added to the {@link PmdAnalysisCost} of the project.
+     */
+    private static final class AnalysisCost {
+        private int filesAnalyzed;
+        private int filesFromCache;
+        private int violationsFound;
+        private int violationsDropped;
+
+        private void addTo(PmdAnalysisCost analysisCost, long analysisTimeMs) {
+            analysisCost.add(analysisTimeMs, filesAnalyzed, filesFromCache, violationsFound, violationsDropped);
+        }
     }
 }
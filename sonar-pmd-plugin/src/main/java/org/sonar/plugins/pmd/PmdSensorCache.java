@@ -0,0 +1,139 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd;
+
+import net.sourceforge.pmd.PMDVersion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.rule.ActiveRule;
+import org.sonar.api.batch.rule.ActiveRules;
+import org.sonar.api.batch.sensor.SensorContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Stores the violations found per file in the analysis cache provided by SonarQube
+ * ({@link SensorContext#nextCache()}), and replays them from {@link SensorContext#previousCache()}
+ * for files that did not change, when the scanner allows to skip unchanged files (e.g. in pull request analysis).
+ * <p>
+ * The cache keys contain a fingerprint of the active PMD rules, the PMD version, the Java source version and
+ * the analysis classpath, so that entries written with another quality profile, PMD version or dependencies are
+ * never reused. Like {@link PmdAnalysisCache}, the classpath is fingerprinted by the size and modification time
+ * of its elements, as type resolution depends on them.
+ */
+class PmdSensorCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PmdSensorCache.class);
+    private static final String KEY_PREFIX = "pmd:violations:";
+
+    private final SensorContext context;
+    private final String keyPrefix;
+
+    /**
+     * @param classpath The elements of the classpath the types of the analyzed files are resolved against
+     */
+    PmdSensorCache(SensorContext context, ActiveRules activeRules, Collection<File> classpath) {
+        this.context = context;
+        this.keyPrefix = context.isCacheEnabled() ? KEY_PREFIX + fingerprint(context, activeRules, classpath) + ":" : KEY_PREFIX;
+    }
+
+    private static String fingerprint(SensorContext context, ActiveRules activeRules, Collection<File> classpath) {
+        final Set<String> rules = new TreeSet<>();
+        for (String repositoryKey : List.of(PmdConstants.MAIN_JAVA_REPOSITORY_KEY, PmdConstants.MAIN_KOTLIN_REPOSITORY_KEY)) {
+            for (ActiveRule rule : activeRules.findByRepository(repositoryKey)) {
+                rules.add(rule.ruleKey() + "|" + rule.templateRuleKey() + "|" + rule.severity() + "|" + new TreeMap<>(rule.params()));
+            }
+        }
+        return PmdAnalysisCache.sha256("pmd=" + PMDVersion.VERSION
+                + ";java=" + context.config().get(PmdConstants.JAVA_SOURCE_VERSION).orElse(PmdConstants.JAVA_SOURCE_VERSION_DEFAULT_VALUE)
+                + ";rules=" + rules
+                + ";classpath=" + classpathFingerprint(classpath));
+    }
+
+    private static String classpathFingerprint(Collection<File> classpath) {
+        final StringBuilder fingerprint = new StringBuilder();
+        for (File element : classpath) {
+            fingerprint.append(element.getAbsolutePath()).append('@').append(PmdAnalysisCache.fingerprintOf(element)).append(',');
+        }
+        return fingerprint.toString();
+    }
+
+    boolean isEnabled() {
+        return context.isCacheEnabled();
+    }
+
+    /**
+     * @return The violations found by the previous analysis when the file is unchanged and its result is in
+     * the previous cache, otherwise empty. A reused entry is carried over to the next cache.
+     */
+    Optional<List<CachedViolation>> reusableViolations(InputFile file) {
+        if (!isEnabled() || !context.canSkipUnchangedFiles() || file.status() != InputFile.Status.SAME) {
+            return Optional.empty();
+        }
+        final String key = key(file);
+        if (!context.previousCache().contains(key)) {
+            return Optional.empty();
+        }
+        try (InputStream in = context.previousCache().read(key)) {
+            final List<CachedViolation> violations = CachedViolation.readAll(new DataInputStream(in));
+            context.nextCache().copyFromPrevious(key);
+            return Optional.of(violations);
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("Failed to read cached PMD violations of {}, analyzing it again", file, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Stores the violations found in an analyzed file in the next cache.
+     */
+    void store(InputFile file, List<CachedViolation> violations) {
+        if (!isEnabled()) {
+            return;
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            CachedViolation.writeAll(out, violations);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to serialize PMD violations of " + file, e);
+        }
+        try {
+            context.nextCache().write(key(file), bytes.toByteArray());
+        } catch (IllegalArgumentException e) {
+            LOG.debug("PMD violations of {} already cached", file, e);
+        }
+    }
+
+    private String key(InputFile file) {
+        return keyPrefix + file.key();
+    }
+}
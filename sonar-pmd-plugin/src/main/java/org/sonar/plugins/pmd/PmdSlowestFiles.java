@@ -0,0 +1,118 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd;
+
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import net.sourceforge.pmd.reporting.GlobalAnalysisListener;
+import net.sourceforge.pmd.reporting.RuleViolation;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps track of the files PMD took the longest to analyze, parsing included.
+ */
+class PmdSlowestFiles implements GlobalAnalysisListener {
+
+    private static final Comparator<FileTime> BY_TIME = Comparator.comparingLong(FileTime::getNanos);
+
+    private final int size;
+    private final LongSupplier nanoTime;
+    private final PriorityQueue<FileTime> slowest;
+
+    PmdSlowestFiles(int size) {
+        this(size, System::nanoTime);
+    }
+
+    /**
+     * @param nanoTime The ticker the analysis time of the files is measured with
+     */
+    PmdSlowestFiles(int size, LongSupplier nanoTime) {
+        this.size = size;
+        this.nanoTime = nanoTime;
+        this.slowest = new PriorityQueue<>(size + 1, BY_TIME);
+    }
+
+    @Override
+    public FileAnalysisListener startFileAnalysis(TextFile file) {
+        final long startNanos = nanoTime.getAsLong();
+        final String path = file.getFileId().getAbsolutePath();
+        return new FileAnalysisListener() {
+            @Override
+            public void onRuleViolation(RuleViolation violation) {
+                // only the time is of interest
+            }
+
+            @Override
+            public void close() {
+                add(new FileTime(path, nanoTime.getAsLong() - startNanos));
+            }
+        };
+    }
+
+    private synchronized void add(FileTime fileTime) {
+        slowest.add(fileTime);
+        if (slowest.size() > size) {
+            slowest.poll();
+        }
+    }
+
+    /**
+     * @return The slowest files, the slowest first.
+     */
+    synchronized List<FileTime> slowest() {
+        final List<FileTime> result = new ArrayList<>(slowest);
+        result.sort(BY_TIME.reversed());
+        return result;
+    }
+
+    @Override
+    public void close() {
+        // nothing to release
+    }
+
+    static final class FileTime {
+        private final String path;
+        private final long nanos;
+
+        private FileTime(String path, long nanos) {
+            this.path = path;
+            this.nanos = nanos;
+        }
+
+        String getPath() {
+            return path;
+        }
+
+        long getNanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            return path + " (" + TimeUnit.NANOSECONDS.toMillis(nanos) + "ms)";
+        }
+    }
+}
@@ -21,9 +21,13 @@ package org.sonar.plugins.pmd;
 
 import net.sourceforge.pmd.*;
 import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.document.TextFile;
 import net.sourceforge.pmd.lang.java.JavaLanguageModule;
 import net.sourceforge.pmd.lang.rule.RuleSet;
 import net.sourceforge.pmd.renderers.EmptyRenderer;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import net.sourceforge.pmd.reporting.GlobalAnalysisListener;
+import net.sourceforge.pmd.reporting.ListenerInitializer;
 import net.sourceforge.pmd.reporting.Report;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -63,13 +67,22 @@ public class PmdTemplate {
     }
 
     private final PMDConfiguration configuration;
+    private PmdCancellation cancellation;
 
     PmdTemplate(PMDConfiguration configuration) {
         this.configuration = configuration;
     }
 
     public static PmdTemplate create(String javaVersion, ClassLoader classloader, Charset charset) {
+        return create(javaVersion, classloader, charset, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threads The number of threads PMD analyzes files with, 0 to analyze them in the calling thread.
+     */
+    public static PmdTemplate create(String javaVersion, ClassLoader classloader, Charset charset, int threads) {
         PMDConfiguration configuration = new PMDConfiguration();
+        configuration.setThreads(threads);
         configuration.setDefaultLanguageVersion(languageVersion(javaVersion));
         configuration.setClassLoader(classloader);
         configuration.setSourceEncoding(charset);
@@ -98,13 +111,104 @@ public class PmdTemplate {
         return configuration;
     }
 
-    public Report process(Iterable<InputFile> files, RuleSet ruleset) {
+    /**
+     * @param cancellation Stops the analyses of this template early when cancelled, null to always analyze all files.
+     * @return This template
+     */
+    PmdTemplate cancelledBy(PmdCancellation cancellation) {
+        this.cancellation = cancellation;
+        return this;
+    }
+
+    /**
+     * @return The language version PMD uses to analyze the given file, null when PMD has no language for it.
+     */
+    LanguageVersion languageVersionOf(InputFile file) {
+        return configuration.getLanguageVersionDiscoverer().getDefaultLanguageVersionForFile(file.filename());
+    }
+
+    /**
+     * @param ruleset The rules to apply.
+     * @return A fingerprint of the rules and of this configuration, used to validate the incremental analysis cache.
+     */
+    String fingerprint(RuleSet ruleset) {
+        LanguageVersion javaVersion = configuration.getLanguageVersionDiscoverer()
+                .getDefaultLanguageVersion(JavaLanguageModule.getInstance());
+        return PmdAnalysisCache.fingerprint(ruleset, javaVersion, configuration.getClassLoader());
+    }
+
+    /**
+     * Analyzes the files and passes the results of each file to the listener as soon as that file is done,
+     * so that no report of the whole analysis is kept in memory. The listener is not closed, it can be shared
+     * by several analyses.
+     *
+     * @param files The files to analyze.
+     * @param ruleset The rules to apply.
+     * @param listener Receives the violations and processing errors, possibly from several threads.
+     */
+    public void process(Iterable<InputFile> files, RuleSet ruleset, GlobalAnalysisListener listener) {
+        process(files, Collections.singletonList(ruleset), listener);
+    }
+
+    /**
+     * Analyzes the files with several rule sets in a single run, so that PMD's worker threads and language
+     * processors are set up only once. Every rule set is applied to every file of its language, unless its
+     * rules restrict themselves to a subset of the files.
+     *
+     * @param files The files to analyze.
+     * @param rulesets The rules to apply.
+     * @param listener Receives the violations and processing errors, possibly from several threads.
+     */
+    public void process(Iterable<InputFile> files, Collection<RuleSet> rulesets, GlobalAnalysisListener listener) {
         try (PmdAnalysis pmd = PmdAnalysis.create(configuration)) {
-            pmd.addRuleSet(ruleset);
+            pmd.addRuleSets(rulesets);
+            pmd.addListener(new SharedListener(listener));
             for (InputFile file: files) {
-                pmd.files().addFile(Paths.get(file.uri()));
+                if (cancellation == null) {
+                    pmd.files().addFile(Paths.get(file.uri()));
+                } else {
+                    final LanguageVersion languageVersion = languageVersionOf(file);
+                    if (languageVersion == null) {
+                        // skipped like PMD skips the files it adds by path, e.g. Kotlin scripts
+                        LOG.debug("Skipping file PMD has no language for: {}", file);
+                        continue;
+                    }
+                    final TextFile textFile = TextFile.forPath(Paths.get(file.uri()), configuration.getSourceEncoding(), languageVersion);
+                    pmd.files().addFile(cancellation.cancellable(textFile));
+                }
             }
-            return pmd.performAnalysisAndCollectReport();
+            pmd.performAnalysis();
+        }
+    }
+
+    /**
+     * Shields a listener from being closed at the end of a single {@link PmdAnalysis}.
+     */
+    private static final class SharedListener implements GlobalAnalysisListener {
+        private final GlobalAnalysisListener delegate;
+
+        private SharedListener(GlobalAnalysisListener delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public ListenerInitializer initializer() {
+            return delegate.initializer();
+        }
+
+        @Override
+        public FileAnalysisListener startFileAnalysis(TextFile file) {
+            return delegate.startFileAnalysis(file);
+        }
+
+        @Override
+        public void onConfigError(Report.ConfigurationError error) {
+            delegate.onConfigError(error);
+        }
+
+        @Override
+        public void close() {
+            // closed by the owner of the delegate
         }
     }
 }
@@ -19,6 +19,7 @@
  */
 package org.sonar.plugins.pmd;
 
+import net.sourceforge.pmd.lang.document.FileId;
 import net.sourceforge.pmd.reporting.RuleViolation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,6 +27,7 @@ import org.sonar.api.batch.ScannerSide;
 import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.fs.TextRange;
+import org.sonar.api.batch.rule.ActiveRule;
 import org.sonar.api.batch.rule.ActiveRules;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.batch.sensor.issue.NewIssue;
@@ -33,7 +35,10 @@ import org.sonar.api.batch.sensor.issue.NewIssueLocation;
 import org.sonar.api.rule.RuleKey;
 import org.sonar.plugins.pmd.rule.PmdKotlinRulesDefinition;
 
-import java.util.Optional;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 @ScannerSide
 public class PmdViolationRecorder {
@@ -42,75 +47,153 @@ public class PmdViolationRecorder {
 
     private final FileSystem fs;
     private final ActiveRules activeRules;
+    private volatile Map<String, InputFile> filesByPath;
+    private volatile Map<String, RuleKey> activeRuleKeys;
 
     public PmdViolationRecorder(FileSystem fs, ActiveRules activeRules) {
         this.fs = fs;
         this.activeRules = activeRules;
     }
 
-    public void saveViolation(RuleViolation pmdViolation, SensorContext context) {
+    /**
+     * Indexes the files of the analysis by the path PMD reports them with, so that each violation is resolved
+     * to its input file by a single lookup instead of a file system query. Call {@link #clearIndex()} when
+     * the analysis is done.
+     *
+     * @param files All files handed to PMD.
+     */
+    void indexFiles(Collection<InputFile> files) {
+        final Map<String, InputFile> index = new HashMap<>(files.size() * 4 / 3 + 1);
+        for (InputFile file : files) {
+            index.put(PmdAnalysisCache.pathOf(file), file);
+        }
+        filesByPath = index;
+    }
+
+    /**
+     * Releases the index built by {@link #indexFiles(Collection)}.
+     */
+    void clearIndex() {
+        filesByPath = null;
+    }
+
+    /**
+     * Saves the violation as an issue, when its file is part of the analysis and its rule is active.
+     * @return true when the violation was saved
+     */
+    public boolean saveViolation(RuleViolation pmdViolation, SensorContext context) {
+        final PmdEvents.ViolationRecordingEvent event = PmdEvents.isEnabled() ? new PmdEvents.ViolationRecordingEvent() : null;
+        if (event != null) {
+            event.begin();
+            event.rule = pmdViolation.getRule().getName();
+            event.path = pmdViolation.getFileId().getAbsolutePath();
+        }
+        final boolean saved = saveViolationIfActive(pmdViolation, context);
+        if (event != null) {
+            event.saved = saved;
+            event.commit();
+        }
+        return saved;
+    }
+
+    private boolean saveViolationIfActive(RuleViolation pmdViolation, SensorContext context) {
 
         LOGGER.debug("About to save RuleViolation: {}", pmdViolation);
 
-        final InputFile inputFile = findResourceFor(pmdViolation);
+        final InputFile inputFile = findResourceFor(pmdViolation.getFileId());
 
         LOGGER.trace("Found violation input file: {}", inputFile);
 
         if (inputFile == null) {
             // Save violations only for existing resources
-            return;
+            return false;
         }
 
-        final RuleKey ruleKey = findActiveRuleKeyFor(pmdViolation);
+        final RuleKey ruleKey = findActiveRuleKeyFor(pmdViolation.getRule().getName());
 
         LOGGER.trace("Found violation rule key: {}", ruleKey);
 
         if (ruleKey == null) {
             // Save violations only for enabled rules
-            return;
+            return false;
+        }
+
+        saveIssue(context, ruleKey, inputFile, pmdViolation.getDescription(), TextRangeCalculator.calculate(pmdViolation, inputFile));
+
+        LOGGER.debug("RuleViolation saved: {}", pmdViolation);
+        return true;
+    }
+
+    /**
+     * Saves a violation that was found in a previous analysis of the given (unchanged) file.
+     * @return true when the violation was saved, false when its rule is not active
+     */
+    boolean saveCachedViolation(CachedViolation cachedViolation, InputFile inputFile, SensorContext context) {
+        final RuleKey ruleKey = findActiveRuleKeyFor(cachedViolation.getRuleName());
+
+        if (ruleKey == null) {
+            // Save violations only for enabled rules
+            return false;
         }
 
+        saveIssue(context, ruleKey, inputFile, cachedViolation.getDescription(),
+                TextRangeCalculator.calculate(cachedViolation.getBeginLine(), cachedViolation.getEndLine(), inputFile));
+        return true;
+    }
+
+    private void saveIssue(SensorContext context, RuleKey ruleKey, InputFile inputFile, String message, TextRange issueTextRange) {
         final NewIssue issue = context.newIssue()
                 .forRule(ruleKey);
 
-        final TextRange issueTextRange = TextRangeCalculator.calculate(pmdViolation, inputFile);
-
         LOGGER.trace("New issue: {} Text range: {}", issue, issueTextRange);
 
         final NewIssueLocation issueLocation = issue.newLocation()
                 .on(inputFile)
-                .message(pmdViolation.getDescription())
+                .message(message)
                 .at(issueTextRange);
 
         LOGGER.trace("Issue location to save: {}", issueLocation);
 
         issue.at(issueLocation)
                 .save();
-
-        LOGGER.debug("RuleViolation saved: {}", pmdViolation);
     }
 
-    private InputFile findResourceFor(RuleViolation violation) {
+    /**
+     * @return The input file PMD reports as the given file, or null when it is not part of the analysis.
+     * Taken from the index of the current analysis when there is one.
+     */
+    InputFile findResourceFor(FileId fileId) {
+        final Map<String, InputFile> index = filesByPath;
+        if (index != null) {
+            return index.get(fileId.getAbsolutePath());
+        }
         return fs.inputFile(
                 fs.predicates().hasAbsolutePath(
-                        violation.getFileId().getAbsolutePath()
+                        fileId.getAbsolutePath()
                 )
         );
     }
 
-    private RuleKey findActiveRuleKeyFor(RuleViolation violation) {
-        final String internalRuleKey = violation.getRule().getName();
-
-        return findRuleKey(internalRuleKey, PmdConstants.MAIN_JAVA_REPOSITORY_KEY)
-                .orElse(findRuleKey(internalRuleKey, PmdConstants.MAIN_KOTLIN_REPOSITORY_KEY)
-                    .orElse(null));
+    private RuleKey findActiveRuleKeyFor(String internalRuleKey) {
+        Map<String, RuleKey> ruleKeys = activeRuleKeys;
+        if (ruleKeys == null) {
+            ruleKeys = createActiveRuleKeys(activeRules);
+            activeRuleKeys = ruleKeys;
+        }
+        return ruleKeys.get(internalRuleKey);
     }
 
-    private Optional<RuleKey> findRuleKey(String internalRuleKey, String repositoryKey) {
-        RuleKey ruleKey = RuleKey.of(repositoryKey, internalRuleKey);
-        if (activeRules.find(ruleKey) != null) {
-            return Optional.of(ruleKey);
+    /**
+     * Maps the PMD rule names to the keys of the active rules. A rule active in both the Java and the Kotlin
+     * repository resolves to the Java rule.
+     */
+    private static Map<String, RuleKey> createActiveRuleKeys(ActiveRules activeRules) {
+        final Map<String, RuleKey> ruleKeys = new HashMap<>();
+        for (String repositoryKey : List.of(PmdConstants.MAIN_JAVA_REPOSITORY_KEY, PmdConstants.MAIN_KOTLIN_REPOSITORY_KEY)) {
+            for (ActiveRule activeRule : activeRules.findByRepository(repositoryKey)) {
+                ruleKeys.putIfAbsent(activeRule.ruleKey().rule(), activeRule.ruleKey());
+            }
         }
-        return Optional.empty();
+        return Map.copyOf(ruleKeys);
     }
 }
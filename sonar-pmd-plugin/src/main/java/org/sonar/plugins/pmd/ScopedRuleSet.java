@@ -0,0 +1,129 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.document.TextDocument;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.RuleReference;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.reporting.RuleContext;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.rule.RuleScope;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The rule set of one repository and scope (e.g. the Java rules for test code), together with the files it applies to.
+ * <p>
+ * Several of them can be analyzed in a single PMD run: {@link #restrictedToFiles()} gives a rule set whose rules
+ * only look at the files of this scope, so that each file is checked by the rules of its own scope only.
+ */
+final class ScopedRuleSet {
+
+    private final String repositoryKey;
+    private final RuleScope scope;
+    private final RuleSet ruleSet;
+    private final List<InputFile> files;
+
+    ScopedRuleSet(String repositoryKey, RuleScope scope, RuleSet ruleSet, List<InputFile> files) {
+        this.repositoryKey = repositoryKey;
+        this.scope = scope;
+        this.ruleSet = ruleSet;
+        this.files = files;
+    }
+
+    String getRepositoryKey() {
+        return repositoryKey;
+    }
+
+    RuleScope getScope() {
+        return scope;
+    }
+
+    RuleSet getRuleSet() {
+        return ruleSet;
+    }
+
+    List<InputFile> getFiles() {
+        return files;
+    }
+
+    ScopedRuleSet withFiles(List<InputFile> otherFiles) {
+        return new ScopedRuleSet(repositoryKey, scope, ruleSet, otherFiles);
+    }
+
+    ScopedRuleSet withRuleSet(RuleSet otherRuleSet) {
+        return new ScopedRuleSet(repositoryKey, scope, otherRuleSet, files);
+    }
+
+    /**
+     * @return A copy of the rule set whose rules skip all files but the files of this scope.
+     */
+    RuleSet restrictedToFiles() {
+        final Set<String> paths = new HashSet<>(files.size() * 4 / 3 + 1);
+        for (InputFile file : files) {
+            paths.add(PmdAnalysisCache.pathOf(file));
+        }
+        final Set<String> scopePaths = Collections.unmodifiableSet(paths);
+        final List<Rule> rules = new ArrayList<>(ruleSet.size());
+        for (Rule rule : ruleSet.getRules()) {
+            rules.add(new FileRestrictedRule(rule, scopePaths));
+        }
+        return RuleSet.create(ruleSet.getName() + "-" + scope, ruleSet.getDescription(), ruleSet.getFileName(),
+                ruleSet.getFileExclusions(), ruleSet.getFileInclusions(), rules);
+    }
+
+    /**
+     * Applies the referenced rule to the given files only. PMD copies the rules for each of its worker threads,
+     * so the file that was checked last can be remembered without synchronization.
+     */
+    private static final class FileRestrictedRule extends RuleReference {
+        private final Set<String> paths;
+        private TextDocument currentDocument;
+        private boolean applies;
+
+        private FileRestrictedRule(Rule rule, Set<String> paths) {
+            super(rule, null);
+            this.paths = paths;
+        }
+
+        @Override
+        public void apply(Node target, RuleContext ctx) {
+            final TextDocument document = target.getTextDocument();
+            if (document != currentDocument) {
+                currentDocument = document;
+                applies = paths.contains(document.getFileId().getAbsolutePath());
+            }
+            if (applies) {
+                super.apply(target, ctx);
+            }
+        }
+
+        @Override
+        public Rule deepCopy() {
+            return new FileRestrictedRule(getRule().deepCopy(), paths);
+        }
+    }
+}
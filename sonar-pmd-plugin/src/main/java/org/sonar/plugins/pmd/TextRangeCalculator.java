@@ -33,13 +33,17 @@ class TextRangeCalculator {
     }
 
     static TextRange calculate(RuleViolation pmdViolation, InputFile inputFile) {
-        final int startLine = calculateBeginLine(pmdViolation);
-        final int endLine = calculateEndLine(pmdViolation);
+        return calculate(pmdViolation.getBeginLine(), pmdViolation.getEndLine(), inputFile);
+    }
+
+    static TextRange calculate(int beginLine, int endLine, InputFile inputFile) {
+        final int startLine = calculateBeginLine(beginLine, endLine);
+        final int lastLine = calculateEndLine(beginLine, endLine);
 
         // PMD counts TABs differently, so we can not use RuleViolation#getBeginColumn and RuleViolation#getEndColumn
         // Therefore, we select complete lines.
         final TextPointer startPointer = inputFile.selectLine(startLine).start();
-        final TextPointer endPointer = inputFile.selectLine(endLine).end();
+        final TextPointer endPointer = inputFile.selectLine(lastLine).end();
 
         return inputFile.newRange(startPointer, endPointer);
     }
@@ -47,22 +51,24 @@ class TextRangeCalculator {
     /**
      * Calculates the endLIne of a violation report.
      *
-     * @param pmdViolation The violation for which the endLine should be calculated.
+     * @param beginLine The reported beginLine of the violation.
+     * @param endLine The reported endLine of the violation.
      * @return The endLine is assumed to be the line with the biggest number.
      */
-    private static int calculateEndLine(RuleViolation pmdViolation) {
-        return Math.max(pmdViolation.getBeginLine(), pmdViolation.getEndLine());
+    private static int calculateEndLine(int beginLine, int endLine) {
+        return Math.max(beginLine, endLine);
     }
 
     /**
      * Calculates the beginLine of a violation report.
      *
-     * @param pmdViolation The violation for which the beginLine should be calculated.
+     * @param beginLine The reported beginLine of the violation.
+     * @param endLine The reported endLine of the violation.
      * @return The beginLine is assumed to be the line with the smallest number. However, if the smallest number is
      * out-of-range (non-positive), it takes the other number.
      */
-    private static int calculateBeginLine(RuleViolation pmdViolation) {
-        int minLine = Math.min(pmdViolation.getBeginLine(), pmdViolation.getEndLine());
-        return minLine > 0 ? minLine : calculateEndLine(pmdViolation);
+    private static int calculateBeginLine(int beginLine, int endLine) {
+        int minLine = Math.min(beginLine, endLine);
+        return minLine > 0 ? minLine : calculateEndLine(beginLine, endLine);
     }
 }
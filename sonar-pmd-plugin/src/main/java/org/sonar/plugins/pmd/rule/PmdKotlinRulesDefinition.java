@@ -31,6 +31,9 @@ import java.nio.charset.StandardCharsets;
 
 public final class PmdKotlinRulesDefinition implements RulesDefinition {
 
+    static final String RULES_XML = "/org/sonar/plugins/pmd/rules-kotlin.xml";
+    static final String HTML_DESCRIPTIONS = "/org/sonar/l10n/pmd/rules/pmd-kotlin";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(PmdKotlinRulesDefinition.class);
 
     public PmdKotlinRulesDefinition() {
@@ -64,7 +67,9 @@ public final class PmdKotlinRulesDefinition implements RulesDefinition {
                 .createRepository(PmdConstants.MAIN_KOTLIN_REPOSITORY_KEY, PmdConstants.LANGUAGE_KOTLIN_KEY)
                 .setName(PmdConstants.REPOSITORY_KOTLIN_NAME);
 
-        extractRulesData(repository, "/org/sonar/plugins/pmd/rules-kotlin.xml", "/org/sonar/l10n/pmd/rules/pmd-kotlin");
+        if (!PmdRulesSnapshot.replay(repository, PmdRulesSnapshot.KOTLIN_SNAPSHOT)) {
+            extractRulesData(repository, RULES_XML, HTML_DESCRIPTIONS);
+        }
 
         repository.done();
     }
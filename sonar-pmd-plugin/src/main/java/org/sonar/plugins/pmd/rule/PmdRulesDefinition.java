@@ -31,6 +31,8 @@ import java.nio.charset.StandardCharsets;
 
 public final class PmdRulesDefinition implements RulesDefinition {
 
+    static final String RULES_XML = "/org/sonar/plugins/pmd/rules-java.xml";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(PmdRulesDefinition.class);
 
     public PmdRulesDefinition() {
@@ -58,7 +60,9 @@ public final class PmdRulesDefinition implements RulesDefinition {
                 .createRepository(PmdConstants.MAIN_JAVA_REPOSITORY_KEY, PmdConstants.LANGUAGE_JAVA_KEY)
                 .setName(PmdConstants.REPOSITORY_NAME);
 
-        extractRulesData(repository, "/org/sonar/plugins/pmd/rules-java.xml");
+        if (!PmdRulesSnapshot.replay(repository, PmdRulesSnapshot.JAVA_SNAPSHOT)) {
+            extractRulesData(repository, RULES_XML);
+        }
 
         repository.done();
     }
@@ -0,0 +1,342 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd.rule;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.rule.RuleScope;
+import org.sonar.api.rule.RuleStatus;
+import org.sonar.api.rules.RuleType;
+import org.sonar.api.server.debt.DebtRemediationFunction;
+import org.sonar.api.server.rule.RuleParamType;
+import org.sonar.api.server.rule.RulesDefinition;
+import org.sonar.api.server.rule.RulesDefinition.NewRepository;
+import org.sonar.api.server.rule.RulesDefinition.NewRule;
+import org.sonar.plugins.pmd.PmdConstants;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.function.Consumer;
+
+/**
+ * Snapshot of a rules repository, written by the build and replayed into the {@link NewRepository} on server startup,
+ * instead of loading the rules XML, the SQALE model and the HTML descriptions again.
+ * <p>
+ * The snapshot holds every rule property the loaders set. Its binary format starts with a format version; a missing
+ * or unreadable snapshot makes the rules definition fall back to the XML files.
+ * <p>
+ * The rule descriptions, by far the largest part, are packed behind the rules and referenced by offset and length.
+ * The snapshot is read with a single sequential read, and a description is only decoded when its rule is created.
+ */
+public final class PmdRulesSnapshot {
+
+    static final String JAVA_SNAPSHOT = "/org/sonar/plugins/pmd/rules-java.snapshot";
+    static final String KOTLIN_SNAPSHOT = "/org/sonar/plugins/pmd/rules-kotlin.snapshot";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PmdRulesSnapshot.class);
+    private static final int FORMAT_VERSION = 2;
+    private static final int NULL_LENGTH = -1;
+
+    private PmdRulesSnapshot() {
+    }
+
+    /**
+     * Adds the rules of the snapshot resource to the repository.
+     *
+     * @return false when there is no readable snapshot, nothing is added to the repository then
+     */
+    static boolean replay(NewRepository repository, String snapshotResource) {
+        try (InputStream input = PmdRulesSnapshot.class.getResourceAsStream(snapshotResource)) {
+            if (input == null) {
+                LOGGER.debug("No rules snapshot {}, loading the rules from XML", snapshotResource);
+                return false;
+            }
+            replay(repository, input.readAllBytes());
+            return true;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Failed to read the rules snapshot {}, loading the rules from XML", snapshotResource, e);
+            return false;
+        }
+    }
+
+    static void replay(NewRepository repository, byte[] snapshot) throws IOException {
+        // validate completely before touching the repository, so that the XML fallback starts from scratch
+        read(snapshot, rule -> {
+        });
+        read(snapshot, rule -> rule.addTo(repository));
+    }
+
+    static void write(RulesDefinition.Repository repository, OutputStream output) throws IOException {
+        final ByteArrayOutputStream rules = new ByteArrayOutputStream();
+        final ByteArrayOutputStream descriptions = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(rules);
+        for (RulesDefinition.Rule rule : repository.rules()) {
+            writeString(out, rule.key());
+            writeString(out, rule.name());
+            writeString(out, rule.internalKey());
+            writeString(out, rule.severity());
+            writeString(out, rule.type().name());
+            writeString(out, rule.status().name());
+            writeString(out, rule.scope().name());
+            out.writeBoolean(rule.template());
+            out.writeBoolean(rule.activatedByDefault());
+            out.writeInt(rule.tags().size());
+            for (String tag : rule.tags()) {
+                writeString(out, tag);
+            }
+            writeDescription(out, descriptions, rule.htmlDescription());
+            writeDescription(out, descriptions, rule.markdownDescription());
+            writeString(out, rule.gapDescription());
+            final DebtRemediationFunction function = rule.debtRemediationFunction();
+            writeString(out, function == null ? null : function.type().name());
+            writeString(out, function == null ? null : function.gapMultiplier());
+            writeString(out, function == null ? null : function.baseEffort());
+            out.writeInt(rule.params().size());
+            for (RulesDefinition.Param param : rule.params()) {
+                writeString(out, param.key());
+                writeString(out, param.name());
+                writeString(out, param.description());
+                writeString(out, param.defaultValue());
+                writeString(out, param.type().toString());
+            }
+        }
+        out.flush();
+
+        final DataOutputStream snapshot = new DataOutputStream(new BufferedOutputStream(output));
+        snapshot.writeInt(FORMAT_VERSION);
+        snapshot.writeInt(repository.rules().size());
+        snapshot.writeInt(rules.size());
+        rules.writeTo(snapshot);
+        descriptions.writeTo(snapshot);
+        snapshot.flush();
+    }
+
+    private static void read(byte[] snapshot, Consumer<RuleData> consumer) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot));
+        final int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported rules snapshot version " + version);
+        }
+        final int size = in.readInt();
+        final int rulesLength = in.readInt();
+        final int descriptionsStart = Integer.BYTES * 3 + rulesLength;
+        if (rulesLength < 0 || descriptionsStart > snapshot.length) {
+            throw new IOException("Invalid length of the rules " + rulesLength);
+        }
+        final Descriptions descriptions = new Descriptions(snapshot, descriptionsStart);
+        for (int i = 0; i < size; i++) {
+            consumer.accept(RuleData.read(in, descriptions));
+        }
+        if (in.available() != snapshot.length - descriptionsStart) {
+            throw new IOException("Unexpected length of " + size + " rules");
+        }
+    }
+
+    private static void writeDescription(DataOutputStream out, ByteArrayOutputStream descriptions, String description) throws IOException {
+        if (description == null) {
+            out.writeInt(NULL_LENGTH);
+            return;
+        }
+        final byte[] bytes = description.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(descriptions.size());
+        out.writeInt(bytes.length);
+        descriptions.write(bytes);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL_LENGTH);
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Invalid string length " + length);
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the snapshots of the Java and Kotlin rules repositories, as loaded from XML, into the given directory.
+     * Run by the build of the plugin.
+     *
+     * @param args The output directory, the root of the classpath resources
+     */
+    public static void main(String[] args) throws IOException {
+        final Path outputDir = Paths.get(args[0]);
+        final RulesDefinition.Context context = new RulesDefinition.Context();
+
+        final NewRepository javaRepository = context.createRepository(PmdConstants.MAIN_JAVA_REPOSITORY_KEY, PmdConstants.LANGUAGE_JAVA_KEY)
+                .setName(PmdConstants.REPOSITORY_NAME);
+        PmdRulesDefinition.extractRulesData(javaRepository, PmdRulesDefinition.RULES_XML);
+        javaRepository.done();
+
+        final NewRepository kotlinRepository = context.createRepository(PmdConstants.MAIN_KOTLIN_REPOSITORY_KEY, PmdConstants.LANGUAGE_KOTLIN_KEY)
+                .setName(PmdConstants.REPOSITORY_KOTLIN_NAME);
+        PmdKotlinRulesDefinition.extractRulesData(kotlinRepository, PmdKotlinRulesDefinition.RULES_XML, PmdKotlinRulesDefinition.HTML_DESCRIPTIONS);
+        kotlinRepository.done();
+
+        writeTo(context.repository(PmdConstants.MAIN_JAVA_REPOSITORY_KEY), outputDir, JAVA_SNAPSHOT);
+        writeTo(context.repository(PmdConstants.MAIN_KOTLIN_REPOSITORY_KEY), outputDir, KOTLIN_SNAPSHOT);
+    }
+
+    private static void writeTo(RulesDefinition.Repository repository, Path outputDir, String snapshotResource) throws IOException {
+        final Path file = outputDir.resolve(snapshotResource.substring(1));
+        Files.createDirectories(file.getParent());
+        try (OutputStream out = Files.newOutputStream(file)) {
+            write(repository, out);
+        }
+    }
+
+    private static final class RuleData {
+        private String key;
+        private String name;
+        private String internalKey;
+        private String severity;
+        private RuleType type;
+        private RuleStatus status;
+        private RuleScope scope;
+        private boolean template;
+        private boolean activatedByDefault;
+        private String[] tags;
+        private Descriptions descriptions;
+        private long htmlDescription;
+        private long markdownDescription;
+        private String gapDescription;
+        private String functionType;
+        private String gapMultiplier;
+        private String baseEffort;
+        private String[][] params;
+
+        private static RuleData read(DataInputStream in, Descriptions descriptions) throws IOException {
+            final RuleData rule = new RuleData();
+            rule.descriptions = descriptions;
+            rule.key = readString(in);
+            rule.name = readString(in);
+            rule.internalKey = readString(in);
+            rule.severity = readString(in);
+            rule.type = RuleType.valueOf(readString(in));
+            rule.status = RuleStatus.valueOf(readString(in));
+            rule.scope = RuleScope.valueOf(readString(in));
+            rule.template = in.readBoolean();
+            rule.activatedByDefault = in.readBoolean();
+            rule.tags = new String[in.readInt()];
+            for (int i = 0; i < rule.tags.length; i++) {
+                rule.tags[i] = readString(in);
+            }
+            rule.htmlDescription = descriptions.readReference(in);
+            rule.markdownDescription = descriptions.readReference(in);
+            rule.gapDescription = readString(in);
+            rule.functionType = readString(in);
+            rule.gapMultiplier = readString(in);
+            rule.baseEffort = readString(in);
+            rule.params = new String[in.readInt()][];
+            for (int i = 0; i < rule.params.length; i++) {
+                rule.params[i] = new String[]{readString(in), readString(in), readString(in), readString(in), readString(in)};
+            }
+            return rule;
+        }
+
+        /**
+         * Creates the rule the same way {@link RulesDefinitionXmlLoader} does.
+         */
+        @SuppressWarnings("removal")
+        private void addTo(NewRepository repository) {
+            final NewRule rule = repository.createRule(key)
+                    .setSeverity(severity)
+                    .setName(name)
+                    .setInternalKey(internalKey)
+                    .setTags(tags)
+                    .setTemplate(template)
+                    .setStatus(status)
+                    .setGapDescription(gapDescription)
+                    .setType(type)
+                    .setScope(scope)
+                    .setActivatedByDefault(activatedByDefault);
+            if (htmlDescription != Descriptions.NONE) {
+                rule.setHtmlDescription(descriptions.decode(htmlDescription));
+            } else if (markdownDescription != Descriptions.NONE) {
+                rule.setMarkdownDescription(descriptions.decode(markdownDescription));
+            }
+            if (functionType != null) {
+                rule.setDebtRemediationFunction(rule.debtRemediationFunctions()
+                        .create(DebtRemediationFunction.Type.valueOf(functionType), gapMultiplier, baseEffort));
+            }
+            for (String[] param : params) {
+                rule.createParam(param[0])
+                        .setName(param[1])
+                        .setDescription(param[2])
+                        .setDefaultValue(param[3])
+                        .setType(RuleParamType.parse(param[4]));
+            }
+        }
+    }
+
+    /**
+     * The packed descriptions of the snapshot. A description is referenced by its offset and length, combined in a long.
+     */
+    private static final class Descriptions {
+        private static final long NONE = -1L;
+
+        private final byte[] snapshot;
+        private final int start;
+
+        private Descriptions(byte[] snapshot, int start) {
+            this.snapshot = snapshot;
+            this.start = start;
+        }
+
+        private long readReference(DataInputStream in) throws IOException {
+            final int offset = in.readInt();
+            if (offset == NULL_LENGTH) {
+                return NONE;
+            }
+            final int length = in.readInt();
+            if (offset < 0 || length < 0 || (long) start + offset + length > snapshot.length) {
+                throw new IOException("Invalid description at " + offset + " with length " + length);
+            }
+            return ((long) offset << 32) | length;
+        }
+
+        private String decode(long reference) {
+            return new String(snapshot, start + (int) (reference >>> 32), (int) reference, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -21,6 +21,9 @@ package org.sonar.plugins.pmd;
 
 import net.sourceforge.pmd.lang.rule.RuleSetLoadException;
 import net.sourceforge.pmd.reporting.Report;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentMatchers;
@@ -28,14 +31,22 @@ import org.sonar.api.batch.fs.InputFile.Type;
 import org.sonar.api.batch.fs.internal.DefaultFileSystem;
 import org.sonar.api.batch.fs.internal.DefaultInputFile;
 import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+import org.sonar.api.batch.rule.ActiveRule;
 import org.sonar.api.batch.rule.ActiveRules;
 import org.sonar.api.config.internal.MapSettings;
+import org.sonar.api.rule.RuleKey;
 import org.sonar.api.rule.RuleScope;
+import org.sonar.api.rule.Severity;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.catchThrowable;
@@ -57,6 +68,8 @@ public abstract class AbstractPmdExecutorTest {
     
     protected AbstractPmdExecutor pmdExecutor;
 
+    private static final Path RESOURCES = Paths.get("src/test/resources/org/sonar/plugins/pmd/");
+
     protected static DefaultInputFile fileJava(String path, Type type) {
         return TestInputFileBuilder.create("sonar-pmd-test", path)
                 .setType(type)
@@ -92,6 +105,8 @@ public abstract class AbstractPmdExecutorTest {
 
     @Test
     void unknown_pmd_ruleset() {
+        stubActiveRules(activeRules, PmdConstants.MAIN_JAVA_REPOSITORY_KEY, RESOURCES.resolve("invalid-ref.xml"));
+        stubActiveRules(activeRules, PmdConstants.MAIN_KOTLIN_REPOSITORY_KEY, RESOURCES.resolve("invalid-ref.xml"));
         when(pmdConfiguration.dumpXmlRuleSet(anyString(), anyString(), ArgumentMatchers.any(RuleScope.class))).thenReturn(new File("unknown"));
 
         DefaultInputFile srcFile = getAppropriateInputFileForTest();
@@ -110,7 +125,39 @@ public abstract class AbstractPmdExecutorTest {
     protected abstract DefaultInputFile getAppropriateInputFileForTest();
 
     protected void setupPmdRuleSet(String repositoryKey, String profileFileName) {
-        final Path sourcePath = Paths.get("src/test/resources/org/sonar/plugins/pmd/").resolve(profileFileName);
+        final Path sourcePath = RESOURCES.resolve(profileFileName);
+        stubActiveRules(activeRules, repositoryKey, sourcePath);
         when(pmdConfiguration.dumpXmlRuleSet(eq(repositoryKey), anyString(), ArgumentMatchers.any(RuleScope.class))).thenReturn(sourcePath.toFile());
     }
+
+    /**
+     * Activates the referenced rules of the given PMD rule set in the quality profile.
+     */
+    static void stubActiveRules(ActiveRules activeRules, String repositoryKey, Path ruleSetFile) {
+        final Element ruleSet;
+        try {
+            ruleSet = new SAXBuilder().build(ruleSetFile.toFile()).getRootElement();
+        } catch (JDOMException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+        final List<ActiveRule> rules = new ArrayList<>();
+        for (Element pmdRule : ruleSet.getChildren("rule")) {
+            final String ref = pmdRule.getAttributeValue("ref");
+            if (ref == null) {
+                continue;
+            }
+            final Map<String, String> params = new HashMap<>();
+            for (Element properties : pmdRule.getChildren("properties")) {
+                properties.getChildren("property").forEach(property -> params.put(property.getAttributeValue("name"), property.getAttributeValue("value")));
+            }
+            final String priority = pmdRule.getChildText("priority");
+            final ActiveRule rule = mock(ActiveRule.class);
+            when(rule.ruleKey()).thenReturn(RuleKey.of(repositoryKey, ref.substring(ref.lastIndexOf('/') + 1)));
+            when(rule.internalKey()).thenReturn(ref);
+            when(rule.severity()).thenReturn(priority != null ? PmdPriorities.toSonarSeverity(Integer.valueOf(priority.trim())) : Severity.MAJOR);
+            when(rule.params()).thenReturn(params);
+            rules.add(rule);
+        }
+        when(activeRules.findByRepository(repositoryKey)).thenReturn(rules);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,162 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd;
+
+import net.sourceforge.pmd.PMDVersion;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClasspathIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void should_read_packages_from_central_directory() throws Exception {
+        // given
+        File jar = new File(PMDVersion.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        Set<String> expected;
+        try (ZipFile zipFile = new ZipFile(jar)) {
+            expected = zipFile.stream().map(entry -> IndexedClassLoader.packageOf(entry.getName())).collect(Collectors.toSet());
+        }
+
+        // when
+        Set<String> packages = ClasspathIndex.readPackages(jar);
+
+        // then
+        assertThat(packages).isEqualTo(expected).contains("net/sourceforge/pmd");
+    }
+
+    @Test
+    void should_reuse_persisted_index_of_unchanged_jar() throws Exception {
+        // given
+        File jar = jar("com/example/A.class", "org/example/B.class");
+        Path indexFile = tempDir.resolve("index/pmd-classpath-index.bin");
+        ClasspathIndex index = ClasspathIndex.open(indexFile);
+        assertThat(index.packagesOf(jar)).containsOnly("com/example", "org/example");
+        index.persist();
+
+        // when the jar is corrupted without changing its size and modification time
+        long lastModified = jar.lastModified();
+        byte[] garbage = new byte[(int) jar.length()];
+        Arrays.fill(garbage, (byte) 1);
+        Files.write(jar.toPath(), garbage);
+        jar.setLastModified(lastModified);
+
+        // then the packages are still served from the persisted index
+        assertThat(ClasspathIndex.open(indexFile).packagesOf(jar)).containsOnly("com/example", "org/example");
+    }
+
+    @Test
+    void should_index_changed_jar_again() throws Exception {
+        File jar = jar("com/example/A.class");
+        Path indexFile = tempDir.resolve("pmd-classpath-index.bin");
+        ClasspathIndex index = ClasspathIndex.open(indexFile);
+        index.packagesOf(jar);
+        index.persist();
+
+        jar("com/example/A.class", "com/other/B.class");
+
+        assertThat(ClasspathIndex.open(indexFile).packagesOf(jar)).containsOnly("com/example", "com/other");
+    }
+
+    @Test
+    void should_evict_least_recently_used_jars_beyond_maximum() throws Exception {
+        // given
+        AtomicLong now = new AtomicLong(TimeUnit.DAYS.toMillis(100));
+        File old = namedJar("old.jar", "com/old/A.class");
+        File used = namedJar("used.jar", "com/used/A.class");
+        File added = namedJar("added.jar", "com/added/A.class");
+        Path indexFile = tempDir.resolve("pmd-classpath-index.bin");
+        ClasspathIndex index = ClasspathIndex.open(indexFile, 2, now::get);
+        index.packagesOf(old);
+        index.packagesOf(used);
+        index.persist();
+
+        // when a later analysis uses one of the jars and adds another one
+        now.addAndGet(TimeUnit.DAYS.toMillis(2));
+        index = ClasspathIndex.open(indexFile, 2, now::get);
+        index.packagesOf(used);
+        index.packagesOf(added);
+        index.persist();
+
+        // then the jar that was not used is evicted: after changing the jars without changing their size and
+        // modification time, only the one still in the index is served from it
+        long oldLastModified = old.lastModified();
+        long usedLastModified = used.lastModified();
+        namedJar("old.jar", "com/new/A.class").setLastModified(oldLastModified);
+        namedJar("used.jar", "com/diff/A.class").setLastModified(usedLastModified);
+        ClasspathIndex persisted = ClasspathIndex.open(indexFile, 2, now::get);
+        assertThat(persisted.packagesOf(used)).containsOnly("com/used");
+        assertThat(persisted.packagesOf(old)).containsOnly("com/new");
+    }
+
+    @Test
+    void should_leave_no_temporary_files() throws Exception {
+        // given
+        File jar = jar("com/example/A.class");
+        Path indexFile = tempDir.resolve("index/pmd-classpath-index.bin");
+
+        // when two analyses persist the same index
+        ClasspathIndex first = ClasspathIndex.open(indexFile);
+        ClasspathIndex second = ClasspathIndex.open(indexFile);
+        first.packagesOf(jar);
+        second.packagesOf(jar);
+        first.persist();
+        second.persist();
+
+        // then
+        try (Stream<Path> files = Files.list(indexFile.getParent())) {
+            assertThat(files).containsExactly(indexFile);
+        }
+        assertThat(ClasspathIndex.open(indexFile).packagesOf(jar)).containsOnly("com/example");
+    }
+
+    private File jar(String... entries) throws Exception {
+        return namedJar("lib.jar", entries);
+    }
+
+    private File namedJar(String name, String... entries) throws Exception {
+        File jar = tempDir.resolve(name).toFile();
+        try (OutputStream file = Files.newOutputStream(jar.toPath()); JarOutputStream out = new JarOutputStream(file)) {
+            for (String entry : entries) {
+                out.putNextEntry(new ZipEntry(entry));
+                out.write(new byte[]{1, 2, 3});
+            }
+        }
+        return jar;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class IndexedClassLoaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void should_find_resources_in_jars_and_directories() throws Exception {
+        // given
+        File jar = jar("lib.jar", "com/example/a.txt", "jar");
+        Path directory = tempDir.resolve("classes");
+        Files.createDirectories(directory.resolve("com/example"));
+        Files.write(directory.resolve("com/example/a.txt"), "dir".getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("com/example/b.txt"), "dir".getBytes(StandardCharsets.UTF_8));
+
+        try (IndexedClassLoader classLoader = new IndexedClassLoader(List.of(jar, directory.toFile()))) {
+            // when
+            URL first = classLoader.findResource("com/example/a.txt");
+
+            // then
+            assertThat(read(first)).isEqualTo("jar");
+            assertThat(read(classLoader.findResource("com/example/b.txt"))).isEqualTo("dir");
+            assertThat(Collections.list(classLoader.findResources("com/example/a.txt"))).hasSize(2);
+            assertThat(classLoader.findResource("com/other/a.txt")).isNull();
+            assertThat(classLoader.getURLs()).containsExactly(jar.toURI().toURL(), directory.toUri().toURL());
+        }
+    }
+
+    @Test
+    void should_load_classes_from_jar() throws Exception {
+        String resourceName = PmdConstants.class.getName().replace('.', '/') + ".class";
+        byte[] bytes;
+        try (InputStream in = PmdConstants.class.getClassLoader().getResourceAsStream(resourceName)) {
+            bytes = in.readAllBytes();
+        }
+        File jar = tempDir.resolve("classes.jar").toFile();
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar.toPath()))) {
+            out.putNextEntry(new ZipEntry(resourceName));
+            out.write(bytes);
+        }
+
+        try (IndexedClassLoader classLoader = new IndexedClassLoader(List.of(jar))) {
+            Class<?> loaded = classLoader.findClass(PmdConstants.class.getName());
+
+            assertThat(loaded.getName()).isEqualTo(PmdConstants.class.getName());
+            assertThat(loaded.getClassLoader()).isSameAs(classLoader);
+            assertThatThrownBy(() -> classLoader.findClass("org.sonar.plugins.pmd.Missing")).isInstanceOf(ClassNotFoundException.class);
+        }
+    }
+
+    @Test
+    void should_ignore_missing_classpath_elements() throws Exception {
+        File missing = tempDir.resolve("missing.jar").toFile();
+
+        try (IndexedClassLoader classLoader = new IndexedClassLoader(List.of(missing))) {
+            assertThat(classLoader.findResource("com/example/a.txt")).isNull();
+            assertThat(classLoader.getURLs()).containsExactly(missing.toURI().toURL());
+        }
+    }
+
+    @Test
+    void should_share_class_loader_per_classpath() throws Exception {
+        File jar = jar("lib.jar", "com/example/a.txt", "jar");
+        PmdClassLoaders classLoaders = new PmdClassLoaders(mock(PmdConfiguration.class));
+
+        assertThat(classLoaders.forClasspath(List.of(jar))).isSameAs(classLoaders.forClasspath(List.of(jar)));
+        assertThat(classLoaders.forClasspath(List.of(jar))).isNotSameAs(classLoaders.forClasspath(List.of()));
+
+        classLoaders.stop();
+    }
+
+    @Test
+    void should_share_classpath_elements_between_class_loaders() throws Exception {
+        File jar = jar("lib.jar", "com/example/a.txt", "jar");
+        File testJar = jar("test.jar", "org/example/b.txt", "test");
+        PmdClassLoaders classLoaders = new PmdClassLoaders(mock(PmdConfiguration.class));
+
+        IndexedClassLoader main = (IndexedClassLoader) classLoaders.forClasspath(List.of(jar));
+        IndexedClassLoader test = (IndexedClassLoader) classLoaders.forClasspath(List.of(jar, testJar, jar));
+
+        assertThat(test.elements()).hasSize(2);
+        assertThat(test.elements().get(0)).isSameAs(main.elements().get(0));
+        main.close();
+        assertThat(read(test.findResource("com/example/a.txt"))).isEqualTo("jar");
+
+        classLoaders.stop();
+        assertThat(test.findResource("com/example/a.txt")).isNull();
+    }
+
+    private File jar(String name, String entry, String content) throws IOException {
+        File jar = tempDir.resolve(name).toFile();
+        try (OutputStream file = Files.newOutputStream(jar.toPath()); JarOutputStream out = new JarOutputStream(file)) {
+            out.putNextEntry(new ZipEntry(entry));
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return jar;
+    }
+
+    private static String read(URL url) throws IOException {
+        try (InputStream in = url.openStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd;
+
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.java.JavaLanguageModule;
+import net.sourceforge.pmd.lang.java.rule.design.UseUtilityClassRule;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.reporting.Report;
+import net.sourceforge.pmd.reporting.RuleViolation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sonar.api.batch.fs.InputFile;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PmdAnalysisCacheTest {
+
+    private static final String FINGERPRINT = "fingerprint";
+
+    @TempDir
+    Path tempDir;
+
+    private Path cacheFile;
+    private RuleSet ruleSet;
+
+    @BeforeEach
+    void setUp() {
+        cacheFile = tempDir.resolve("pmd-cache.bin");
+        Rule rule = new UseUtilityClassRule();
+        rule.setName("UseUtilityClass");
+        rule.setLanguage(JavaLanguageModule.getInstance());
+        ruleSet = RuleSet.forSingleRule(rule);
+    }
+
+    @Test
+    void should_serve_unchanged_file_from_cache() {
+        InputFile file = inputFile("src/Foo.java", "hash1");
+        storeOneViolation(file);
+
+        PmdAnalysisCache cache = PmdAnalysisCache.open(cacheFile, FINGERPRINT);
+
+        assertThat(cache.isUpToDate(file)).isTrue();
+        List<RuleViolation> violations = cache.cachedViolations(file, ruleSet);
+        assertThat(violations).hasSize(1);
+        RuleViolation violation = violations.get(0);
+        assertThat(violation.getRule().getName()).isEqualTo("UseUtilityClass");
+        assertThat(violation.getDescription()).isEqualTo("Description");
+        assertThat(violation.getBeginLine()).isEqualTo(2);
+        assertThat(violation.getEndLine()).isEqualTo(3);
+        assertThat(violation.getFileId().getAbsolutePath()).isEqualTo(file.absolutePath());
+        assertThat(cache.hits()).isEqualTo(1);
+        assertThat(cache.misses()).isZero();
+    }
+
+    @Test
+    void should_analyze_changed_file_again() {
+        storeOneViolation(inputFile("src/Foo.java", "hash1"));
+
+        PmdAnalysisCache cache = PmdAnalysisCache.open(cacheFile, FINGERPRINT);
+
+        assertThat(cache.isUpToDate(inputFile("src/Foo.java", "hash2"))).isFalse();
+        assertThat(cache.hits()).isZero();
+        assertThat(cache.misses()).isEqualTo(1);
+    }
+
+    @Test
+    void should_discard_cache_with_other_fingerprint() {
+        InputFile file = inputFile("src/Foo.java", "hash1");
+        storeOneViolation(file);
+
+        PmdAnalysisCache cache = PmdAnalysisCache.open(cacheFile, "other-fingerprint");
+
+        assertThat(cache.isUpToDate(file)).isFalse();
+    }
+
+    @Test
+    void should_not_cache_files_with_processing_errors() {
+        InputFile file = inputFile("src/Foo.java", "hash1");
+        PmdAnalysisCache cache = PmdAnalysisCache.open(cacheFile, FINGERPRINT);
+        Report report = Report.buildReport(fal -> fal.onError(new Report.ProcessingError(new RuntimeException(), FileId.fromPath(file.path()))));
+
+        cache.update(List.of(file), report);
+        cache.persist();
+
+        assertThat(PmdAnalysisCache.open(cacheFile, FINGERPRINT).isUpToDate(file)).isFalse();
+    }
+
+    @Test
+    void should_replace_cache_without_leaving_temporary_files() throws Exception {
+        InputFile file = inputFile("src/Foo.java", "hash1");
+        storeOneViolation(file);
+        PmdAnalysisCache.open(cacheFile, FINGERPRINT).persist();
+
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertThat(files).containsExactly(cacheFile);
+        }
+        assertThat(PmdAnalysisCache.open(cacheFile, FINGERPRINT).isUpToDate(file)).isFalse();
+    }
+
+    @Test
+    void should_compute_different_fingerprint_for_other_classpath() throws Exception {
+        URLClassLoader emptyClasspath = new URLClassLoader(new URL[0]);
+        URLClassLoader otherClasspath = new URLClassLoader(new URL[]{tempDir.toUri().toURL()});
+        String fingerprint = PmdAnalysisCache.fingerprint(ruleSet, PmdTemplate.languageVersion("17"), emptyClasspath);
+
+        assertThat(PmdAnalysisCache.fingerprint(ruleSet, PmdTemplate.languageVersion("17"), emptyClasspath)).isEqualTo(fingerprint);
+        assertThat(PmdAnalysisCache.fingerprint(ruleSet, PmdTemplate.languageVersion("17"), otherClasspath)).isNotEqualTo(fingerprint);
+        assertThat(PmdAnalysisCache.fingerprint(ruleSet, PmdTemplate.languageVersion("11"), emptyClasspath)).isNotEqualTo(fingerprint);
+    }
+
+    private void storeOneViolation(InputFile file) {
+        PmdAnalysisCache cache = PmdAnalysisCache.open(cacheFile, FINGERPRINT);
+        assertThat(cache.isUpToDate(file)).isFalse();
+        RuleViolation violation = violation(file);
+        cache.update(List.of(file), Report.buildReport(fal -> fal.onRuleViolation(violation)));
+        cache.persist();
+    }
+
+    private InputFile inputFile(String relativePath, String hash) {
+        Path path = tempDir.resolve(relativePath);
+        InputFile file = mock(InputFile.class);
+        when(file.path()).thenReturn(path);
+        when(file.absolutePath()).thenReturn(path.toString());
+        when(file.md5Hash()).thenReturn(hash);
+        return file;
+    }
+
+    private RuleViolation violation(InputFile file) {
+        Rule rule = ruleSet.getRuleByName("UseUtilityClass");
+        FileId fileId = FileId.fromPath(file.path());
+        RuleViolation violation = mock(RuleViolation.class);
+        when(violation.getRule()).thenReturn(rule);
+        when(violation.getFileId()).thenReturn(fileId);
+        when(violation.getDescription()).thenReturn("Description");
+        when(violation.getBeginLine()).thenReturn(2);
+        when(violation.getBeginColumn()).thenReturn(1);
+        when(violation.getEndLine()).thenReturn(3);
+        when(violation.getEndColumn()).thenReturn(5);
+        when(violation.getAdditionalInfo()).thenReturn(Map.of());
+        return violation;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.lang.rule.RuleSetLoader;
+import net.sourceforge.pmd.reporting.Report;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PmdCancellationTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void should_analyze_files_when_not_cancelled() throws Exception {
+        Report report = analyze(new PmdCancellation(() -> false));
+
+        assertThat(report.getProcessingErrors()).isEmpty();
+        assertThat(report.getViolations()).hasSize(1);
+    }
+
+    @Test
+    void should_skip_files_when_cancelled() throws Exception {
+        Report report = analyze(new PmdCancellation(() -> true));
+
+        assertThat(report.getProcessingErrors()).isEmpty();
+        assertThat(report.getViolations()).isEmpty();
+    }
+
+    @Test
+    void should_stay_cancelled() {
+        // given
+        AtomicBoolean requested = new AtomicBoolean(true);
+        PmdCancellation cancellation = new PmdCancellation(requested::get);
+
+        // when
+        boolean cancelled = cancellation.isCancelled();
+        requested.set(false);
+
+        // then
+        assertThat(cancelled).isTrue();
+        assertThat(cancellation.isCancelled()).isTrue();
+    }
+
+    private Report analyze(PmdCancellation cancellation) throws Exception {
+        Path source = tempDir.resolve("Main.kt");
+        Files.write(source, "fun a(): Int { return 1 }\n\nfun abc(): Int { return 2 }\n".getBytes(StandardCharsets.UTF_8));
+        InputFile file = TestInputFileBuilder.create("", tempDir.toFile(), source.toFile())
+                .setLanguage(PmdConstants.LANGUAGE_KOTLIN_KEY)
+                .setCharset(StandardCharsets.UTF_8)
+                .build();
+        RuleSet ruleSet = RuleSetLoader.fromPmdConfig(new PMDConfiguration())
+                .loadFromResource("category/kotlin/bestpractices.xml/FunctionNameTooShort");
+        Report.GlobalReportBuilderListener reportBuilder = new Report.GlobalReportBuilderListener();
+
+        PmdTemplate.create("17", new URLClassLoader(new URL[0]), StandardCharsets.UTF_8)
+                .cancelledBy(cancellation)
+                .process(List.of(file), ruleSet, reportBuilder);
+        reportBuilder.close();
+        return reportBuilder.getResult();
+    }
+}
@@ -30,10 +30,12 @@ import org.sonar.api.rule.RuleScope;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.catchThrowable;
@@ -107,6 +109,30 @@ class PmdConfigurationTest {
                 .matches(PMD_XML_PATTERN);
     }
 
+    @Test
+    void should_dump_compressed_xml_report() throws IOException {
+        when(fs.workDir()).thenReturn(WORK_DIR);
+
+        settings.setProperty(PmdConfiguration.PROPERTY_GENERATE_XML, true);
+        settings.setProperty(PmdConfiguration.PROPERTY_COMPRESS_XML, true);
+        Path reportFile = configuration.dumpXmlReport(Report.buildReport(v -> {}));
+
+        assertThat(reportFile.toFile()).isEqualTo(new File(WORK_DIR, "pmd-result.xml.gz"));
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(reportFile))) {
+            String pmdResultXML = new String(in.readAllBytes(), StandardCharsets.UTF_8).replaceAll("\\R", "");
+            assertThat(pmdResultXML).matches(PMD_XML_PATTERN);
+        }
+    }
+
+    @Test
+    void should_select_report_formats() {
+        settings.setProperty(PmdConfiguration.PROPERTY_GENERATE_XML, true);
+        settings.setProperty(PmdConfiguration.PROPERTY_REPORT_FORMATS, "jsonl, SARIF,unknown");
+
+        assertThat(configuration.reportFormats())
+                .containsExactly(PmdReportFormat.XML, PmdReportFormat.SARIF, PmdReportFormat.JSON_LINES);
+    }
+
     @Test
     void should_fail_to_dump_xml_report() {
         when(fs.workDir()).thenReturn(new File("xxx"));
@@ -127,4 +153,56 @@ class PmdConfigurationTest {
         assertThat(reportFile).isNull();
         verifyNoMoreInteractions(fs);
     }
+
+    @Test
+    void should_store_analysis_cache_in_work_dir_by_default() {
+        when(fs.workDir()).thenReturn(WORK_DIR);
+        when(fs.baseDir()).thenReturn(new File("project"));
+
+        Path cacheFile = configuration.analysisCacheFile("pmd", RuleScope.MAIN);
+
+        assertThat(configuration.isAnalysisCacheEnabled()).isFalse();
+        assertThat(cacheFile.getParent()).isEqualTo(WORK_DIR.toPath());
+        assertThat(cacheFile.getFileName().toString()).startsWith("pmd-cache-pmd-main-").endsWith(".bin");
+    }
+
+    @Test
+    void should_store_analysis_cache_in_configured_dir() {
+        when(fs.baseDir()).thenReturn(new File("project"));
+        settings.setProperty(PmdConfiguration.PROPERTY_ANALYSIS_CACHE, true);
+        settings.setProperty(PmdConfiguration.PROPERTY_ANALYSIS_CACHE_PATH, "shared-cache");
+
+        Path cacheFile = configuration.analysisCacheFile("pmd-kotlin", RuleScope.TEST);
+
+        assertThat(configuration.isAnalysisCacheEnabled()).isTrue();
+        assertThat(cacheFile.getParent()).isEqualTo(Path.of("shared-cache"));
+        assertThat(cacheFile.getFileName().toString()).startsWith("pmd-cache-pmd-kotlin-test-");
+        assertThat(configuration.classpathIndexFile().getParent()).isEqualTo(Path.of("shared-cache"));
+    }
+
+    @Test
+    void should_use_configured_number_of_threads() {
+        settings.setProperty(PmdConfiguration.PROPERTY_THREADS, "3");
+
+        assertThat(configuration.analysisThreads()).isEqualTo(3);
+    }
+
+    @Test
+    void should_use_available_processors_for_invalid_number_of_threads() {
+        settings.setProperty(PmdConfiguration.PROPERTY_THREADS, "many");
+
+        assertThat(configuration.analysisThreads()).isEqualTo(Runtime.getRuntime().availableProcessors());
+    }
+
+    @Test
+    void should_derive_threads_from_processors_and_heap_in_auto_mode() {
+        settings.setProperty(PmdConfiguration.PROPERTY_THREADS, PmdConfiguration.THREADS_AUTO);
+        long mb = 1024L * 1024;
+
+        assertThat(configuration.analysisThreads()).isBetween(1, Runtime.getRuntime().availableProcessors());
+        assertThat(PmdConfiguration.autoThreads(64, 2048 * mb)).isEqualTo(4);
+        assertThat(PmdConfiguration.autoThreads(4, 16384 * mb)).isEqualTo(4);
+        assertThat(PmdConfiguration.autoThreads(8, 256 * mb)).isEqualTo(1);
+        assertThat(PmdConfiguration.autoThreads(8, Long.MAX_VALUE)).isEqualTo(8);
+    }
 }
@@ -0,0 +1,90 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import net.sourceforge.pmd.reporting.RuleViolation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PmdEventsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    void tearDown() {
+        PmdEvents.setEnabled(false);
+    }
+
+    @Test
+    void should_emit_file_analysis_event() throws Exception {
+        // given
+        Path source = tempDir.resolve("Main.java");
+        Files.write(source, new byte[42]);
+        TextFile textFile = mock(TextFile.class);
+        when(textFile.getFileId()).thenReturn(FileId.fromPath(source));
+        PmdEvents.setEnabled(true);
+
+        // when
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable(PmdEvents.FileAnalysisEvent.class);
+            recording.start();
+            FileAnalysisListener listener = PmdEvents.fileAnalysisListener(path -> 7).startFileAnalysis(textFile);
+            listener.onRuleViolation(mock(RuleViolation.class));
+            listener.close();
+            recording.stop();
+            Path dump = tempDir.resolve("recording.jfr");
+            recording.dump(dump);
+            events = RecordingFile.readAllEvents(dump).stream()
+                    .filter(event -> event.getEventType().getName().equals("org.sonar.plugins.pmd.FileAnalysis"))
+                    .collect(Collectors.toList());
+        }
+
+        // then
+        assertThat(events).hasSize(1);
+        RecordedEvent event = events.get(0);
+        assertThat(event.getString("path")).isEqualTo(FileId.fromPath(source).getAbsolutePath());
+        assertThat(event.getLong("size")).isEqualTo(42);
+        assertThat(event.getInt("rules")).isEqualTo(7);
+        assertThat(event.getInt("violations")).isEqualTo(1);
+    }
+
+    @Test
+    void should_be_disabled_by_default() {
+        assertThat(PmdEvents.isEnabled()).isFalse();
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd;
+
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import net.sourceforge.pmd.reporting.Report;
+import net.sourceforge.pmd.reporting.RuleViolation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.sensor.SensorContext;
+
+import java.nio.file.Paths;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class PmdIssueListenerTest {
+
+    private final PmdViolationRecorder pmdViolationRecorder = mock(PmdViolationRecorder.class);
+    private final SensorContext sensorContext = mock(SensorContext.class);
+    private final PmdSensorCache cache = mock(PmdSensorCache.class);
+    private final FileId fileId = FileId.fromPath(Paths.get("src/Foo.java"));
+    private final InputFile inputFile = mock(InputFile.class);
+    private final TextFile textFile = mock(TextFile.class);
+
+    private PmdIssueListener listener;
+
+    @BeforeEach
+    void setUp() {
+        listener = new PmdIssueListener(pmdViolationRecorder, sensorContext, cache);
+        when(textFile.getFileId()).thenReturn(fileId);
+        when(pmdViolationRecorder.findResourceFor(fileId)).thenReturn(inputFile);
+        when(cache.isEnabled()).thenReturn(true);
+    }
+
+    @Test
+    void should_save_violations_when_file_is_done() throws Exception {
+
+        // given
+        final RuleViolation violation = violation();
+        final FileAnalysisListener fileListener = listener.startFileAnalysis(textFile);
+
+        // when
+        fileListener.onRuleViolation(violation);
+
+        // then
+        verify(pmdViolationRecorder, never()).saveViolation(violation, sensorContext);
+        fileListener.close();
+        verify(pmdViolationRecorder).saveViolation(violation, sensorContext);
+        verify(cache).store(eq(inputFile), argThat(violations -> violations.size() == 1));
+    }
+
+    @Test
+    void should_not_cache_file_with_processing_error() throws Exception {
+
+        // given
+        final RuleViolation violation = violation();
+
+        // when
+        try (FileAnalysisListener fileListener = listener.startFileAnalysis(textFile)) {
+            fileListener.onRuleViolation(violation);
+            fileListener.onError(new Report.ProcessingError(new RuntimeException("Boom"), fileId));
+        }
+
+        // then
+        verify(pmdViolationRecorder).saveViolation(violation, sensorContext);
+        verify(cache, never()).store(any(InputFile.class), anyList());
+    }
+
+    @Test
+    void should_discard_violations_of_file_that_exceeded_time_budget() throws Exception {
+
+        // given
+        final RuleViolation violation = violation();
+        final PmdFileTimeBudget.FileTimeoutException timeout = new PmdFileTimeBudget.FileTimeoutException("src/Foo.java", "SlowRule", 1000);
+
+        // when
+        try (FileAnalysisListener fileListener = listener.startFileAnalysis(textFile)) {
+            fileListener.onRuleViolation(violation);
+            fileListener.onError(new Report.ProcessingError(new RuntimeException(timeout), fileId));
+        }
+
+        // then
+        verify(pmdViolationRecorder, never()).saveViolation(violation, sensorContext);
+        verify(cache, never()).store(any(InputFile.class), anyList());
+        assertThat(listener.getTimeouts()).containsExactly(timeout.getMessage());
+    }
+
+    private RuleViolation violation() {
+        final Rule rule = mock(Rule.class);
+        when(rule.getName()).thenReturn("UseUtilityClass");
+        final RuleViolation violation = mock(RuleViolation.class);
+        when(violation.getRule()).thenReturn(rule);
+        when(violation.getFileId()).thenReturn(fileId);
+        when(violation.getDescription()).thenReturn("Description");
+        when(violation.getAdditionalInfo()).thenReturn(Map.of());
+        return violation;
+    }
+}
@@ -20,13 +20,16 @@
 package org.sonar.plugins.pmd;
 
 import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.reporting.GlobalAnalysisListener;
 import net.sourceforge.pmd.reporting.Report;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.sonar.api.batch.fs.InputFile.Type;
 import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.rule.RuleScope;
 
 import java.io.File;
 import java.net.URI;
@@ -38,13 +41,20 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.catchThrowable;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
 class PmdJavaExecutorTest extends AbstractPmdExecutorTest {
 
     private final ClasspathProvider classpathProvider = mock(ClasspathProvider.class);
+    private final PmdClassLoaders classLoaders = new PmdClassLoaders(mock(PmdConfiguration.class));
     private PmdJavaExecutor realPmdExecutor;
 
+    @AfterEach
+    void tearDown() {
+        classLoaders.stop();
+    }
+
     @BeforeEach
     void setUp() {
         realPmdExecutor = new PmdJavaExecutor(
@@ -52,6 +62,7 @@ class PmdJavaExecutorTest extends AbstractPmdExecutorTest {
                 activeRules,
                 pmdConfiguration,
                 classpathProvider,
+                classLoaders,
                 settings.asConfig()
         );
         pmdExecutor = Mockito.spy(realPmdExecutor);
@@ -91,10 +102,46 @@ class PmdJavaExecutorTest extends AbstractPmdExecutorTest {
         fileSystem.add(srcFile);
 
         pmdExecutor.execute();
-        verify(pmdTemplate).process(anyIterable(), any(RuleSet.class));
+        verify(pmdTemplate).process(anyIterable(), any(RuleSet.class), any(GlobalAnalysisListener.class));
         verifyNoMoreInteractions(pmdTemplate);
     }
 
+    @Test
+    void should_build_rule_set_without_xml() {
+        DefaultInputFile srcFile = fileJava("src/Class.java", Type.MAIN);
+        doReturn(pmdTemplate).when(pmdExecutor).createPmdTemplate(any(URLClassLoader.class));
+        setupPmdRuleSet(PmdConstants.MAIN_JAVA_REPOSITORY_KEY, "simple.xml");
+        fileSystem.add(srcFile);
+
+        pmdExecutor.execute();
+
+        ArgumentCaptor<RuleSet> ruleSet = ArgumentCaptor.forClass(RuleSet.class);
+        verify(pmdTemplate).process(anyIterable(), ruleSet.capture(), any(GlobalAnalysisListener.class));
+        assertThat(ruleSet.getValue().getRuleByName("ForLoopVariableCount")).isNotNull();
+        verify(pmdConfiguration, never()).dumpXmlRuleSet(anyString(), anyString(), any(RuleScope.class));
+    }
+
+    @Test
+    void should_analyze_joined_executors_in_single_run() {
+        DefaultInputFile srcFile = fileJava("src/Class.java", Type.MAIN);
+        DefaultInputFile kotlinFile = fileKotlin("src/test/kotlin/TestKotlin.kt", Type.MAIN);
+        setupPmdRuleSet(PmdConstants.MAIN_JAVA_REPOSITORY_KEY, "simple.xml");
+        setupPmdRuleSet(PmdConstants.MAIN_KOTLIN_REPOSITORY_KEY, "simple-kotlin.xml");
+        fileSystem.add(srcFile);
+        fileSystem.add(kotlinFile);
+        PmdKotlinExecutor kotlinExecutor = new PmdKotlinExecutor(fileSystem, activeRules, pmdConfiguration, classLoaders, settings.asConfig());
+        Report.GlobalReportBuilderListener reportBuilder = new Report.GlobalReportBuilderListener();
+
+        boolean completed = pmdExecutor.execute(reportBuilder, file -> true, List.of(kotlinExecutor));
+        reportBuilder.close();
+
+        assertThat(completed).isTrue();
+        assertThat(reportBuilder.getResult().getViolations())
+                .extracting(violation -> violation.getRule().getName())
+                .containsExactly("FunctionNameTooShort");
+        verify(pmdExecutor, times(1)).createPmdTemplate(any(URLClassLoader.class));
+    }
+
     @Test
     void should_build_project_classloader_from_classpathprovider() throws Exception {
         File file = new File("x");
@@ -107,6 +154,49 @@ class PmdJavaExecutorTest extends AbstractPmdExecutorTest {
         assertThat(urls).containsOnly(file.toURI().toURL());
     }
 
+    @Test
+    void should_use_test_classpath_for_test_files() throws Exception {
+        File main = new File("main");
+        File test = new File("test");
+        when(classpathProvider.classpath()).thenReturn(List.of(main));
+        when(classpathProvider.testClasspath()).thenReturn(List.of(main, test));
+        setupPmdRuleSet(PmdConstants.MAIN_JAVA_REPOSITORY_KEY, "simple.xml");
+        fileSystem.add(fileJava("src/Class.java", Type.MAIN));
+        fileSystem.add(fileJava("test/ClassTest.java", Type.TEST));
+
+        pmdExecutor.execute();
+
+        ArgumentCaptor<URLClassLoader> classLoaderArgument = ArgumentCaptor.forClass(URLClassLoader.class);
+        verify(pmdExecutor, times(2)).createPmdTemplate(classLoaderArgument.capture());
+        assertThat(classLoaderArgument.getAllValues().get(0).getURLs()).containsExactly(main.toURI().toURL());
+        assertThat(classLoaderArgument.getAllValues().get(1).getURLs()).containsExactly(main.toURI().toURL(), test.toURI().toURL());
+    }
+
+    @Test
+    void should_use_main_classpath_for_test_files_without_test_libraries() throws Exception {
+        File main = new File("main");
+        File testBinaries = new File("test-classes");
+        when(classpathProvider.classpath()).thenReturn(List.of(main));
+        when(classpathProvider.testClasspath()).thenReturn(List.of(testBinaries));
+        setupPmdRuleSet(PmdConstants.MAIN_JAVA_REPOSITORY_KEY, "simple.xml");
+        fileSystem.add(fileJava("src/Class.java", Type.MAIN));
+        fileSystem.add(fileJava("test/ClassTest.java", Type.TEST));
+
+        pmdExecutor.execute();
+
+        ArgumentCaptor<URLClassLoader> classLoaderArgument = ArgumentCaptor.forClass(URLClassLoader.class);
+        verify(pmdExecutor, times(2)).createPmdTemplate(classLoaderArgument.capture());
+        assertThat(classLoaderArgument.getAllValues().get(1).getURLs()).containsExactly(testBinaries.toURI().toURL(), main.toURI().toURL());
+
+        // neither test libraries nor test binaries configured
+        when(classpathProvider.testClasspath()).thenReturn(List.of());
+        pmdExecutor.execute();
+
+        ArgumentCaptor<URLClassLoader> withoutTestClasspath = ArgumentCaptor.forClass(URLClassLoader.class);
+        verify(pmdExecutor, times(4)).createPmdTemplate(withoutTestClasspath.capture());
+        assertThat(withoutTestClasspath.getAllValues().get(3).getURLs()).containsExactly(main.toURI().toURL());
+    }
+
     @Test
     void invalid_classpath_element() {
         File invalidFile = mock(File.class);
@@ -20,35 +20,63 @@
 package org.sonar.plugins.pmd;
 
 import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.reporting.GlobalAnalysisListener;
 import net.sourceforge.pmd.reporting.Report;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.sonar.api.batch.fs.InputFile.Type;
 import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+import org.sonar.api.rule.RuleScope;
 
 import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
 class PmdKotlinExecutorTest extends AbstractPmdExecutorTest {
 
+    private final PmdClassLoaders classLoaders = new PmdClassLoaders(mock(PmdConfiguration.class));
     private PmdKotlinExecutor realPmdExecutor;
 
+    @AfterEach
+    void tearDown() {
+        classLoaders.stop();
+    }
+
     @BeforeEach
     void setUp() {
         realPmdExecutor = new PmdKotlinExecutor(
                 fileSystem,
                 activeRules,
                 pmdConfiguration,
+                classLoaders,
                 settings.asConfig()
         );
         pmdExecutor = Mockito.spy(realPmdExecutor);
     }
 
+    private static DefaultInputFile kotlinFile(Path baseDir, String name, String content) throws Exception {
+        Path path = baseDir.resolve(name);
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+        return TestInputFileBuilder.create("", baseDir.toFile(), path.toFile())
+                .setType(Type.MAIN)
+                .setLanguage(PmdConstants.LANGUAGE_KOTLIN_KEY)
+                .setCharset(StandardCharsets.UTF_8)
+                .initMetadata(content)
+                .build();
+    }
+
     @Override
     protected DefaultInputFile getAppropriateInputFileForTest() {
         return fileKotlin("src/test/kotlin/TestKotlin.kt", Type.MAIN);
@@ -71,6 +99,41 @@ class PmdKotlinExecutorTest extends AbstractPmdExecutorTest {
         verify(pmdConfiguration).dumpXmlReport(report);
     }
 
+    @Test
+    void should_skip_kotlin_scripts_when_cancellable() {
+        // Given
+        fileSystem.add(fileKotlin("src/test/kotlin/TestKotlin.kt", Type.MAIN));
+        fileSystem.add(fileKotlin("build.gradle.kts", Type.MAIN));
+        setupPmdRuleSet(PmdConstants.MAIN_KOTLIN_REPOSITORY_KEY, "simple-kotlin.xml");
+        pmdExecutor.setCancellation(new PmdCancellation(() -> false));
+
+        // When
+        Report report = pmdExecutor.execute();
+
+        // Then
+        assertThat(report).isNotNull();
+        assertThat(report.getViolations()).hasSize(1);
+        assertThat(report.getProcessingErrors()).isEmpty();
+    }
+
+    @Test
+    void should_not_cache_kotlin_scripts(@TempDir Path tempDir) throws Exception {
+        // Given
+        fileSystem.add(kotlinFile(tempDir, "Main.kt", "fun a(): Int { return 1 }\n"));
+        fileSystem.add(kotlinFile(tempDir, "build.gradle.kts", "plugins { java }\n"));
+        setupPmdRuleSet(PmdConstants.MAIN_KOTLIN_REPOSITORY_KEY, "simple-kotlin.xml");
+        when(pmdConfiguration.isAnalysisCacheEnabled()).thenReturn(true);
+        when(pmdConfiguration.analysisCacheFile(anyString(), any(RuleScope.class))).thenReturn(tempDir.resolve("pmd-kotlin.cache"));
+
+        // When
+        pmdExecutor.execute();
+        Report report = pmdExecutor.execute();
+
+        // Then
+        assertThat(report.getViolations()).hasSize(1);
+        assertThat(pmdExecutor.cacheHits()).isEqualTo(1);
+    }
+
     @Test
     void should_execute_pmd_on_kotlin_test_files() {
         // Given
@@ -98,7 +161,7 @@ class PmdKotlinExecutorTest extends AbstractPmdExecutorTest {
         pmdExecutor.execute();
 
         // Then
-        verify(pmdTemplate).process(anyIterable(), any(RuleSet.class));
+        verify(pmdTemplate).process(anyIterable(), any(RuleSet.class), any(GlobalAnalysisListener.class));
         verifyNoMoreInteractions(pmdTemplate);
     }
 
@@ -112,4 +175,20 @@ class PmdKotlinExecutorTest extends AbstractPmdExecutorTest {
         verify(pmdExecutor).createPmdTemplate(argThat(classLoader -> 
                 classLoader instanceof URLClassLoader && ((URLClassLoader) classLoader).getURLs().length == 0));
     }
-}
\ No newline at end of file
+
+    @Test
+    void should_reuse_empty_classloader() {
+        // Given
+        fileSystem.add(fileKotlin("src/test/kotlin/TestKotlin.kt", Type.MAIN));
+        setupPmdRuleSet(PmdConstants.MAIN_KOTLIN_REPOSITORY_KEY, "simple-kotlin.xml");
+
+        // When
+        pmdExecutor.execute();
+        pmdExecutor.execute();
+
+        // Then
+        ArgumentCaptor<URLClassLoader> classLoaderArgument = ArgumentCaptor.forClass(URLClassLoader.class);
+        verify(pmdExecutor, times(2)).createPmdTemplate(classLoaderArgument.capture());
+        assertThat(classLoaderArgument.getAllValues().get(1)).isSameAs(classLoaderArgument.getAllValues().get(0));
+    }
+}
@@ -51,16 +51,20 @@ class PmdPluginTest {
         // then
         final List extensions = context.getExtensions();
         assertThat(extensions)
-                .hasSize(9)
+                .hasSize(23)
                 .contains(
                         PmdSensor.class,
+                        PmdAnalysisCost.class,
+                        PmdAnalysisCostSensor.class,
                         PmdConfiguration.class,
                         PmdJavaExecutor.class,
                         PmdKotlinExecutor.class,
                         PmdRulesDefinition.class,
                         PmdKotlinRulesDefinition.class,
                         PmdViolationRecorder.class,
-                        DefaultClasspathProvider.class
+                        DefaultClasspathProvider.class,
+                        PmdClassLoaders.class,
+                        PmdMetrics.class
                 );
     }
 
@@ -0,0 +1,183 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.lang.Language;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.java.JavaLanguageModule;
+import net.sourceforge.pmd.lang.kotlin.KotlinLanguageModule;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.RulePriority;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.lang.rule.RuleSetLoader;
+import net.sourceforge.pmd.renderers.Renderer;
+import net.sourceforge.pmd.renderers.XMLRenderer;
+import net.sourceforge.pmd.reporting.RuleViolation;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+
+import java.io.StringWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PmdReportFileTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void should_write_violations_while_analyzing() throws Exception {
+        // given
+        Path reportFile = tempDir.resolve("pmd-result.xml");
+        PmdReportFile report = PmdReportFile.open(reportFile, false, new XMLRenderer());
+
+        // when
+        analyze(report);
+        report.close(true);
+
+        // then
+        String xml = new String(Files.readAllBytes(reportFile), StandardCharsets.UTF_8);
+        assertThat(xml)
+                .contains("Main.kt")
+                .contains("rule=\"FunctionNameTooShort\"")
+                .endsWith("</pmd>" + System.lineSeparator());
+    }
+
+    @Test
+    void should_remove_report_of_incomplete_analysis() throws Exception {
+        // given
+        Path reportFile = tempDir.resolve("pmd-result.xml");
+        PmdReportFile report = PmdReportFile.open(reportFile, false, new XMLRenderer());
+
+        // when
+        analyze(report);
+        report.close(false);
+
+        // then
+        assertThat(reportFile).doesNotExist();
+    }
+
+    @Test
+    void should_write_sarif_log() throws Exception {
+        // given
+        Path reportFile = tempDir.resolve("pmd-result.sarif.json");
+
+        // when
+        String sarif = render(reportFile, new PmdSarifRenderer());
+
+        // then
+        assertThat(sarif)
+                .startsWith("{\"$schema\":\"https://json.schemastore.org/sarif-2.1.0.json\",\"version\":\"2.1.0\",\"runs\":[{\"results\":[")
+                .contains("{\"ruleId\":\"kotlin/FunctionNameTooShort\",\"ruleIndex\":0,\"level\":\"warning\"")
+                .contains("\"artifactLocation\":{\"uri\":\"" + tempDir.resolve("Main.kt").toUri())
+                .contains("\"region\":{\"startLine\":1,\"startColumn\":5,\"endLine\":1,\"endColumn\":6}")
+                .contains("\"rules\":[\n{\"id\":\"kotlin/FunctionNameTooShort\",\"name\":\"FunctionNameTooShort\"")
+                .contains("\"executionSuccessful\":true")
+                .endsWith("]}]}]}\n");
+    }
+
+    @Test
+    void should_write_distinct_sarif_rules_per_language() throws Exception {
+        // given
+        PmdSarifRenderer renderer = new PmdSarifRenderer();
+        StringWriter sarif = new StringWriter();
+        renderer.setWriter(sarif);
+        RuleViolation javaViolation = violation(rule(JavaLanguageModule.getInstance()));
+        RuleViolation kotlinViolation = violation(rule(KotlinLanguageModule.getInstance()));
+
+        // when
+        renderer.start();
+        renderer.renderFileViolations(List.of(javaViolation, kotlinViolation, javaViolation).iterator());
+        renderer.end();
+
+        // then
+        assertThat(sarif.toString())
+                .contains("{\"ruleId\":\"java/SameName\",\"ruleIndex\":0,")
+                .contains("{\"ruleId\":\"kotlin/SameName\",\"ruleIndex\":1,")
+                .contains("\"rules\":[\n{\"id\":\"java/SameName\",\"name\":\"SameName\"")
+                .contains(",\n{\"id\":\"kotlin/SameName\",\"name\":\"SameName\"");
+    }
+
+    @Test
+    void should_write_one_json_line_per_violation() throws Exception {
+        // given
+        Path reportFile = tempDir.resolve("pmd-result.jsonl");
+
+        // when
+        String jsonLines = render(reportFile, new PmdJsonLinesRenderer());
+
+        // then
+        assertThat(jsonLines.split("\n"))
+                .singleElement()
+                .asString()
+                .startsWith("{\"type\":\"violation\",\"file\":")
+                .contains("\"rule\":\"FunctionNameTooShort\"")
+                .contains("\"beginLine\":1,\"beginColumn\":5,\"endLine\":1,\"endColumn\":6")
+                .endsWith("}");
+    }
+
+    private static Rule rule(Language language) {
+        Rule rule = mock(Rule.class);
+        when(rule.getName()).thenReturn("SameName");
+        when(rule.getLanguage()).thenReturn(language);
+        when(rule.getPriority()).thenReturn(RulePriority.MEDIUM);
+        return rule;
+    }
+
+    private RuleViolation violation(Rule rule) {
+        RuleViolation violation = mock(RuleViolation.class);
+        when(violation.getRule()).thenReturn(rule);
+        when(violation.getDescription()).thenReturn("Description");
+        when(violation.getFileId()).thenReturn(FileId.fromPath(tempDir.resolve("Main.java")));
+        return violation;
+    }
+
+    private String render(Path reportFile, Renderer renderer) throws Exception {
+        PmdReportFile report = PmdReportFile.open(reportFile, false, renderer);
+        analyze(report);
+        report.close(true);
+        return new String(Files.readAllBytes(reportFile), StandardCharsets.UTF_8);
+    }
+
+    private void analyze(PmdReportFile report) throws Exception {
+        Path source = tempDir.resolve("Main.kt");
+        Files.write(source, "fun a(): Int { return 1 }\n".getBytes(StandardCharsets.UTF_8));
+        InputFile file = TestInputFileBuilder.create("", tempDir.toFile(), source.toFile())
+                .setLanguage(PmdConstants.LANGUAGE_KOTLIN_KEY)
+                .setCharset(StandardCharsets.UTF_8)
+                .build();
+        RuleSet ruleSet = RuleSetLoader.fromPmdConfig(new PMDConfiguration())
+                .loadFromResource("category/kotlin/bestpractices.xml/FunctionNameTooShort");
+
+        PmdTemplate.create("17", new URLClassLoader(new URL[0]), StandardCharsets.UTF_8)
+                .process(List.of(file), ruleSet, report);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.lang.rule.RuleSetLoader;
+import net.sourceforge.pmd.reporting.GlobalAnalysisListener;
+import net.sourceforge.pmd.reporting.Report;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+import org.sonar.api.rule.RuleScope;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PmdRuleProfileTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final PmdRuleProfile profile = new PmdRuleProfile();
+
+    @Test
+    void should_record_time_invocations_and_violations_per_rule() throws Exception {
+        // given
+        Path source = tempDir.resolve("Main.kt");
+        Files.write(source, "fun a(): Int { return 1 }\n\nfun abc(): Int { return 2 }\n".getBytes(StandardCharsets.UTF_8));
+        InputFile file = TestInputFileBuilder.create("", tempDir.toFile(), source.toFile())
+                .setLanguage(PmdConstants.LANGUAGE_KOTLIN_KEY)
+                .setCharset(StandardCharsets.UTF_8)
+                .build();
+        RuleSet ruleSet = RuleSetLoader.fromPmdConfig(new PMDConfiguration())
+                .loadFromResource("category/kotlin/bestpractices.xml/FunctionNameTooShort");
+        Report.GlobalReportBuilderListener reportBuilder = new Report.GlobalReportBuilderListener();
+
+        // when
+        PmdTemplate.create("17", new URLClassLoader(new URL[0]), StandardCharsets.UTF_8)
+                .process(List.of(file), profile.instrument(PmdConstants.MAIN_KOTLIN_REPOSITORY_KEY, RuleScope.MAIN, ruleSet),
+                        GlobalAnalysisListener.tee(List.of(reportBuilder, profile.violationCounter())));
+        reportBuilder.close();
+
+        // then
+        assertThat(reportBuilder.getResult().getViolations()).hasSize(1);
+        assertThat(profile.rules()).hasSize(1);
+        PmdRuleProfile.RuleStats stats = profile.rules().get(0);
+        assertThat(stats.getRule()).isEqualTo("FunctionNameTooShort");
+        assertThat(stats.getRepositoryKey()).isEqualTo(PmdConstants.MAIN_KOTLIN_REPOSITORY_KEY);
+        assertThat(stats.getScope()).isEqualTo(RuleScope.MAIN);
+        assertThat(stats.getInvocations()).isPositive();
+        assertThat(stats.getNanos()).isPositive();
+        assertThat(stats.getViolations()).isEqualTo(1);
+    }
+
+    @Test
+    void should_write_profile_as_json() throws Exception {
+        // given
+        RuleSet ruleSet = RuleSetLoader.fromPmdConfig(new PMDConfiguration())
+                .loadFromResource("category/java/bestpractices.xml/ForLoopVariableCount");
+        profile.instrument(PmdConstants.MAIN_JAVA_REPOSITORY_KEY, RuleScope.TEST, ruleSet);
+
+        // when
+        Path file = profile.writeTo(tempDir);
+
+        // then
+        assertThat(file).isEqualTo(tempDir.resolve(PmdRuleProfile.PROFILE_JSON));
+        assertThat(Files.readString(file))
+                .contains("\"rule\":\"ForLoopVariableCount\"")
+                .contains("\"repository\":\"pmd\"")
+                .contains("\"language\":\"java\"")
+                .contains("\"scope\":\"TEST\"")
+                .contains("\"invocations\":0");
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.RulePriority;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.lang.rule.RuleSetLoader;
+import net.sourceforge.pmd.lang.rule.xpath.XPathRule;
+import org.junit.jupiter.api.Test;
+import org.sonar.plugins.pmd.xml.PmdProperty;
+import org.sonar.plugins.pmd.xml.PmdRule;
+import org.sonar.plugins.pmd.xml.PmdRuleSet;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PmdRuleSetConverterTest {
+
+    private final PmdRuleSetConverter converter = new PmdRuleSetConverter(RuleSetLoader.fromPmdConfig(new PMDConfiguration()));
+
+    @Test
+    void should_resolve_rule_reference_with_priority_and_properties() {
+        // given
+        PmdRule pmdRule = new PmdRule("category/java/bestpractices.xml/ForLoopVariableCount", 4);
+        pmdRule.addProperty(new PmdProperty("maximumVariables", "5"));
+        pmdRule.addProperty(new PmdProperty("violationSuppressRegex", ""));
+
+        // when
+        Optional<RuleSet> ruleSet = converter.convert(ruleSetOf(pmdRule));
+
+        // then
+        assertThat(ruleSet).isPresent();
+        Rule rule = ruleSet.get().getRuleByName("ForLoopVariableCount");
+        assertThat(rule).isNotNull();
+        assertThat(rule.getPriority()).isEqualTo(RulePriority.MEDIUM_LOW);
+        assertThat(rule.getProperty(rule.getPropertyDescriptor("maximumVariables"))).isEqualTo(5);
+    }
+
+    @Test
+    void should_not_modify_referenced_rule_set() {
+        // given
+        PmdRule pmdRule = new PmdRule("category/java/bestpractices.xml/ForLoopVariableCount", 1);
+        converter.convert(ruleSetOf(pmdRule));
+
+        // when
+        Optional<RuleSet> ruleSet = converter.convert(ruleSetOf(new PmdRule("category/java/bestpractices.xml/ForLoopVariableCount")));
+
+        // then
+        assertThat(ruleSet).isPresent();
+        assertThat(ruleSet.get().getRuleByName("ForLoopVariableCount").getPriority()).isEqualTo(RulePriority.MEDIUM);
+    }
+
+    @Test
+    void should_create_xpath_rule() {
+        // given
+        PmdRule pmdRule = new PmdRule(PmdConstants.XPATH_CLASS, 2);
+        pmdRule.addProperty(new PmdProperty(PmdConstants.XPATH_EXPRESSION_PARAM, "//ClassDeclaration"));
+        pmdRule.addProperty(new PmdProperty(PmdConstants.XPATH_MESSAGE_PARAM, "No classes"));
+        pmdRule.processXpath("NoClasses");
+
+        // when
+        Optional<RuleSet> ruleSet = converter.convert(ruleSetOf(pmdRule));
+
+        // then
+        assertThat(ruleSet).isPresent();
+        Rule rule = ruleSet.get().getRuleByName("NoClasses");
+        assertThat(rule).isInstanceOf(XPathRule.class);
+        assertThat(((XPathRule) rule).getXPathExpression()).isEqualTo("//ClassDeclaration");
+        assertThat(rule.getMessage()).isEqualTo("No classes");
+        assertThat(rule.getLanguage().getId()).isEqualTo("java");
+    }
+
+    @Test
+    void should_give_up_on_unknown_rule() {
+        Optional<RuleSet> ruleSet = converter.convert(ruleSetOf(new PmdRule("category/java/errorprone.xml/ThisRuleDoesNotExist")));
+
+        assertThat(ruleSet).isEmpty();
+    }
+
+    @Test
+    void should_give_up_on_unknown_property() {
+        PmdRule pmdRule = new PmdRule("category/java/bestpractices.xml/ForLoopVariableCount");
+        pmdRule.addProperty(new PmdProperty("thisPropertyDoesNotExist", "1"));
+
+        assertThat(converter.convert(ruleSetOf(pmdRule))).isEmpty();
+    }
+
+    private static PmdRuleSet ruleSetOf(PmdRule rule) {
+        PmdRuleSet ruleSet = new PmdRuleSet();
+        ruleSet.setName("pmd");
+        ruleSet.setDescription("Sonar Profile: pmd (MAIN)");
+        ruleSet.addRule(rule);
+        return ruleSet;
+    }
+}
@@ -19,20 +19,41 @@
  */
 package org.sonar.plugins.pmd;
 
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.rule.Rule;
 import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import net.sourceforge.pmd.reporting.GlobalAnalysisListener;
 import net.sourceforge.pmd.reporting.Report;
 import net.sourceforge.pmd.reporting.RuleViolation;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.fs.InputFile.Type;
 import org.sonar.api.batch.fs.internal.DefaultFileSystem;
 import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
 import org.sonar.api.batch.rule.ActiveRules;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.batch.sensor.SensorDescriptor;
-
+import org.sonar.api.batch.sensor.cache.ReadCache;
+import org.sonar.api.batch.sensor.cache.WriteCache;
+import org.sonar.api.batch.sensor.internal.SensorContextTester;
+import org.sonar.api.batch.sensor.measure.NewMeasure;
+import org.sonar.api.config.internal.MapSettings;
+import org.sonar.api.notifications.AnalysisWarnings;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.util.function.Consumer;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.catchThrowable;
@@ -47,12 +68,16 @@ class PmdSensorTest {
     private final PmdViolationRecorder pmdViolationRecorder = mock(PmdViolationRecorder.class);
     private final SensorContext sensorContext = mock(SensorContext.class);
     private final DefaultFileSystem fs = new DefaultFileSystem(new File("."));
+    private final AnalysisWarnings analysisWarnings = mock(AnalysisWarnings.class);
+    private final PmdAnalysisCost analysisCost = new PmdAnalysisCost();
+    private final PmdConfiguration pmdConfiguration = mock(PmdConfiguration.class);
 
     private PmdSensor pmdSensor;
 
     @BeforeEach
     void setUpPmdSensor() {
-        pmdSensor = new PmdSensor(profile, javaExecutor, kotlinExecutor, pmdViolationRecorder, fs);
+        pmdSensor = new PmdSensor(profile, javaExecutor, kotlinExecutor, pmdViolationRecorder, fs, analysisWarnings, analysisCost, pmdConfiguration);
+        when(sensorContext.newMeasure()).thenAnswer(invocation -> mock(NewMeasure.class, RETURNS_SELF));
     }
 
     @Test
@@ -65,7 +90,7 @@ class PmdSensorTest {
         pmdSensor.execute(sensorContext);
 
         // then
-        verify(javaExecutor, atLeastOnce()).execute();
+        verify(javaExecutor, atLeastOnce()).execute(any(), any());
     }
 
     @Test
@@ -78,7 +103,7 @@ class PmdSensorTest {
         pmdSensor.execute(sensorContext);
 
         // then
-        verify(javaExecutor, atLeastOnce()).execute();
+        verify(javaExecutor, atLeastOnce()).execute(any(), any());
     }
 
     @Test
@@ -91,7 +116,7 @@ class PmdSensorTest {
         pmdSensor.execute(sensorContext);
 
         // then
-        verify(kotlinExecutor, atLeastOnce()).execute();
+        verify(kotlinExecutor, atLeastOnce()).execute(any(), any());
     }
 
     @Test
@@ -104,7 +129,165 @@ class PmdSensorTest {
         pmdSensor.execute(sensorContext);
 
         // then
-        verify(kotlinExecutor, atLeastOnce()).execute();
+        verify(kotlinExecutor, atLeastOnce()).execute(any(), any());
+    }
+
+    @Test
+    void should_not_execute_java_executor_when_cancelled_after_kotlin_files() {
+
+        // given
+        addOneKotlinFile(Type.MAIN);
+        addOneJavaFile(Type.MAIN);
+        when(sensorContext.isCancelled()).thenReturn(true);
+
+        // when
+        pmdSensor.execute(sensorContext);
+
+        // then
+        verify(kotlinExecutor).execute(any(), any());
+        verify(javaExecutor, never()).execute(any(), any());
+        verify(sensorContext, never()).newMeasure();
+    }
+
+    @Test
+    void should_execute_java_and_kotlin_files_in_single_run_when_unified() {
+
+        // given
+        addOneJavaFile(Type.MAIN);
+        addOneKotlinFile(Type.TEST);
+        when(javaExecutor.isUnifiedAnalysisEnabled()).thenReturn(true);
+
+        // when
+        pmdSensor.execute(sensorContext);
+
+        // then
+        verify(javaExecutor).execute(any(), any(), eq(List.of(kotlinExecutor)));
+        verify(javaExecutor, never()).execute(any(), any());
+        verify(kotlinExecutor, never()).execute(any(), any());
+    }
+
+    @Test
+    void should_report_file_timeouts_as_analysis_warnings() {
+
+        // given
+        addOneJavaFile(Type.MAIN);
+        final PmdFileTimeBudget.FileTimeoutException timeout = new PmdFileTimeBudget.FileTimeoutException("/src/Slow.java", "SlowRule", 1000);
+        doAnswer(invocation -> {
+            final GlobalAnalysisListener listener = invocation.getArgument(0);
+            final TextFile textFile = mock(TextFile.class);
+            when(textFile.getFileId()).thenReturn(FileId.fromPathLikeString("/src/Slow.java"));
+            try (FileAnalysisListener fileListener = listener.startFileAnalysis(textFile)) {
+                fileListener.onError(new Report.ProcessingError(new RuntimeException(timeout), textFile.getFileId()));
+            }
+            return true;
+        }).when(javaExecutor).execute(any(), any());
+
+        // when
+        pmdSensor.execute(sensorContext);
+
+        // then
+        verify(analysisWarnings).addUnique(timeout.getMessage());
+        assertThat(timeout.getMessage()).contains("/src/Slow.java").contains("SlowRule");
+    }
+
+    @Test
+    void should_write_results_of_kotlin_and_java_files_to_the_same_reports(@TempDir Path tempDir) throws Exception {
+
+        // given
+        final MapSettings settings = new MapSettings();
+        settings.setProperty(PmdConfiguration.PROPERTY_REPORT_FORMATS, "sarif,jsonl");
+        final DefaultFileSystem fileSystem = new DefaultFileSystem(tempDir.toFile())
+                .setEncoding(StandardCharsets.UTF_8)
+                .setWorkDir(Files.createDirectory(tempDir.resolve("work")));
+        fileSystem.add(inputFile(tempDir, "Util.java", PmdConstants.LANGUAGE_JAVA_KEY, "class Util {\n    int a(int i) {\n        if (i == 3) {\n            return 1;\n        }\n        return 0;\n    }\n}\n"));
+        fileSystem.add(inputFile(tempDir, "Main.kt", PmdConstants.LANGUAGE_KOTLIN_KEY, "fun a(): Int { return 1 }\n"));
+        final ActiveRules activeRules = mock(ActiveRules.class);
+        AbstractPmdExecutorTest.stubActiveRules(activeRules, PmdConstants.MAIN_JAVA_REPOSITORY_KEY, Path.of("src/test/resources/org/sonar/plugins/pmd/simple.xml"));
+        AbstractPmdExecutorTest.stubActiveRules(activeRules, PmdConstants.MAIN_KOTLIN_REPOSITORY_KEY, Path.of("src/test/resources/org/sonar/plugins/pmd/simple-kotlin.xml"));
+        final PmdConfiguration configuration = new PmdConfiguration(fileSystem, settings.asConfig());
+        final PmdClassLoaders classLoaders = new PmdClassLoaders(configuration);
+        final PmdSensor sensor = new PmdSensor(activeRules,
+                new PmdJavaExecutor(fileSystem, activeRules, configuration, mock(ClasspathProvider.class), classLoaders, settings.asConfig()),
+                new PmdKotlinExecutor(fileSystem, activeRules, configuration, classLoaders, settings.asConfig()),
+                pmdViolationRecorder, fileSystem, analysisWarnings, analysisCost, configuration);
+
+        // when
+        try {
+            sensor.execute(SensorContextTester.create(tempDir));
+        } finally {
+            classLoaders.stop();
+        }
+
+        // then
+        assertThat(Files.readString(tempDir.resolve("work/pmd-result.sarif.json")))
+                .contains("\"ruleId\":\"kotlin/FunctionNameTooShort\"")
+                .contains("\"ruleId\":\"java/AvoidLiteralsInIfCondition\"");
+        assertThat(Files.readAllLines(tempDir.resolve("work/pmd-result.jsonl")))
+                .hasSize(2)
+                .anySatisfy(line -> assertThat(line).contains("\"rule\":\"FunctionNameTooShort\""))
+                .anySatisfy(line -> assertThat(line).contains("\"rule\":\"AvoidLiteralsInIfCondition\""));
+    }
+
+    @Test
+    void should_save_analysis_cost_as_project_measures() {
+
+        // given
+        addOneJavaFile(Type.MAIN);
+        final RuleViolation saved = violation();
+        final RuleViolation dropped = violation();
+        mockExecutorResult(saved, dropped);
+        final SensorContextTester context = SensorContextTester.create(new File("."));
+        when(pmdViolationRecorder.saveViolation(saved, context)).thenReturn(true);
+
+        // when
+        pmdSensor.execute(context);
+        new PmdAnalysisCostSensor(analysisCost).execute(context);
+
+        // then
+        final String projectKey = context.project().key();
+        assertThat(context.measure(projectKey, PmdMetrics.ANALYSIS_TIME).value()).isNotNegative();
+        assertThat(context.measure(projectKey, PmdMetrics.FILES_ANALYZED).value()).isEqualTo(1);
+        assertThat(context.measure(projectKey, PmdMetrics.FILES_FROM_CACHE).value()).isZero();
+        assertThat(context.measure(projectKey, PmdMetrics.VIOLATIONS_FOUND).value()).isEqualTo(2);
+        assertThat(context.measure(projectKey, PmdMetrics.VIOLATIONS_DROPPED).value()).isEqualTo(1);
+    }
+
+    @Test
+    void should_save_analysis_cost_of_all_modules_once() {
+
+        // given
+        addOneJavaFile(Type.MAIN);
+        final RuleViolation saved = violation();
+        final RuleViolation dropped = violation();
+        mockExecutorResult(saved, dropped);
+        final SensorContextTester context = SensorContextTester.create(new File("."));
+        when(pmdViolationRecorder.saveViolation(saved, context)).thenReturn(true);
+
+        // when
+        // the sensor runs per module, all modules share the project
+        pmdSensor.execute(context);
+        pmdSensor.execute(context);
+        new PmdAnalysisCostSensor(analysisCost).execute(context);
+
+        // then
+        final String projectKey = context.project().key();
+        assertThat(context.measure(projectKey, PmdMetrics.FILES_ANALYZED).value()).isEqualTo(2);
+        assertThat(context.measure(projectKey, PmdMetrics.VIOLATIONS_FOUND).value()).isEqualTo(4);
+        assertThat(context.measure(projectKey, PmdMetrics.VIOLATIONS_DROPPED).value()).isEqualTo(2);
+    }
+
+    @Test
+    void should_not_save_analysis_cost_when_no_module_was_analyzed() {
+
+        // given
+        final SensorContextTester context = SensorContextTester.create(new File("."));
+
+        // when
+        pmdSensor.execute(context);
+        new PmdAnalysisCostSensor(analysisCost).execute(context);
+
+        // then
+        assertThat(context.measure(context.project().key(), PmdMetrics.FILES_ANALYZED)).isNull();
     }
 
     @Test
@@ -117,8 +300,8 @@ class PmdSensorTest {
         pmdSensor.execute(sensorContext);
 
         // then
-        verify(javaExecutor, never()).execute();
-        verify(kotlinExecutor, never()).execute();
+        verify(javaExecutor, never()).execute(any(), any());
+        verify(kotlinExecutor, never()).execute(any(), any());
     }
 
     @Test
@@ -137,8 +320,8 @@ class PmdSensorTest {
         pmdSensor.execute(sensorContext);
 
         // then
-        verify(javaExecutor, never()).execute();
-        verify(kotlinExecutor, never()).execute();
+        verify(javaExecutor, never()).execute(any(), any());
+        verify(kotlinExecutor, never()).execute(any(), any());
     }
 
     @Test
@@ -182,7 +365,7 @@ class PmdSensorTest {
 
         // then
         verify(pmdViolationRecorder, never()).saveViolation(any(RuleViolation.class), eq(sensorContext));
-        verifyNoMoreInteractions(sensorContext);
+        verify(sensorContext, never()).newIssue();
     }
 
     @Test
@@ -197,7 +380,7 @@ class PmdSensorTest {
 
         // then
         verify(pmdViolationRecorder, never()).saveViolation(any(RuleViolation.class), eq(sensorContext));
-        verifyNoMoreInteractions(sensorContext);
+        verify(sensorContext, never()).newIssue();
     }
 
     @Test
@@ -211,7 +394,7 @@ class PmdSensorTest {
 
         // then
         verify(pmdViolationRecorder, never()).saveViolation(any(RuleViolation.class), eq(sensorContext));
-        verifyNoMoreInteractions(sensorContext);
+        verify(sensorContext, never()).newIssue();
     }
 
     @Test
@@ -226,7 +409,7 @@ class PmdSensorTest {
 
         // then
         verify(pmdViolationRecorder, never()).saveViolation(any(RuleViolation.class), eq(sensorContext));
-        verifyNoMoreInteractions(sensorContext);
+        verify(sensorContext, never()).newIssue();
     }
 
     @Test
@@ -236,7 +419,7 @@ class PmdSensorTest {
         addOneJavaFile(Type.MAIN);
 
         final RuntimeException expectedException = new RuntimeException();
-        when(javaExecutor.execute()).thenThrow(expectedException);
+        doThrow(expectedException).when(javaExecutor).execute(any(), any());
 
         // when
         final Throwable thrown = catchThrowable(() -> pmdSensor.execute(sensorContext));
@@ -254,7 +437,7 @@ class PmdSensorTest {
         addOneKotlinFile(Type.MAIN);
 
         final RuntimeException expectedException = new RuntimeException();
-        when(kotlinExecutor.execute()).thenThrow(expectedException);
+        doThrow(expectedException).when(kotlinExecutor).execute(any(), any());
 
         // when
         final Throwable thrown = catchThrowable(() -> pmdSensor.execute(sensorContext));
@@ -265,6 +448,89 @@ class PmdSensorTest {
                 .isEqualTo(expectedException);
     }
 
+    @Test
+    void should_replay_violations_of_unchanged_files_from_cache() throws Exception {
+
+        // given
+        final InputFile file = addOneJavaFile(Type.MAIN, InputFile.Status.SAME);
+        final ReadCache previousCache = mock(ReadCache.class);
+        final WriteCache nextCache = mock(WriteCache.class);
+        enableCache(previousCache, nextCache);
+        final byte[] cachedViolations = serialize(violation("UseUtilityClass", file));
+        when(previousCache.contains(anyString())).thenReturn(true);
+        when(previousCache.read(anyString())).thenReturn(new ByteArrayInputStream(cachedViolations));
+
+        // when
+        pmdSensor.execute(sensorContext);
+
+        // then
+        verify(pmdViolationRecorder).saveCachedViolation(any(CachedViolation.class), eq(file), eq(sensorContext));
+        verify(nextCache).copyFromPrevious(startsWith("pmd:violations:"));
+        verify(javaExecutor, never()).execute(any(), any());
+    }
+
+    @Test
+    void should_analyze_changed_files_and_store_their_violations_in_cache() {
+
+        // given
+        final InputFile file = addOneJavaFile(Type.MAIN, InputFile.Status.CHANGED);
+        final ReadCache previousCache = mock(ReadCache.class);
+        final WriteCache nextCache = mock(WriteCache.class);
+        enableCache(previousCache, nextCache);
+        final RuleViolation pmdViolation = violation("UseUtilityClass", file);
+        mockExecutorResult(pmdViolation);
+        when(pmdViolationRecorder.findResourceFor(pmdViolation.getFileId())).thenReturn(file);
+
+        // when
+        pmdSensor.execute(sensorContext);
+
+        // then
+        verify(pmdViolationRecorder).saveViolation(pmdViolation, sensorContext);
+        verify(previousCache, never()).read(anyString());
+        verify(nextCache).write(argThat(key -> key.startsWith("pmd:violations:") && key.endsWith(":" + file.key())), any(byte[].class));
+    }
+
+    @Test
+    void should_not_reuse_cached_violations_after_classpath_change(@TempDir Path tempDir) throws Exception {
+
+        // given
+        final InputFile file = addOneJavaFile(Type.MAIN, InputFile.Status.CHANGED);
+        final WriteCache nextCache = mock(WriteCache.class);
+        enableCache(mock(ReadCache.class), nextCache);
+        final RuleViolation pmdViolation = violation("UseUtilityClass", file);
+        mockExecutorResult(pmdViolation);
+        when(pmdViolationRecorder.findResourceFor(pmdViolation.getFileId())).thenReturn(file);
+        final File dependency = Files.write(tempDir.resolve("dependency.jar"), new byte[]{1}).toFile();
+        when(javaExecutor.analysisClasspath()).thenReturn(List.of(dependency));
+        pmdSensor.execute(sensorContext);
+        pmdSensor.execute(sensorContext);
+
+        // when the dependency is updated
+        Files.write(dependency.toPath(), new byte[]{1, 2});
+        pmdSensor.execute(sensorContext);
+
+        // then
+        final ArgumentCaptor<String> keys = ArgumentCaptor.forClass(String.class);
+        verify(nextCache, times(3)).write(keys.capture(), any(byte[].class));
+        assertThat(keys.getAllValues().get(1)).isEqualTo(keys.getAllValues().get(0));
+        assertThat(keys.getAllValues().get(2)).isNotEqualTo(keys.getAllValues().get(0)).endsWith(":" + file.key());
+    }
+
+    @Test
+    void should_release_file_index_after_failed_analysis() {
+
+        // given
+        addOneJavaFile(Type.MAIN);
+        doThrow(new RuntimeException()).when(javaExecutor).execute(any(), any());
+
+        // when
+        catchThrowable(() -> pmdSensor.execute(sensorContext));
+
+        // then
+        verify(pmdViolationRecorder).indexFiles(argThat(files -> files.size() == 1));
+        verify(pmdViolationRecorder).clearIndex();
+    }
+
     @Test
     void should_to_string() {
         final String toString = pmdSensor.toString();
@@ -290,38 +556,85 @@ class PmdSensorTest {
         return mock(RuleViolation.class);
     }
 
+    private static RuleViolation violation(String ruleName, InputFile file) {
+        final Rule rule = mock(Rule.class);
+        when(rule.getName()).thenReturn(ruleName);
+        final FileId fileId = FileId.fromPath(file.path());
+        final RuleViolation violation = mock(RuleViolation.class);
+        when(violation.getRule()).thenReturn(rule);
+        when(violation.getFileId()).thenReturn(fileId);
+        when(violation.getDescription()).thenReturn("Description");
+        when(violation.getBeginLine()).thenReturn(1);
+        when(violation.getEndLine()).thenReturn(1);
+        when(violation.getAdditionalInfo()).thenReturn(Map.of());
+        return violation;
+    }
+
+    private static byte[] serialize(RuleViolation violation) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            CachedViolation.writeAll(out, List.of(CachedViolation.of(violation)));
+        }
+        return bytes.toByteArray();
+    }
+
+    private void enableCache(ReadCache previousCache, WriteCache nextCache) {
+        when(sensorContext.config()).thenReturn(new MapSettings().asConfig());
+        when(sensorContext.isCacheEnabled()).thenReturn(true);
+        when(sensorContext.canSkipUnchangedFiles()).thenReturn(true);
+        when(sensorContext.previousCache()).thenReturn(previousCache);
+        when(sensorContext.nextCache()).thenReturn(nextCache);
+    }
+
     private void mockExecutorResult(RuleViolation... violations) {
-        when(javaExecutor.execute())
-                .thenReturn(createReport(violations));
+        doAnswer(invocation -> report(invocation.getArgument(0), violations))
+                .when(javaExecutor).execute(any(), any());
     }
 
     private void mockKotlinExecutorResult(RuleViolation... violations) {
-        when(kotlinExecutor.execute())
-                .thenReturn(createReport(violations));
+        doAnswer(invocation -> report(invocation.getArgument(0), violations))
+                .when(kotlinExecutor).execute(any(), any());
     }
 
-    private Report createReport(RuleViolation... violations) {
-        Consumer<FileAnalysisListener> fileAnalysisListenerConsumer = fal -> {
+    private static boolean report(GlobalAnalysisListener listener, RuleViolation... violations) throws Exception {
+        final TextFile textFile = mock(TextFile.class);
+        final FileId fileId = violations.length > 0 ? violations[0].getFileId() : null;
+        when(textFile.getFileId()).thenReturn(fileId != null ? fileId : FileId.fromPathLikeString("x"));
+        try (FileAnalysisListener fileListener = listener.startFileAnalysis(textFile)) {
             for (RuleViolation violation : violations) {
-                fal.onRuleViolation(violation);
+                fileListener.onRuleViolation(violation);
             }
-        };
+        }
+        return true;
+    }
 
-        return Report.buildReport(fileAnalysisListenerConsumer);
+    private static InputFile inputFile(Path baseDir, String name, String language, String content) throws IOException {
+        final Path path = Files.write(baseDir.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+        return TestInputFileBuilder.create("", baseDir.toFile(), path.toFile())
+                .setLanguage(language)
+                .setType(Type.MAIN)
+                .setCharset(StandardCharsets.UTF_8)
+                .initMetadata(content)
+                .build();
     }
 
     private void addOneJavaFile(Type type) {
+        addOneJavaFile(type, InputFile.Status.ADDED);
+    }
+
+    private InputFile addOneJavaFile(Type type, InputFile.Status status) {
         mockExecutorResult();
         File file = new File("x");
-        fs.add(
-                TestInputFileBuilder.create(
+        InputFile inputFile = TestInputFileBuilder.create(
                         "sonar-pmd-test",
                         file.getName()
                 )
-                        .setLanguage("java")
-                        .setType(type)
-                        .build()
-        );
+                .setLanguage("java")
+                .setType(type)
+                .setStatus(status)
+                .build();
+        fs.add(inputFile);
+        return inputFile;
     }
 
     private void addOneKotlinFile(Type type) {
@@ -0,0 +1,64 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd;
+
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PmdSlowestFilesTest {
+
+    @Test
+    void should_keep_slowest_files_only() throws Exception {
+        // given
+        AtomicLong nanoTime = new AtomicLong();
+        PmdSlowestFiles slowestFiles = new PmdSlowestFiles(2, nanoTime::get);
+        FileAnalysisListener slow = slowestFiles.startFileAnalysis(textFile("/src/Slow.java"));
+        FileAnalysisListener slower = slowestFiles.startFileAnalysis(textFile("/src/Slower.java"));
+        nanoTime.addAndGet(5_000_000);
+        slow.close();
+        nanoTime.addAndGet(5_000_000);
+        slower.close();
+
+        // when
+        FileAnalysisListener fast = slowestFiles.startFileAnalysis(textFile("/src/Fast.java"));
+        nanoTime.addAndGet(1_000_000);
+        fast.close();
+
+        // then
+        assertThat(slowestFiles.slowest())
+                .extracting(PmdSlowestFiles.FileTime::getPath)
+                .containsExactly(FileId.fromPathLikeString("/src/Slower.java").getAbsolutePath(),
+                        FileId.fromPathLikeString("/src/Slow.java").getAbsolutePath());
+    }
+
+    private static TextFile textFile(String path) {
+        TextFile textFile = mock(TextFile.class);
+        when(textFile.getFileId()).thenReturn(FileId.fromPathLikeString(path));
+        return textFile;
+    }
+}
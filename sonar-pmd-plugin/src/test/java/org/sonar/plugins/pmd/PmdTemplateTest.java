@@ -82,4 +82,9 @@ class PmdTemplateTest {
         assertThat(pmdTemplate.configuration().getSourceEncoding()).isEqualTo(StandardCharsets.UTF_16BE);
     }
 
+    @Test
+    void should_set_threads() {
+        PmdTemplate pmdTemplate = PmdTemplate.create("6", mock(ClassLoader.class), StandardCharsets.UTF_8, 3);
+        assertThat(pmdTemplate.configuration().getThreads()).isEqualTo(3);
+    }
 }
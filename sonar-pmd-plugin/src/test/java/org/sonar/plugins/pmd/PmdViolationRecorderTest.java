@@ -24,6 +24,7 @@ import net.sourceforge.pmd.lang.rule.Rule;
 import net.sourceforge.pmd.reporting.RuleViolation;
 import org.junit.jupiter.api.Test;
 import org.sonar.api.batch.fs.FilePredicate;
+import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.fs.TextRange;
 import org.sonar.api.batch.fs.internal.DefaultFileSystem;
 import org.sonar.api.batch.fs.internal.DefaultInputFile;
@@ -36,7 +37,10 @@ import org.sonar.api.batch.sensor.issue.NewIssueLocation;
 import org.sonar.api.rule.RuleKey;
 
 import java.io.File;
+import java.util.List;
+import java.util.Map;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
@@ -75,6 +79,68 @@ class PmdViolationRecorderTest {
         verify(newIssue).save();
     }
 
+    @Test
+    void should_convert_cached_violation_to_sonar_violation() {
+
+        // given
+        final ActiveRule rule = createRuleInActiveRules();
+        final File file1 = new File("src/source.java");
+        final DefaultInputFile inputFile1 = addToFileSystem(file1);
+        final CachedViolation cachedViolation = CachedViolation.of(createPmdViolation(file1, "RULE"));
+        final NewIssue newIssue = mock(NewIssue.class);
+        final NewIssueLocation issueLocation = mock(NewIssueLocation.class);
+
+        when(mockContext.newIssue()).thenReturn(newIssue);
+        when(newIssue.forRule(rule.ruleKey())).thenReturn(newIssue);
+        when(newIssue.newLocation()).thenReturn(issueLocation);
+        when(newIssue.at(issueLocation)).thenReturn(newIssue);
+        when(issueLocation.on(inputFile1)).thenReturn(issueLocation);
+        when(issueLocation.message("Description")).thenReturn(issueLocation);
+        when(issueLocation.at(any(TextRange.class))).thenReturn(issueLocation);
+
+        // when
+        subject.saveCachedViolation(cachedViolation, inputFile1, mockContext);
+
+        // then
+        verify(newIssue).save();
+        verify(spiedFs, never()).inputFile(any(FilePredicate.class));
+    }
+
+    @Test
+    void should_resolve_files_from_index_without_querying_file_system() {
+
+        // given
+        final File file1 = new File("src/source.java");
+        final DefaultInputFile inputFile1 = addToFileSystem(file1);
+        subject.indexFiles(List.of(inputFile1));
+
+        // when
+        final InputFile indexed = subject.findResourceFor(FileId.fromPath(file1.toPath()));
+        final InputFile unknown = subject.findResourceFor(FileId.fromPath(new File("src/UNKNOWN.java").toPath()));
+
+        // then
+        assertThat(indexed).isSameAs(inputFile1);
+        assertThat(unknown).isNull();
+        verify(spiedFs, never()).inputFile(any(FilePredicate.class));
+    }
+
+    @Test
+    void should_query_file_system_after_index_is_cleared() {
+
+        // given
+        final File file1 = new File("src/source.java");
+        final DefaultInputFile inputFile1 = addToFileSystem(file1);
+        subject.indexFiles(List.of());
+        subject.clearIndex();
+
+        // when
+        final InputFile found = subject.findResourceFor(FileId.fromPath(file1.toPath()));
+
+        // then
+        assertThat(found).isEqualTo(inputFile1);
+        verify(spiedFs).inputFile(any(FilePredicate.class));
+    }
+
     @Test
     void should_ignore_violation_on_unknown_resource() {
 
@@ -99,19 +165,42 @@ class PmdViolationRecorderTest {
         addToFileSystem(file1);
         final String ruleName = "UNKNOWN";
         final RuleViolation pmdViolation = createPmdViolation(file1, ruleName);
-        final RuleKey expectedRuleKey1 = RuleKey.of(PmdConstants.MAIN_JAVA_REPOSITORY_KEY, ruleName);
-        final RuleKey expectedRuleKey2 = RuleKey.of(PmdConstants.MAIN_JAVA_REPOSITORY_KEY, ruleName);
 
         // when
         subject.saveViolation(pmdViolation, mockContext);
 
         // then
         verify(spiedFs).inputFile(any(FilePredicate.class));
-        verify(mockActiveRules).find(expectedRuleKey1);
-        verify(mockActiveRules).find(expectedRuleKey2);
+        verify(mockActiveRules).findByRepository(PmdConstants.MAIN_JAVA_REPOSITORY_KEY);
+        verify(mockActiveRules).findByRepository(PmdConstants.MAIN_KOTLIN_REPOSITORY_KEY);
+        verify(mockActiveRules, never()).find(any(RuleKey.class));
         verifyNoMoreInteractions(mockContext);
     }
 
+    @Test
+    void should_resolve_active_rule_keys_once_and_prefer_java_repository() {
+
+        // given
+        final ActiveRule javaRule = createRuleInActiveRules();
+        final ActiveRule kotlinRule = mock(ActiveRule.class);
+        when(kotlinRule.ruleKey()).thenReturn(RuleKey.of(PmdConstants.MAIN_KOTLIN_REPOSITORY_KEY, "RULE"));
+        when(mockActiveRules.findByRepository(PmdConstants.MAIN_KOTLIN_REPOSITORY_KEY)).thenReturn(List.of(kotlinRule));
+        final File file1 = new File("src/source.java");
+        final DefaultInputFile inputFile1 = addToFileSystem(file1);
+        final NewIssue newIssue = mock(NewIssue.class, RETURNS_DEEP_STUBS);
+        when(mockContext.newIssue()).thenReturn(newIssue);
+        when(newIssue.forRule(any(RuleKey.class))).thenReturn(newIssue);
+
+        // when
+        subject.saveCachedViolation(CachedViolation.of(createPmdViolation(file1, "RULE")), inputFile1, mockContext);
+        subject.saveCachedViolation(CachedViolation.of(createPmdViolation(file1, "RULE")), inputFile1, mockContext);
+
+        // then
+        verify(newIssue, times(2)).forRule(javaRule.ruleKey());
+        verify(mockActiveRules, times(1)).findByRepository(PmdConstants.MAIN_JAVA_REPOSITORY_KEY);
+        verify(mockActiveRules, never()).find(any(RuleKey.class));
+    }
+
     private DefaultInputFile addToFileSystem(File file) {
         DefaultInputFile inputFile = TestInputFileBuilder
                 .create("test", spiedFs.baseDir(), file.getAbsoluteFile())
@@ -123,9 +212,8 @@ class PmdViolationRecorderTest {
 
     private ActiveRule createRuleInActiveRules() {
         ActiveRule sonarRule = mock(ActiveRule.class);
-        RuleKey ruleKey = RuleKey.of("pmd", "RULE");
-        when(mockActiveRules.find(ruleKey)).thenReturn(sonarRule);
         when(sonarRule.ruleKey()).thenReturn(RuleKey.of("pmd", "RULE"));
+        when(mockActiveRules.findByRepository(PmdConstants.MAIN_JAVA_REPOSITORY_KEY)).thenReturn(List.of(sonarRule));
         return sonarRule;
     }
 
@@ -138,6 +226,7 @@ class PmdViolationRecorderTest {
         when(pmdViolation.getBeginLine()).thenReturn(2);
         when(pmdViolation.getDescription()).thenReturn("Description");
         when(pmdViolation.getRule()).thenReturn(rule);
+        when(pmdViolation.getAdditionalInfo()).thenReturn(Map.of());
 
         return pmdViolation;
     }
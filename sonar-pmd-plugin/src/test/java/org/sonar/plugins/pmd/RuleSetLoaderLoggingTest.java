@@ -72,12 +72,13 @@ class RuleSetLoaderLoggingTest {
 
         // Point the dumped ruleset to our intentionally invalid ruleset file
         Path invalid = Paths.get("src/test/resources/org/sonar/plugins/pmd/invalid-ref.xml");
+        AbstractPmdExecutorTest.stubActiveRules(activeRules, PmdConstants.MAIN_JAVA_REPOSITORY_KEY, invalid);
         when(pmdConfig.dumpXmlRuleSet(eq(PmdConstants.MAIN_JAVA_REPOSITORY_KEY), anyString(), eq(RuleScope.MAIN)))
             .thenReturn(invalid.toFile());
         when(pmdConfig.dumpXmlRuleSet(eq(PmdConstants.MAIN_JAVA_REPOSITORY_KEY), anyString(), eq(RuleScope.TEST)))
             .thenReturn(invalid.toFile());
 
-        executor = Mockito.spy(new PmdJavaExecutor(fs, activeRules, pmdConfig, classpathProvider, settings.asConfig()));
+        executor = Mockito.spy(new PmdJavaExecutor(fs, activeRules, pmdConfig, classpathProvider, new PmdClassLoaders(pmdConfig), settings.asConfig()));
 
         // Capture stderr where AbstractPmdExecutor writes reporter output
         originalErr = System.err;
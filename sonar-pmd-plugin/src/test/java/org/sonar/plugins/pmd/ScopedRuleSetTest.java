@@ -0,0 +1,97 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.lang.rule.RuleSetLoader;
+import net.sourceforge.pmd.reporting.Report;
+import net.sourceforge.pmd.reporting.RuleViolation;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+import org.sonar.api.rule.RuleScope;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ScopedRuleSetTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void should_apply_rules_to_files_of_own_scope_only() throws Exception {
+        // given
+        InputFile mainFile = kotlinFile("Main.kt", InputFile.Type.MAIN);
+        InputFile testFile = kotlinFile("MainTest.kt", InputFile.Type.TEST);
+        RuleSet ruleSet = RuleSetLoader.fromPmdConfig(new PMDConfiguration())
+                .loadFromResource("category/kotlin/bestpractices.xml/FunctionNameTooShort");
+        ScopedRuleSet mainRules = new ScopedRuleSet(PmdConstants.MAIN_KOTLIN_REPOSITORY_KEY, RuleScope.MAIN, ruleSet, List.of(mainFile));
+        PmdTemplate template = PmdTemplate.create("17", new URLClassLoader(new URL[0]), StandardCharsets.UTF_8);
+        Report.GlobalReportBuilderListener reportBuilder = new Report.GlobalReportBuilderListener();
+
+        // when
+        template.process(List.of(mainFile, testFile), List.of(mainRules.restrictedToFiles()), reportBuilder);
+        reportBuilder.close();
+
+        // then
+        List<String> violatedFiles = reportBuilder.getResult().getViolations().stream()
+                .map(RuleViolation::getFileId)
+                .map(fileId -> fileId.getFileName())
+                .collect(Collectors.toList());
+        assertThat(violatedFiles).containsExactly("Main.kt");
+        assertThat(reportBuilder.getResult().getViolations().get(0).getRule().getName()).isEqualTo("FunctionNameTooShort");
+    }
+
+    @Test
+    void should_keep_rule_set_for_other_files() {
+        RuleSet ruleSet = RuleSet.create("pmd", "description", null, List.of(), List.of(), List.of());
+        ScopedRuleSet scopedRuleSet = new ScopedRuleSet(PmdConstants.MAIN_JAVA_REPOSITORY_KEY, RuleScope.TEST, ruleSet, List.of());
+
+        ScopedRuleSet other = scopedRuleSet.withFiles(List.of(kotlinFile("Other.kt", InputFile.Type.TEST)));
+
+        assertThat(other.getRuleSet()).isSameAs(ruleSet);
+        assertThat(other.getScope()).isEqualTo(RuleScope.TEST);
+        assertThat(other.getFiles()).hasSize(1);
+    }
+
+    private InputFile kotlinFile(String name, InputFile.Type type) {
+        try {
+            Files.write(tempDir.resolve(name), "fun a(): Int { return 1 }\n".getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return TestInputFileBuilder.create("", tempDir.toFile(), tempDir.resolve(name).toFile())
+                .setType(type)
+                .setLanguage(PmdConstants.LANGUAGE_KOTLIN_KEY)
+                .setCharset(StandardCharsets.UTF_8)
+                .build();
+    }
+}
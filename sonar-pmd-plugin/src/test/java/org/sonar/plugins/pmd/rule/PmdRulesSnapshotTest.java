@@ -0,0 +1,128 @@
+/*
+ * SonarQube PMD7 Plugin
+ * Copyright (C) 2012-2021 SonarSource SA and others
+ * mailto:jborgers AT jpinpoint DOT com; peter.paul.bakker AT stokpop DOT nl
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.pmd.rule;
+
+import org.junit.jupiter.api.Test;
+import org.sonar.api.server.debt.DebtRemediationFunction;
+import org.sonar.api.server.rule.RulesDefinition;
+import org.sonar.api.server.rule.RulesDefinition.NewRepository;
+import org.sonar.plugins.pmd.PmdConstants;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+class PmdRulesSnapshotTest {
+
+    @Test
+    void should_replay_java_rules_as_loaded_from_xml() throws Exception {
+        RulesDefinition.Repository fromXml = loadFromXml(repository -> {
+            PmdRulesDefinition.extractRulesData(repository, PmdRulesDefinition.RULES_XML);
+            return repository;
+        });
+
+        assertReplayedEqually(fromXml);
+    }
+
+    @Test
+    void should_replay_kotlin_rules_as_loaded_from_xml() throws Exception {
+        RulesDefinition.Repository fromXml = loadFromXml(repository -> {
+            PmdKotlinRulesDefinition.extractRulesData(repository, PmdKotlinRulesDefinition.RULES_XML, PmdKotlinRulesDefinition.HTML_DESCRIPTIONS);
+            return repository;
+        });
+
+        assertReplayedEqually(fromXml);
+    }
+
+    @Test
+    void should_not_replay_invalid_snapshot() {
+        RulesDefinition.Context context = new RulesDefinition.Context();
+        NewRepository repository = context.createRepository("pmd", "java");
+
+        assertThat(PmdRulesSnapshot.replay(repository, "/org/sonar/plugins/pmd/rules-java.xml")).isFalse();
+        assertThat(PmdRulesSnapshot.replay(repository, "/no-such-snapshot")).isFalse();
+        repository.done();
+        assertThat(context.repository("pmd").rules()).isEmpty();
+    }
+
+    @Test
+    void should_reject_snapshot_with_truncated_descriptions() {
+        RulesDefinition.Repository fromXml = loadFromXml(repository -> {
+            PmdKotlinRulesDefinition.extractRulesData(repository, PmdKotlinRulesDefinition.RULES_XML, PmdKotlinRulesDefinition.HTML_DESCRIPTIONS);
+            return repository;
+        });
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        RulesDefinition.Context context = new RulesDefinition.Context();
+        NewRepository repository = context.createRepository("pmd", "java");
+
+        Throwable thrown = catchThrowable(() -> {
+            PmdRulesSnapshot.write(fromXml, snapshot);
+            PmdRulesSnapshot.replay(repository, Arrays.copyOf(snapshot.toByteArray(), snapshot.size() - 1));
+        });
+
+        assertThat(thrown).isInstanceOf(IOException.class).hasMessageStartingWith("Invalid description");
+        repository.done();
+        assertThat(context.repository("pmd").rules()).isEmpty();
+    }
+
+    private static void assertReplayedEqually(RulesDefinition.Repository fromXml) throws Exception {
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        PmdRulesSnapshot.write(fromXml, snapshot);
+
+        RulesDefinition.Repository replayed = loadFromXml(repository -> {
+            try {
+                PmdRulesSnapshot.replay(repository, snapshot.toByteArray());
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return repository;
+        });
+
+        assertThat(replayed.rules()).hasSameSizeAs(fromXml.rules()).isNotEmpty();
+        for (RulesDefinition.Rule expected : fromXml.rules()) {
+            RulesDefinition.Rule actual = replayed.rule(expected.key());
+            assertThat(actual).as(expected.key()).isNotNull();
+            assertThat(describe(actual)).as(expected.key()).isEqualTo(describe(expected));
+        }
+    }
+
+    private static RulesDefinition.Repository loadFromXml(Function<NewRepository, NewRepository> loader) {
+        RulesDefinition.Context context = new RulesDefinition.Context();
+        loader.apply(context.createRepository("pmd", "java").setName("PMD")).done();
+        return context.repository("pmd");
+    }
+
+    private static String describe(RulesDefinition.Rule rule) {
+        DebtRemediationFunction function = rule.debtRemediationFunction();
+        StringBuilder description = new StringBuilder()
+                .append(Arrays.asList(rule.key(), rule.name(), rule.internalKey(), rule.severity(), rule.type(), rule.status(),
+                        rule.scope(), rule.template(), rule.activatedByDefault(), rule.tags(), rule.htmlDescription(),
+                        rule.markdownDescription(), rule.gapDescription(), rule.cleanCodeAttribute(), rule.defaultImpacts()))
+                .append(function == null ? null : Arrays.asList(function.type(), function.gapMultiplier(), function.baseEffort()));
+        for (RulesDefinition.Param param : rule.params()) {
+            description.append(Arrays.asList(param.key(), param.name(), param.description(), param.defaultValue(), param.type()));
+        }
+        return description.toString();
+    }
+}